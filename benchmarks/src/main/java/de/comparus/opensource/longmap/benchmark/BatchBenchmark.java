@@ -0,0 +1,114 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batched operations (getAll, putAll, removeAll) against the same keys passed one by one.
+ * The time is per batch; the batched probing only pays off on maps much larger than
+ * the last level cache, where every probe of a random key is a cache miss
+ * (run with {@code -p size=10000000,100000000 -p distribution=RANDOM}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class BatchBenchmark {
+
+    @State(Scope.Thread)
+    public static class Batch {
+
+        @Param({"16", "1024"})
+        public int batchSize;
+
+        long[] keys;
+        long[] missingKeys;
+        Long[] values;
+        Long[] found;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            keys = new long[batchSize];
+            missingKeys = new long[batchSize];
+            values = new Long[batchSize];
+            Arrays.fill(values, FilledMapState.VALUE);
+            found = new Long[batchSize];
+        }
+
+        void next(FilledMapState state) {
+            for (int i = 0; i < batchSize; i++) {
+                keys[i] = state.nextKey();
+                missingKeys[i] = state.nextMissingKey();
+            }
+        }
+    }
+
+    @Benchmark
+    public Long[] getOneByOne(FilledMapState state, Batch batch) {
+        batch.next(state);
+        for (int i = 0; i < batch.batchSize; i++) {
+            batch.found[i] = state.map.get(batch.keys[i]);
+        }
+        return batch.found;
+    }
+
+    @Benchmark
+    public int getAll(FilledMapState state, Batch batch) {
+        batch.next(state);
+        return state.map.getAll(batch.keys, batch.found);
+    }
+
+    @Benchmark
+    public Long putExistingOneByOne(FilledMapState state, Batch batch) {
+        batch.next(state);
+        Long result = null;
+        for (int i = 0; i < batch.batchSize; i++) {
+            result = state.map.put(batch.keys[i], FilledMapState.VALUE);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Long[] putAllExisting(FilledMapState state, Batch batch) {
+        batch.next(state);
+        state.map.putAll(batch.keys, batch.values);
+        return batch.values;
+    }
+
+    /**
+     * Puts the missing keys and removes them again, so the size of the map stays constant.
+     */
+    @Benchmark
+    public Long putAndRemoveMissingOneByOne(FilledMapState state, Batch batch) {
+        batch.next(state);
+        Long result = null;
+        for (int i = 0; i < batch.batchSize; i++) {
+            state.map.put(batch.missingKeys[i], FilledMapState.VALUE);
+        }
+        for (int i = 0; i < batch.batchSize; i++) {
+            result = state.map.remove(batch.missingKeys[i]);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int putAllAndRemoveAllMissing(FilledMapState state, Batch batch) {
+        batch.next(state);
+        state.map.putAll(batch.missingKeys, batch.values);
+        return state.map.removeAll(batch.missingKeys);
+    }
+}
@@ -0,0 +1,88 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A map shared by all benchmark threads under a mixed workload: {@link #readPercent}% of
+ * operations are gets, the rest are puts of existing keys and remove + put of random keys.
+ * {@link #main(String[])} runs it with 1, 2, 4, ... threads up to the number of processors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ConcurrentBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"90", "50"})
+    public int readPercent;
+
+    @Param({"CONCURRENT", "SYNCHRONIZED"})
+    public MapType type;
+
+    private LongMap<Long> map;
+    private long[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = type.create();
+        keys = KeyDistribution.RANDOM.generate(size, 1);
+        for (long key : keys) {
+            map.put(key, FilledMapState.VALUE);
+        }
+    }
+
+    @Benchmark
+    public Long mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long key = keys[random.nextInt(keys.length)];
+        int operation = random.nextInt(100);
+        if (operation < readPercent) {
+            return map.get(key);
+        }
+        if ((operation & 1) == 0) {
+            return map.put(key, FilledMapState.VALUE);
+        }
+        Long value = map.remove(key);
+        map.put(key, FilledMapState.VALUE);
+        return value;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            new Runner(new OptionsBuilder()
+                    .include(ConcurrentBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build())
+                    .run();
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+}
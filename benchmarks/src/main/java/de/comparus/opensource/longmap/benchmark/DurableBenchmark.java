@@ -0,0 +1,74 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.DurableLongMap;
+import de.comparus.opensource.longmap.ValueCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Puts into a {@link DurableLongMap} by several threads: with {@code syncOnWrite = false} a put returns
+ * once its record is in the log buffer, with {@code true} it waits for the group commit (the fsync
+ * shared by the puts of all threads since the previous commit). Compare with the time of one fsync
+ * of the disk to see how many puts share it. The map is kept in a temporary directory; set
+ * {@code java.io.tmpdir} to a directory on the disk being measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class DurableBenchmark {
+
+    @Param({"false", "true"})
+    public boolean syncOnWrite;
+
+    @Param({"1", "10"})
+    public int commitIntervalMillis;
+
+    private Path directory;
+    private DurableLongMap<Long> map;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("durable-long-map");
+        map = DurableLongMap.builder(directory, ValueCodecs.LONG)
+                .syncOnWrite(syncOnWrite)
+                .commitInterval(commitIntervalMillis, TimeUnit.MILLISECONDS)
+                .open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        map.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Long put() {
+        return map.put(ThreadLocalRandom.current().nextInt(1 << 20), FilledMapState.VALUE);
+    }
+}
@@ -0,0 +1,79 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMap;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * A map filled with {@link #size} keys of the {@link #distribution}, and the keys
+ * which hit and miss it. All mappings share one value, so only the map itself is measured.
+ * Sizes of 10^7 and more need a large heap (about 8 GB for 10^8 keys).
+ */
+@State(Scope.Thread)
+public class FilledMapState {
+
+    public static final Long VALUE = 1L;
+    public static final Long MISSING_VALUE = 2L;
+
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "CLUSTERED", "ADVERSARIAL", "SKEWED"})
+    public KeyDistribution distribution;
+
+    @Param({"LONG_MAP_IMPL", "CUCKOO", "SWISS", "TIERED"})
+    public MapType type;
+
+    public LongMap<Long> map;
+    public long[] keys;
+    public long[] missingKeys;
+
+    private int keyIndex;
+    private int missingKeyIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = type.create();
+        keys = distribution.generate(size, 1);
+        missingKeys = distribution.generateMissing(size, 2);
+        for (long key : keys) {
+            map.put(key, VALUE);
+        }
+        shuffle(keys);
+    }
+
+    /**
+     * @return the next key contained in the map (keys are visited in random order).
+     */
+    public long nextKey() {
+        if (++keyIndex == keys.length) {
+            keyIndex = 0;
+        }
+        return keys[keyIndex];
+    }
+
+    /**
+     * @return the next key which is not contained in the map.
+     */
+    public long nextMissingKey() {
+        if (++missingKeyIndex == missingKeys.length) {
+            missingKeyIndex = 0;
+        }
+        return missingKeys[missingKeyIndex];
+    }
+
+    private static void shuffle(long[] array) {
+        Random random = new Random(3);
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of single puts into a growing map: the map is filled from empty up to {@link #size}
+ * keys and then recreated, so the samples include every resize. Compare the p99.9 and the
+ * maximum of the stop-the-world and the incremental resize, and of the segmented map
+ * (every resize copies one segment).
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Thread)
+public class GrowthLatencyBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"LONG_MAP_IMPL", "LONG_MAP_IMPL_INCREMENTAL", "SEGMENTED"})
+    public MapType type;
+
+    private long[] keys;
+    private LongMap<Long> map;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = KeyDistribution.RANDOM.generate(size, 1);
+        map = type.create();
+    }
+
+    @Benchmark
+    public Long put() {
+        if (index == keys.length) {
+            map = type.create();
+            index = 0;
+        }
+        return map.put(keys[index++], FilledMapState.VALUE);
+    }
+}
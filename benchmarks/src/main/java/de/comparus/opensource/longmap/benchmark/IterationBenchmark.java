@@ -0,0 +1,65 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMapCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walk over all mappings of a filled map: export of all keys and values as arrays
+ * against the in-place walks of the cursor and of forEach, which allocate nothing per mapping,
+ * and a scanning aggregation (the sum of the keys) in one thread against the fork-join one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class IterationBenchmark {
+
+    @Benchmark
+    public long[] keys(FilledMapState state) {
+        return state.map.keys();
+    }
+
+    @Benchmark
+    public Long[] values(FilledMapState state) {
+        return state.map.values();
+    }
+
+    @Benchmark
+    public void cursor(FilledMapState state, Blackhole blackhole) {
+        LongMapCursor<Long> cursor = state.map.cursor();
+        while (cursor.advance()) {
+            blackhole.consume(cursor.key());
+            blackhole.consume(cursor.value());
+        }
+    }
+
+    @Benchmark
+    public void forEach(FilledMapState state, Blackhole blackhole) {
+        state.map.forEach((key, value) -> {
+            blackhole.consume(key);
+            blackhole.consume(value);
+        });
+    }
+
+    @Benchmark
+    public long sequentialSum(FilledMapState state) {
+        long[] sum = new long[1];
+        state.map.forEach((key, value) -> sum[0] += key);
+        return sum[0];
+    }
+
+    @Benchmark
+    public long parallelSum(FilledMapState state) {
+        return state.map.parallelReduceToLong(0, (key, value) -> key, Long::sum);
+    }
+}
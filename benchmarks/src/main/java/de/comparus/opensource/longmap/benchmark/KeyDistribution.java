@@ -0,0 +1,99 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import java.util.Random;
+
+/**
+ * Key sets on which the maps are benchmarked.
+ */
+public enum KeyDistribution {
+
+    /**
+     * 0, 1, 2, ... - ideal for any hash function.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Uniformly random keys over the whole long range.
+     */
+    RANDOM,
+
+    /**
+     * Runs of {@value KeyDistribution#CLUSTER_SIZE} consecutive keys starting at random points.
+     */
+    CLUSTERED,
+
+    /**
+     * Keys which differ only in the upper 32 bits - they defeat any hash function
+     * which takes the table index from the low bits of the key.
+     */
+    ADVERSARIAL,
+
+    /**
+     * Mostly small non-negative IDs: 30% of keys fit into short, 60% into int, 10% are random longs.
+     */
+    SKEWED;
+
+    private static final int CLUSTER_SIZE = 64;
+
+    /**
+     * Generates the specified number of keys (duplicates are possible only for random and skewed keys).
+     *
+     * @param size the number of keys.
+     * @param seed the seed of the random generator, the same seed gives the same keys.
+     * @return the array of keys.
+     */
+    public long[] generate(int size, long seed) {
+        return generate(size, seed, 0);
+    }
+
+    /**
+     * Generates keys of the same shape which, except for random and skewed keys, can not intersect
+     * with the keys returned by {@link #generate(int, long)} for the same size.
+     *
+     * @param size the number of keys.
+     * @param seed the seed of the random generator.
+     * @return the array of keys.
+     */
+    public long[] generateMissing(int size, long seed) {
+        return generate(size, seed, size);
+    }
+
+    private long[] generate(int size, long seed, int shift) {
+        Random random = new Random(seed);
+        long[] keys = new long[size];
+        long clusterStart = 0;
+        for (int i = 0; i < size; i++) {
+            switch (this) {
+                case SEQUENTIAL:
+                    keys[i] = shift + i;
+                    break;
+                case RANDOM:
+                    keys[i] = random.nextLong();
+                    break;
+                case CLUSTERED:
+                    if (i % CLUSTER_SIZE == 0) {
+                        clusterStart = random.nextLong() & ~(2L * CLUSTER_SIZE - 1);
+                    }
+                    keys[i] = clusterStart + (shift == 0 ? 0 : CLUSTER_SIZE) + i % CLUSTER_SIZE;
+                    break;
+                case ADVERSARIAL:
+                    keys[i] = (long) (shift + i) << 32;
+                    break;
+                default:
+                    keys[i] = getSkewedKey(random);
+            }
+        }
+        return keys;
+    }
+
+    private static long getSkewedKey(Random random) {
+        int percent = random.nextInt(100);
+        if (percent < 30) {
+            return random.nextInt(Short.MAX_VALUE);
+        }
+        if (percent < 90) {
+            return random.nextInt(Integer.MAX_VALUE);
+        }
+        return random.nextLong();
+    }
+}
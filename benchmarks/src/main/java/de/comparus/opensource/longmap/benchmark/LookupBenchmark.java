@@ -0,0 +1,48 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only operations on a filled map: hits and misses of get and containsKey,
+ * and a full scan of containsValue.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class LookupBenchmark {
+
+    @Benchmark
+    public Long getHit(FilledMapState state) {
+        return state.map.get(state.nextKey());
+    }
+
+    @Benchmark
+    public Long getMiss(FilledMapState state) {
+        return state.map.get(state.nextMissingKey());
+    }
+
+    @Benchmark
+    public boolean containsKeyHit(FilledMapState state) {
+        return state.map.containsKey(state.nextKey());
+    }
+
+    @Benchmark
+    public boolean containsKeyMiss(FilledMapState state) {
+        return state.map.containsKey(state.nextMissingKey());
+    }
+
+    @Benchmark
+    public boolean containsValueMiss(FilledMapState state) {
+        return state.map.containsValue(FilledMapState.MISSING_VALUE);
+    }
+}
@@ -0,0 +1,115 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.BiLongMap;
+import de.comparus.opensource.longmap.ConcurrentLongMap;
+import de.comparus.opensource.longmap.CuckooLongMap;
+import de.comparus.opensource.longmap.LongMap;
+import de.comparus.opensource.longmap.LongMapImpl;
+import de.comparus.opensource.longmap.RobinHoodLongMap;
+import de.comparus.opensource.longmap.SegmentedLongMap;
+import de.comparus.opensource.longmap.SwissLongMap;
+import de.comparus.opensource.longmap.TieredLongMap;
+
+/**
+ * The benchmarked implementations of {@link LongMap}.
+ */
+public enum MapType {
+
+    LONG_MAP_IMPL {
+        @Override
+        public <V> LongMap<V> create() {
+            return new LongMapImpl<>();
+        }
+
+        @Override
+        public <V> LongMap<V> create(long expectedSize) {
+            return new LongMapImpl<>(expectedSize);
+        }
+    },
+
+    LONG_MAP_IMPL_INCREMENTAL {
+        @Override
+        public <V> LongMap<V> create() {
+            return new LongMapImpl<>(true);
+        }
+
+        @Override
+        public <V> LongMap<V> create(long expectedSize) {
+            LongMapImpl<V> map = new LongMapImpl<>(true);
+            map.ensureCapacity(expectedSize);
+            return map;
+        }
+    },
+
+    CUCKOO {
+        @Override
+        public <V> LongMap<V> create() {
+            return new CuckooLongMap<>();
+        }
+    },
+
+    ROBIN_HOOD {
+        @Override
+        public <V> LongMap<V> create() {
+            return new RobinHoodLongMap<>();
+        }
+    },
+
+    SWISS {
+        @Override
+        public <V> LongMap<V> create() {
+            return new SwissLongMap<>();
+        }
+    },
+
+    TIERED {
+        @Override
+        public <V> LongMap<V> create() {
+            return new TieredLongMap<>();
+        }
+    },
+
+    SEGMENTED {
+        @Override
+        public <V> LongMap<V> create() {
+            return new SegmentedLongMap<>();
+        }
+
+        @Override
+        public <V> LongMap<V> create(long expectedSize) {
+            SegmentedLongMap<V> map = new SegmentedLongMap<>();
+            map.ensureCapacity(expectedSize);
+            return map;
+        }
+    },
+
+    BI {
+        @Override
+        public <V> LongMap<V> create() {
+            return new BiLongMap<>();
+        }
+    },
+
+    CONCURRENT {
+        @Override
+        public <V> LongMap<V> create() {
+            return new ConcurrentLongMap<>();
+        }
+    },
+
+    SYNCHRONIZED {
+        @Override
+        public <V> LongMap<V> create() {
+            return new SynchronizedLongMap<>(new LongMapImpl<>());
+        }
+    };
+
+    public abstract <V> LongMap<V> create();
+
+    /**
+     * Creates a map sized for the expected number of mappings, if the implementation can be presized.
+     */
+    public <V> LongMap<V> create(long expectedSize) {
+        return create();
+    }
+}
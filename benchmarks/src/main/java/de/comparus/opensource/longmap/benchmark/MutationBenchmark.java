@@ -0,0 +1,43 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes into a filled map whose size stays constant: replacing the value of an existing key,
+ * and removing a key which is put back in the same operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class MutationBenchmark {
+
+    @Benchmark
+    public Long putExisting(FilledMapState state) {
+        return state.map.put(state.nextKey(), FilledMapState.VALUE);
+    }
+
+    @Benchmark
+    public Long removeAndPutBack(FilledMapState state) {
+        long key = state.nextKey();
+        Long value = state.map.remove(key);
+        state.map.put(key, value);
+        return value;
+    }
+
+    @Benchmark
+    public Long putMissingAndRemove(FilledMapState state) {
+        long key = state.nextMissingKey();
+        state.map.put(key, FilledMapState.VALUE);
+        return state.map.remove(key);
+    }
+}
@@ -0,0 +1,66 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A map whose size oscillates around a resize threshold: it holds {@link #size} keys and every
+ * measured operation puts {@link #amplitude} more keys and removes them again. With {@code size = 0}
+ * the map oscillates between empty and a few mappings; the other sizes are the top load factor (0.8)
+ * of a table of 2^14 and 2^20 slots, so the puts cross the grow threshold and the removals fall back
+ * below it. A map which resizes on every crossing shows it as a cost in the order of the table size
+ * per operation and as a high allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class OscillationBenchmark {
+
+    @Param({"0", "13107", "838860"})
+    public int size;
+
+    @Param({"1", "100"})
+    public int amplitude;
+
+    @Param({"LONG_MAP_IMPL", "LONG_MAP_IMPL_INCREMENTAL", "CUCKOO", "ROBIN_HOOD", "TIERED"})
+    public MapType type;
+
+    private long[] keys;
+    private LongMap<Long> map;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = KeyDistribution.RANDOM.generate(size + amplitude, 1);
+        map = type.create();
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], FilledMapState.VALUE);
+        }
+    }
+
+    @Benchmark
+    public LongMap<Long> putAndRemove() {
+        for (int i = size; i < keys.length; i++) {
+            map.put(keys[i], FilledMapState.VALUE);
+        }
+        for (int i = size; i < keys.length; i++) {
+            map.remove(keys[i]);
+        }
+        return map;
+    }
+}
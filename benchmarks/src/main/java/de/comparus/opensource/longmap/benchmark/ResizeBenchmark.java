@@ -0,0 +1,85 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resize-heavy workloads: filling an empty map (every doubling of the table is paid),
+ * filling a map presized for all keys (no doubling is paid, for the implementations which
+ * can be presized) and draining a full one (every halving is paid).
+ * Each measured operation handles all keys.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Thread)
+public class ResizeBenchmark {
+
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "CLUSTERED", "ADVERSARIAL", "SKEWED"})
+    public KeyDistribution distribution;
+
+    @Param({"LONG_MAP_IMPL", "CUCKOO", "TIERED"})
+    public MapType type;
+
+    private long[] keys;
+    private LongMap<Long> emptyMap;
+    private LongMap<Long> presizedMap;
+    private LongMap<Long> filledMap;
+
+    @Setup(Level.Trial)
+    public void generateKeys() {
+        keys = distribution.generate(size, 1);
+    }
+
+    @Setup(Level.Iteration)
+    public void createMaps() {
+        emptyMap = type.create();
+        presizedMap = type.create(size);
+        filledMap = type.create();
+        for (long key : keys) {
+            filledMap.put(key, FilledMapState.VALUE);
+        }
+    }
+
+    @Benchmark
+    public LongMap<Long> fillFromEmpty() {
+        for (long key : keys) {
+            emptyMap.put(key, FilledMapState.VALUE);
+        }
+        return emptyMap;
+    }
+
+    @Benchmark
+    public LongMap<Long> fillPresized() {
+        for (long key : keys) {
+            presizedMap.put(key, FilledMapState.VALUE);
+        }
+        return presizedMap;
+    }
+
+    @Benchmark
+    public LongMap<Long> drainToEmpty() {
+        for (long key : keys) {
+            filledMap.remove(key);
+        }
+        return filledMap;
+    }
+}
@@ -0,0 +1,81 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMapImpl;
+import de.comparus.opensource.longmap.ValueCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoint and restore of a filled {@link LongMapImpl} through a file: the snapshot is written
+ * with the keys in the order of the table or sorted and delta encoded, and read back into a new map.
+ * Divide the size of the snapshot file (printed at setup) by the time to compare with the disk bandwidth.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    public KeyDistribution distribution;
+
+    @Param({"false", "true"})
+    public boolean sortedKeys;
+
+    private LongMapImpl<Long> map;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        map = new LongMapImpl<>();
+        for (long key : distribution.generate(size, 1)) {
+            map.put(key, FilledMapState.VALUE);
+        }
+        file = Files.createTempFile("long-map", ".snapshot");
+        writeTo();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Path writeTo() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            map.writeTo(channel, ValueCodecs.LONG, sortedKeys);
+        }
+        return file;
+    }
+
+    @Benchmark
+    public LongMapImpl<Long> readFrom() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return LongMapImpl.readFrom(channel, ValueCodecs.LONG);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import de.comparus.opensource.longmap.LongMap;
+import de.comparus.opensource.longmap.LongMapCursor;
+import de.comparus.opensource.longmap.LongObjConsumer;
+import de.comparus.opensource.longmap.LongObjFunction;
+
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+/**
+ * A map guarded by one global lock - the baseline for the concurrent implementations.
+ */
+public class SynchronizedLongMap<V> implements LongMap<V> {
+
+    private final LongMap<V> map;
+
+    public SynchronizedLongMap(LongMap<V> map) {
+        this.map = map;
+    }
+
+    public synchronized V put(long key, V value) {
+        return map.put(key, value);
+    }
+
+    public synchronized V get(long key) {
+        return map.get(key);
+    }
+
+    public synchronized V remove(long key) {
+        return map.remove(key);
+    }
+
+    public synchronized boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public synchronized boolean containsKey(long key) {
+        return map.containsKey(key);
+    }
+
+    public synchronized boolean containsValue(V value) {
+        return map.containsValue(value);
+    }
+
+    public synchronized long[] keys() {
+        return map.keys();
+    }
+
+    public synchronized V[] values() {
+        return map.values();
+    }
+
+    public synchronized long size() {
+        return map.size();
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized V getOrDefault(long key, V defaultValue) {
+        return map.getOrDefault(key, defaultValue);
+    }
+
+    public synchronized V putIfAbsent(long key, V value) {
+        return map.putIfAbsent(key, value);
+    }
+
+    public synchronized V replace(long key, V value) {
+        return map.replace(key, value);
+    }
+
+    public synchronized V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        return map.computeIfAbsent(key, mappingFunction);
+    }
+
+    public synchronized V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        return map.compute(key, remappingFunction);
+    }
+
+    public synchronized V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return map.merge(key, value, remappingFunction);
+    }
+
+    /**
+     * The walk itself is not guarded: the cursor must not be used concurrently with updates.
+     */
+    public synchronized LongMapCursor<V> cursor() {
+        return map.cursor();
+    }
+
+    public synchronized void forEach(LongObjConsumer<? super V> action) {
+        map.forEach(action);
+    }
+}
@@ -0,0 +1,67 @@
+package de.comparus.opensource.longmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-modify-write updates of a filled map: the compound operations, which locate the slot
+ * once, against the same update written as get followed by put (two probes).
+ * The size of the map stays constant: the values of existing keys are changed, and a missing
+ * key is put and removed in the same operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class UpdateBenchmark {
+
+    @Benchmark
+    public Long getThenPutExisting(FilledMapState state) {
+        long key = state.nextKey();
+        Long value = state.map.get(key);
+        return state.map.put(key, (value == FilledMapState.VALUE) ? FilledMapState.MISSING_VALUE : FilledMapState.VALUE);
+    }
+
+    @Benchmark
+    public Long computeExisting(FilledMapState state) {
+        return state.map.compute(state.nextKey(),
+                (key, value) -> (value == FilledMapState.VALUE) ? FilledMapState.MISSING_VALUE : FilledMapState.VALUE);
+    }
+
+    @Benchmark
+    public Long mergeExisting(FilledMapState state) {
+        return state.map.merge(state.nextKey(), FilledMapState.VALUE,
+                (value, given) -> (value == given) ? FilledMapState.MISSING_VALUE : given);
+    }
+
+    @Benchmark
+    public Long getThenPutMissingAndRemove(FilledMapState state) {
+        long key = state.nextMissingKey();
+        if (state.map.get(key) == null) {
+            state.map.put(key, FilledMapState.VALUE);
+        }
+        return state.map.remove(key);
+    }
+
+    @Benchmark
+    public Long computeIfAbsentMissingAndRemove(FilledMapState state) {
+        long key = state.nextMissingKey();
+        state.map.computeIfAbsent(key, k -> FilledMapState.VALUE);
+        return state.map.remove(key);
+    }
+
+    @Benchmark
+    public Long putIfAbsentMissingAndRemove(FilledMapState state) {
+        long key = state.nextMissingKey();
+        state.map.putIfAbsent(key, FilledMapState.VALUE);
+        return state.map.remove(key);
+    }
+}
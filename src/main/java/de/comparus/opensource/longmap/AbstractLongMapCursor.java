@@ -0,0 +1,78 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Base of the cursors of the maps: keeps the current mapping and the state of the walk.
+ * The implementations find the next mapping in their storage and remove the current one.
+ */
+abstract class AbstractLongMapCursor<V> implements LongMapCursor<V> {
+
+    private long key;
+    private Object value;
+    private boolean positioned;         // whether key and value are the current mapping
+    private boolean removed;            // whether some mapping has been removed by the cursor
+    private boolean finished;
+
+    public boolean advance() {
+        positioned = false;
+        if (finished) {
+            return false;
+        }
+        if (findNext()) {
+            positioned = true;
+            return true;
+        }
+        finished = true;
+        if (removed) {
+            afterRemovals();
+        }
+        return false;
+    }
+
+    public long key() throws IllegalStateException {
+        checkPositioned();
+        return key;
+    }
+
+    public V value() throws IllegalStateException {
+        checkPositioned();
+        return (V) value;
+    }
+
+    public void remove() throws IllegalStateException {
+        checkPositioned();
+        removeCurrent();
+        positioned = false;
+        removed = true;
+    }
+
+    /**
+     * Sets the mapping found by {@link #findNext()}.
+     */
+    final void setCurrent(long key, Object value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Finds the mapping after the current one and passes it to {@link #setCurrent(long, Object)}.
+     *
+     * @return <tt>true</tt> if the mapping has been found, or <tt>false</tt> at the end of the map.
+     */
+    abstract boolean findNext();
+
+    /**
+     * Removes the current mapping without any resize of the storage.
+     */
+    abstract void removeCurrent();
+
+    /**
+     * Shrinks (or frees) the storage after the walk, if the removals require it.
+     */
+    abstract void afterRemovals();
+
+    private void checkPositioned() {
+        if (!positioned) {
+            throw new IllegalStateException("no current mapping");
+        }
+    }
+}
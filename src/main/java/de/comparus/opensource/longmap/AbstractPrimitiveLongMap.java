@@ -0,0 +1,371 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * The engine of the maps with primitive values ({@link LongLongMapImpl}, {@link LongIntMapImpl},
+ * {@link LongDoubleMapImpl}): open addressing with double hashing and a reserve for the keys which
+ * have not found a slot. The reserve is a linear probing table hashed by {@link LongMaps#mix(long)},
+ * at most half full, with backward-shift deletion, as the reserve of {@link LongMapImpl}.
+ * <p>
+ * The keys and the slot states are kept here; a subclass keeps the values in the parallel arrays
+ * {@link #values} and {@link #reserveValues}, which are moved between slots with
+ * {@link System#arraycopy(Object, int, Object, int, int)}, so this class does not know their type.
+ *
+ * @param <A> the type of the value arrays ({@code long[]}, {@code int[]} or {@code double[]}).
+ */
+abstract class AbstractPrimitiveLongMap<A> {
+
+    private long[] keys;
+    A values;
+    byte[] states;                      // FREE, OCCUPIED or DELETED
+
+    private long[] reserveKeys;
+    A reserveValues;
+    byte[] reserveStates;               // FREE or OCCUPIED
+    private int capacity;
+    private int size;
+    private int reserveSize;
+
+    private double topLoadFactor;
+    private double bottomLoadFactor;
+
+    static final int DEFAULT_CAPACITY = 16;
+    static final double DEFAULT_TOP_LOAD_FACTOR = 0.8;
+    static final double DEFAULT_BOTTOM_LOAD_FACTOR = 0.2;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int DEFAULT_MAX_LOOP = 10;
+    private static final int DEFAULT_RESERVE_CAPACITY = 8;
+
+    static final byte FREE = 0;
+    static final byte OCCUPIED = 1;
+    static final byte DELETED = 2;
+
+    /**
+     * Returned by {@link #getIndexForPut(long)} when the mapping can not be done.
+     */
+    static final int NO_INDEX = Integer.MIN_VALUE;
+
+    AbstractPrimitiveLongMap() {
+        capacity = DEFAULT_CAPACITY;
+        size = 0;
+        topLoadFactor = DEFAULT_TOP_LOAD_FACTOR;
+        bottomLoadFactor = DEFAULT_BOTTOM_LOAD_FACTOR;
+    }
+
+    /**
+     * Creates a value array of the subclass.
+     *
+     * @param length the length of the array.
+     * @return the new array.
+     */
+    abstract A newValues(int length);
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return getKeyIndex(key) != -1
+                || getReserveIndex(key) != -1;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        if (size != 0) {
+            int position = 0;
+            for (int i = 0; i < capacity; i++) {
+                if (states[i] == OCCUPIED) {
+                    result[position++] = keys[i];
+                }
+            }
+            for (int i = 0; reserveSize != 0 && i < reserveStates.length; i++) {
+                if (reserveStates[i] == OCCUPIED) {
+                    result[position++] = reserveKeys[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     */
+    public void clear() {
+        capacity = DEFAULT_CAPACITY;
+        keys = null;
+        values = null;
+        states = null;
+        clearReserve();
+        size = 0;
+    }
+
+    /**
+     * Finds the slot of the key, or takes a free one for it, growing the table if needed.
+     * The caller writes the value into the returned slot.
+     *
+     * @param key the key which is mapped.
+     * @return the index in the table, <tt>~index</tt> in the reserve,
+     * or {@link #NO_INDEX} if the map can not take one more mapping.
+     */
+    int getIndexForPut(long key) {
+        if (size > MAX_CAPACITY) {
+            return NO_INDEX;
+        }
+        if ((double) (size + 1) / capacity > topLoadFactor) {
+            changeTableSize(true);
+        }
+        initTable();
+        int indexForInsert = -1;
+
+        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
+            int index = calculateIndex(key, i);
+            byte state = states[index];
+
+            if (state == FREE) {
+                if (indexForInsert == -1) {
+                    indexForInsert = index;
+                }
+                break;
+            }
+            if (state == DELETED) {
+                if (indexForInsert == -1) {
+                    indexForInsert = index;
+                }
+            } else if (keys[index] == key) {
+                return index;
+            }
+        }
+
+        int reserveIndex = getReserveIndex(key);
+        if (reserveIndex != -1) {
+            return ~reserveIndex;
+        }
+        if (indexForInsert != -1) {
+            keys[indexForInsert] = key;
+            states[indexForInsert] = OCCUPIED;
+            size++;
+            return indexForInsert;
+        }
+        if (reserveSize >= Math.max(10, (size + 1) / 10) && capacity <= MAX_CAPACITY / 2) {
+            changeTableSize(true);
+            return getIndexForPut(key);
+        }
+        size++;
+        return ~putToReserve(key);
+    }
+
+    int getKeyIndex(long key) {
+        if (states == null) {
+            return -1;
+        }
+        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
+            int index = calculateIndex(key, i);
+            byte state = states[index];
+            if (state == FREE) {
+                return -1;
+            }
+            if (state == OCCUPIED && keys[index] == key) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    int getReserveIndex(long key) {
+        if (reserveSize == 0) {
+            return -1;
+        }
+        int mask = reserveStates.length - 1;
+        for (int index = getReserveHome(key, mask); reserveStates[index] == OCCUPIED; index = (index + 1) & mask) {
+            if (reserveKeys[index] == key) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    void removeEntry(int index) {
+        states[index] = DELETED;
+        size--;
+        trim();
+    }
+
+    void removeReserveEntry(int free) {
+        int mask = reserveStates.length - 1;
+        int index = free;
+        while (true) {
+            index = (index + 1) & mask;
+            if (reserveStates[index] == FREE) {
+                break;
+            }
+            int home = getReserveHome(reserveKeys[index], mask);
+            //the entry may fill the free slot if its home is not in (free, index]
+            if (((index - home) & mask) >= ((index - free) & mask)) {
+                reserveKeys[free] = reserveKeys[index];
+                System.arraycopy(reserveValues, index, reserveValues, free, 1);
+                free = index;
+            }
+        }
+        reserveStates[free] = FREE;
+        reserveSize--;
+        size--;
+        trim();
+    }
+
+
+    private void trim() {
+        if (size == 0) {
+            clear();
+        } else if ((double) size / capacity < bottomLoadFactor) {
+            changeTableSize(false);
+        }
+    }
+
+    private void initTable() {
+        if (states == null) {
+            keys = new long[capacity];
+            values = newValues(capacity);
+            states = new byte[capacity];
+        }
+    }
+
+    private void changeTableSize(boolean increase) {
+        if ((increase && capacity <= MAX_CAPACITY / 2)
+                || (!increase && capacity >= DEFAULT_CAPACITY * 2)) {
+            capacity = (increase) ? (capacity << 1) : (capacity >> 1);
+            rehash();
+            if (reserveSize > Math.max(10, size / 10)) {
+                changeTableSize(true);
+            }
+        }
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        A oldValues = values;
+        byte[] oldStates = states;
+        long[] oldReserveKeys = reserveKeys;
+        A oldReserveValues = reserveValues;
+        byte[] oldReserveStates = reserveStates;
+
+        keys = new long[capacity];
+        values = newValues(capacity);
+        states = new byte[capacity];
+        clearReserve();
+        if (oldStates != null) {
+            for (int i = 0; i < oldStates.length; i++) {
+                if (oldStates[i] == OCCUPIED) {
+                    putToTable(oldKeys[i], oldValues, i);
+                }
+            }
+        }
+        if (oldReserveStates != null) {
+            for (int i = 0; i < oldReserveStates.length; i++) {
+                if (oldReserveStates[i] == OCCUPIED) {
+                    putToTable(oldReserveKeys[i], oldReserveValues, i);
+                }
+            }
+        }
+    }
+
+    private int calculateIndex(long key, int i) {
+        int hash = getHash(key);
+        int h1 = hash % capacity;
+        int h2 = 1 + (hash % (capacity - 1));
+        return (int) ((h1 + (long) i * h2) % capacity);
+    }
+
+    private int getHash(long key) {
+        return (int) (key ^ (key >>> 32)) & Integer.MAX_VALUE;
+    }
+
+    private void putToTable(long key, A from, int fromIndex) {
+        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
+            int index = calculateIndex(key, i);
+            if (states[index] == FREE) {
+                keys[index] = key;
+                System.arraycopy(from, fromIndex, values, index, 1);
+                states[index] = OCCUPIED;
+                return;
+            }
+        }
+        int index = putToReserve(key);
+        System.arraycopy(from, fromIndex, reserveValues, index, 1);
+    }
+
+    private int putToReserve(long key) {
+        if (reserveStates == null) {
+            reserveKeys = new long[DEFAULT_RESERVE_CAPACITY];
+            reserveValues = newValues(DEFAULT_RESERVE_CAPACITY);
+            reserveStates = new byte[DEFAULT_RESERVE_CAPACITY];
+        } else if ((reserveSize + 1) * 2 > reserveStates.length) {
+            resizeReserve(reserveStates.length << 1);
+        }
+        reserveSize++;
+        return insertToReserve(key);
+    }
+
+    private int insertToReserve(long key) {
+        int mask = reserveStates.length - 1;
+        int index = getReserveHome(key, mask);
+        while (reserveStates[index] == OCCUPIED) {
+            index = (index + 1) & mask;
+        }
+        reserveKeys[index] = key;
+        reserveStates[index] = OCCUPIED;
+        return index;
+    }
+
+    private void resizeReserve(int length) {
+        long[] oldReserveKeys = reserveKeys;
+        A oldReserveValues = reserveValues;
+        byte[] oldReserveStates = reserveStates;
+        reserveKeys = new long[length];
+        reserveValues = newValues(length);
+        reserveStates = new byte[length];
+        for (int i = 0; i < oldReserveStates.length; i++) {
+            if (oldReserveStates[i] == OCCUPIED) {
+                int index = insertToReserve(oldReserveKeys[i]);
+                System.arraycopy(oldReserveValues, i, reserveValues, index, 1);
+            }
+        }
+    }
+
+    private int getReserveHome(long key, int mask) {
+        return (int) LongMaps.mix(key) & mask;
+    }
+
+    private void clearReserve() {
+        reserveKeys = null;
+        reserveValues = null;
+        reserveStates = null;
+        reserveSize = 0;
+    }
+}
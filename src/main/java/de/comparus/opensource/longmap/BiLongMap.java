@@ -0,0 +1,427 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+/**
+ * Long map with a reverse index: besides the mappings kept by the wrapped map, every distinct
+ * value is mapped with the keys it is mapped with. {@link #containsValue(Object)} and
+ * {@link #keysOf(Object)} look the value up in the index instead of scanning the whole table,
+ * at the price of the index memory (see {@link #indexMemoryUsage()}) and of an index update
+ * on every {@link #put(long, Object)} and {@link #remove(long)}.
+ * <p>
+ * The index is a linear probing table of values (compared with {@code equals}) with backward-shift
+ * deletion. The first key of a value is kept in the table itself, so a value which is mapped with
+ * one key takes no extra objects; the following keys are kept in an array of the value,
+ * and removal of one of them is linear in the number of keys sharing the value.
+ */
+public class BiLongMap<V> implements LongMap<V> {
+
+    private final LongMap<V> map;
+
+    private Object[] indexValues;               // null for a free slot
+    private long[] firstKeys;                   // the first key of every value
+    private long[][] moreKeys;                  // the following keys of every value, null while there are none
+    private int[] keyCounts;                    // the number of keys of every value
+    private int indexSize;                      // the number of distinct values
+
+    private static final int DEFAULT_INDEX_CAPACITY = 16;
+    private static final double INDEX_TOP_LOAD_FACTOR = 0.5;
+    private static final double INDEX_BOTTOM_LOAD_FACTOR = 0.125;
+    private static final int DEFAULT_MORE_KEYS_CAPACITY = 2;
+
+    /**
+     * Creates bidirectional long map based on a {@link LongMapImpl}.
+     */
+    public BiLongMap() {
+        this(new LongMapImpl<>());
+    }
+
+    /**
+     * Creates bidirectional long map based on the specified map, the existing mappings are indexed.
+     * The map must not be changed directly afterwards, otherwise the index gets out of sync.
+     *
+     * @param map the map which keeps the mappings.
+     */
+    public BiLongMap(LongMap<V> map) {
+        this.map = map;
+        map.forEach((key, value) -> addToIndex(value, key));
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        V oldValue = map.get(key);
+        if (map.put(key, value) == null) {
+            return null;
+        }
+        if (oldValue == null) {
+            addToIndex(value, key);
+        } else if (!oldValue.equals(value)) {
+            removeFromIndex(oldValue, key);
+            addToIndex(value, key);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        return map.get(key);
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        V value = map.remove(key);
+        if (value != null) {
+            removeFromIndex(value, key);
+        }
+        return value;
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map, using the reverse index.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        return value != null && getIndexSlot(value) != -1;
+    }
+
+    /**
+     * Returns all keys which are mapped with the specified value, using the reverse index.
+     *
+     * @param value the value which keys are searched.
+     * @return the <tt>array</tt> of the keys mapped with the value,
+     * or empty array if there are none or if value == null.
+     */
+    public long[] keysOf(V value) {
+        int slot = (value != null) ? getIndexSlot(value) : -1;
+        if (slot == -1) {
+            return new long[0];
+        }
+        long[] result = new long[keyCounts[slot]];
+        result[0] = firstKeys[slot];
+        if (result.length > 1) {
+            System.arraycopy(moreKeys[slot], 0, result, 1, result.length - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        return map.keys();
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        return map.values();
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return map.size();
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     */
+    public void clear() {
+        map.clear();
+        clearIndex();
+    }
+
+    /**
+     * Returns a cursor over the mappings of the wrapped map, which keeps the index in sync
+     * when a mapping is removed through it.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor(map.cursor());
+    }
+
+    /**
+     * Performs the action for every mapping of the wrapped map.
+     *
+     * @param action the action performed for every key and its value.
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        map.forEach(action);
+    }
+
+    /**
+     * Returns the number of distinct values in the map.
+     *
+     * @return the number of values in the reverse index.
+     */
+    public int distinctValues() {
+        return indexSize;
+    }
+
+    /**
+     * Estimates the heap taken by the reverse index (not counting the values themselves),
+     * i.e. the memory which the bidirectional mode adds to the wrapped map.
+     * The arrays of the following keys are scanned, so the call takes time linear in the number of values.
+     *
+     * @return the number of bytes taken by the index.
+     */
+    public long indexMemoryUsage() {
+        if (indexValues == null) {
+            return 0;
+        }
+        int capacity = indexValues.length;
+        long result = LongMaps.getArrayBytes(capacity, LongMaps.REFERENCE_BYTES)
+                + LongMaps.getArrayBytes(capacity, Long.BYTES)
+                + LongMaps.getArrayBytes(capacity, LongMaps.REFERENCE_BYTES)
+                + LongMaps.getArrayBytes(capacity, Integer.BYTES);
+        for (long[] keys : moreKeys) {
+            if (keys != null) {
+                result += LongMaps.getArrayBytes(keys.length, Long.BYTES);
+            }
+        }
+        return result;
+    }
+
+
+    private int getHome(Object value, int mask) {
+        return (int) LongMaps.mix(value.hashCode()) & mask;
+    }
+
+    private int getIndexSlot(Object value) {
+        if (indexValues == null) {
+            return -1;
+        }
+        int mask = indexValues.length - 1;
+        for (int slot = getHome(value, mask); indexValues[slot] != null; slot = (slot + 1) & mask) {
+            if (value.equals(indexValues[slot])) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void addToIndex(Object value, long key) {
+        if (indexValues == null) {
+            allocateIndex(DEFAULT_INDEX_CAPACITY);
+        }
+        int mask = indexValues.length - 1;
+        int slot = getHome(value, mask);
+        while (indexValues[slot] != null) {
+            if (value.equals(indexValues[slot])) {
+                addKey(slot, key);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (indexSize + 1 > indexValues.length * INDEX_TOP_LOAD_FACTOR) {
+            resizeIndex(indexValues.length << 1);
+            slot = getFreeSlot(value);
+        }
+        indexValues[slot] = value;
+        firstKeys[slot] = key;
+        keyCounts[slot] = 1;
+        indexSize++;
+    }
+
+    private void addKey(int slot, long key) {
+        long[] keys = moreKeys[slot];
+        int position = keyCounts[slot] - 1;
+        if (keys == null) {
+            keys = moreKeys[slot] = new long[DEFAULT_MORE_KEYS_CAPACITY];
+        } else if (position == keys.length) {
+            long[] grown = new long[keys.length << 1];
+            System.arraycopy(keys, 0, grown, 0, position);
+            keys = moreKeys[slot] = grown;
+        }
+        keys[position] = key;
+        keyCounts[slot]++;
+    }
+
+    private void removeFromIndex(Object value, long key) {
+        int slot = getIndexSlot(value);
+        int count = keyCounts[slot];
+        if (count == 1) {
+            removeSlot(slot);
+            indexSize--;
+            if (indexSize == 0) {
+                clearIndex();
+            } else if (indexSize < indexValues.length * INDEX_BOTTOM_LOAD_FACTOR
+                    && indexValues.length > DEFAULT_INDEX_CAPACITY) {
+                resizeIndex(indexValues.length >> 1);
+            }
+            return;
+        }
+        long[] keys = moreKeys[slot];
+        long last = keys[count - 2];
+        if (firstKeys[slot] == key) {
+            firstKeys[slot] = last;
+        } else {
+            for (int i = 0; i < count - 2; i++) {
+                if (keys[i] == key) {
+                    keys[i] = last;
+                    break;
+                }
+            }
+        }
+        keyCounts[slot]--;
+        if (count == 2) {
+            moreKeys[slot] = null;
+        }
+    }
+
+    private void removeSlot(int free) {
+        int mask = indexValues.length - 1;
+        int slot = free;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (indexValues[slot] == null) {
+                break;
+            }
+            int home = getHome(indexValues[slot], mask);
+            //the value may fill the free slot if its home is not in (free, slot]
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                moveSlot(slot, free);
+                free = slot;
+            }
+        }
+        indexValues[free] = null;
+        moreKeys[free] = null;
+    }
+
+    private void moveSlot(int from, int to) {
+        indexValues[to] = indexValues[from];
+        firstKeys[to] = firstKeys[from];
+        moreKeys[to] = moreKeys[from];
+        keyCounts[to] = keyCounts[from];
+    }
+
+    private int getFreeSlot(Object value) {
+        int mask = indexValues.length - 1;
+        int slot = getHome(value, mask);
+        while (indexValues[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocateIndex(int capacity) {
+        indexValues = new Object[capacity];
+        firstKeys = new long[capacity];
+        moreKeys = new long[capacity][];
+        keyCounts = new int[capacity];
+    }
+
+    private void resizeIndex(int capacity) {
+        Object[] oldValues = indexValues;
+        long[] oldFirstKeys = firstKeys;
+        long[][] oldMoreKeys = moreKeys;
+        int[] oldKeyCounts = keyCounts;
+        allocateIndex(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = getFreeSlot(oldValues[i]);
+                indexValues[slot] = oldValues[i];
+                firstKeys[slot] = oldFirstKeys[i];
+                moreKeys[slot] = oldMoreKeys[i];
+                keyCounts[slot] = oldKeyCounts[i];
+            }
+        }
+    }
+
+    private void clearIndex() {
+        indexValues = null;
+        firstKeys = null;
+        moreKeys = null;
+        keyCounts = null;
+        indexSize = 0;
+    }
+
+    private class Cursor implements LongMapCursor<V> {
+
+        private final LongMapCursor<V> cursor;
+
+        private Cursor(LongMapCursor<V> cursor) {
+            this.cursor = cursor;
+        }
+
+        public boolean advance() {
+            return cursor.advance();
+        }
+
+        public long key() throws IllegalStateException {
+            return cursor.key();
+        }
+
+        public V value() throws IllegalStateException {
+            return cursor.value();
+        }
+
+        public void remove() throws IllegalStateException {
+            long key = cursor.key();
+            V value = cursor.value();
+            cursor.remove();
+            removeFromIndex(value, key);
+        }
+    }
+}
@@ -0,0 +1,802 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+/**
+ * Thread-safe long map. The key space is split by hash into segments, each of which is
+ * an open addressing table guarded by its own lock, so writers of different segments
+ * do not wait for each other.
+ * <p>
+ * {@link #get(long)}, {@link #containsKey(long)} and {@link #containsValue(Object)} take no lock.
+ * It is safe because within one table a slot never changes its key: a free slot gets its key
+ * before its value is published, and a removed slot keeps its key (and may be reused only by
+ * the same key) until the segment is rehashed into a new table.
+ * <p>
+ * {@link #putIfAbsent(long, Object)}, {@link #replace(long, Object)}, {@link #computeIfAbsent(long, LongFunction)},
+ * {@link #compute(long, LongObjFunction)} and {@link #merge(long, Object, BiFunction)} are atomic:
+ * they read and write the mapping under the lock of its segment (the functions are called under it too).
+ * <p>
+ * {@link #size()} sums the sizes of the segments without locking them, {@link #keys()},
+ * {@link #values()} and {@link #clear()} lock the segments one at a time; under concurrent
+ * updates their results are consistent within a segment, but not across segments.
+ * <p>
+ * {@link #cursor()} and {@link #forEach(LongObjConsumer)} take no lock either and are weakly
+ * consistent: they walk the table which every segment has when the walk reaches it, never fail
+ * because of concurrent updates and may or may not see the updates made during the walk.
+ * <p>
+ * {@link #snapshot()} returns a consistent point-in-time view for the reads which need one
+ * (e.g. {@link #keys()} and {@link #values()} which agree with each other). The tables of the segments
+ * are copy-on-write pages: the snapshot shares them with the map, and the first write to a segment
+ * after the snapshot copies the table of that segment only.
+ */
+public class ConcurrentLongMap<V> implements LongMap<V> {
+
+    private final Segment[] segments;
+    private final int segmentShift;             // 64 - log2(number of segments)
+
+    private static final int MIN_CONCURRENCY_LEVEL = 16;
+    private static final int MAX_CONCURRENCY_LEVEL = 1 << 16;
+
+    private static final Object DELETED = new Object();
+
+    /**
+     * Creates concurrent long map with the number of segments equal to four times
+     * the number of available processors (but not less than {@value ConcurrentLongMap#MIN_CONCURRENCY_LEVEL}),
+     * rounded up to a power of two.
+     */
+    public ConcurrentLongMap() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates concurrent long map with the specified number of segments.
+     *
+     * @param concurrencyLevel the expected number of concurrently updating threads,
+     *                         is rounded up to a power of two.
+     * @throws IllegalArgumentException if concurrencyLevel is not positive.
+     */
+    public ConcurrentLongMap(int concurrencyLevel) throws IllegalArgumentException {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel = " + concurrencyLevel);
+        }
+        int segmentsNumber = Integer.highestOneBit(Math.min(concurrencyLevel, MAX_CONCURRENCY_LEVEL) * 2 - 1);
+        segmentsNumber = Math.max(segmentsNumber, MIN_CONCURRENCY_LEVEL);
+        segments = new Segment[segmentsNumber];
+        for (int i = 0; i < segmentsNumber; i++) {
+            segments[i] = new Segment();
+        }
+        segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(segmentsNumber);
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        long hash = LongMaps.mix(key);
+        return getSegment(hash).put(key, hash, value) ? value : null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        long hash = LongMaps.mix(key);
+        return (V) getSegment(hash).get(key, hash);
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        long hash = LongMaps.mix(key);
+        return (V) getSegment(hash).remove(key, hash);
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null) {
+            for (Segment segment : segments) {
+                if (segment.containsValue(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        long[] result = new long[(int) size()];
+        int position = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                if (position + segment.size > result.length) {
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, position + segment.size));
+                }
+                position = segment.copyKeys(result, position);
+            } finally {
+                segment.unlock();
+            }
+        }
+        return (position == result.length) ? result : Arrays.copyOf(result, position);
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        Object[] all = new Object[(int) size()];
+        int position = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                if (position + segment.size > all.length) {
+                    all = Arrays.copyOf(all, Math.max(all.length * 2, position + segment.size));
+                }
+                position = segment.copyValues(all, position);
+            } finally {
+                segment.unlock();
+            }
+        }
+        if (position == 0) {
+            return null;
+        }
+
+        Class<?> valuesClass = null;
+        for (int i = 0; i < position; i++) {
+            valuesClass = LongMaps.getCommonClass(valuesClass, all[i]);
+        }
+        V[] result = (V[]) Array.newInstance(valuesClass, position);
+        System.arraycopy(all, 0, result, 0, position);
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     * Under concurrent updates the result is an estimate.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     * Mappings put concurrently into already cleared segments are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                segment.clear();
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic.
+     */
+    @Nullable
+    public V putIfAbsent(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        long hash = LongMaps.mix(key);
+        return (V) getSegment(hash).putIfAbsent(key, hash, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic.
+     */
+    @Nullable
+    public V replace(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        long hash = LongMaps.mix(key);
+        return (V) getSegment(hash).replace(key, hash, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic, an existing mapping is found without locking.
+     */
+    @Nullable
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        return compute(key, (k, oldValue) -> (oldValue != null) ? oldValue : mappingFunction.apply(k));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic.
+     */
+    @Nullable
+    public V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        long hash = LongMaps.mix(key);
+        return getSegment(hash).compute(key, hash, remappingFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic.
+     */
+    @Nullable
+    public V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        return compute(key, (k, oldValue) -> (oldValue != null) ? remappingFunction.apply(oldValue, value) : value);
+    }
+
+    /**
+     * Returns a read-only view of the mappings of the map at this moment, which later updates
+     * of the map do not change. The segments are locked one after another only to mark their tables
+     * as shared, the mappings are not copied: the view takes O(number of segments) time and memory.
+     * A writer which then changes a segment copies its table (about 1 / number of segments
+     * of the mappings) and changes the copy, so readers of the view never block writers.
+     * <p>
+     * The view may be read by any threads without synchronization, its mutating methods throw
+     * {@link UnsupportedOperationException}.
+     *
+     * @return the consistent read-only view of the map.
+     */
+    public LongMap<V> snapshot() {
+        Table[] tables = new Table[segments.length];
+        long size = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+        }
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                Table current = segments[i].table;
+                if (current != null) {
+                    current.shared = true;
+                }
+                tables[i] = current;
+                size += segments[i].size;
+            }
+        } finally {
+            for (Segment segment : segments) {
+                segment.unlock();
+            }
+        }
+        return new Snapshot<>(tables, segmentShift, size);
+    }
+
+    /**
+     * Returns a weakly consistent cursor over the mappings of the map. Unlike the cursors of
+     * the other maps, it tolerates any concurrent updates of the map. {@link LongMapCursor#remove()}
+     * removes the mapping of the current key, whatever value it has got meanwhile.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+
+    private Segment getSegment(long hash) {
+        return segments[(int) (hash >>> segmentShift)];
+    }
+
+    private static class Table {
+
+        private final long[] keys;
+        private final AtomicReferenceArray<Object> values;      // null for a free slot, DELETED for a removed one
+        private final int mask;
+        private boolean shared;                 // the table belongs to a snapshot, guarded by the segment lock
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        @Nullable
+        private Object get(long key, long hash) {
+            int index = (int) hash & mask;
+            while (true) {
+                Object value = values.get(index);
+                if (value == null) {
+                    return null;
+                }
+                if (keys[index] == key) {
+                    return (value != DELETED) ? value : null;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        private boolean containsValue(Object value) {
+            for (int i = 0; i < keys.length; i++) {
+                Object candidate = values.get(i);
+                if (candidate != null && candidate != DELETED && value.equals(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int copyKeys(long[] result, int position) {
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values.get(i);
+                if (value != null && value != DELETED) {
+                    result[position++] = keys[i];
+                }
+            }
+            return position;
+        }
+
+        private int copyValues(Object[] result, int position) {
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values.get(i);
+                if (value != null && value != DELETED) {
+                    result[position++] = value;
+                }
+            }
+            return position;
+        }
+    }
+
+    private static class Segment extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        private volatile Table table;
+        private volatile int size;
+        private int used;                       // live and deleted slots, guarded by the lock
+
+        private static final int DEFAULT_CAPACITY = 16;
+        private static final int MAX_CAPACITY = 1 << 30;
+        private static final double TOP_LOAD_FACTOR = 0.7;
+        private static final double BOTTOM_LOAD_FACTOR = 0.1;
+
+        @Nullable
+        private Object get(long key, long hash) {
+            Table current = table;
+            return (current != null) ? current.get(key, hash) : null;
+        }
+
+        private boolean put(long key, long hash, Object value) {
+            lock();
+            try {
+                Table current = table;
+                if (current == null) {
+                    current = table = new Table(DEFAULT_CAPACITY);
+                } else if (current.shared) {
+                    rehash(current.keys.length);
+                    current = table;
+                }
+                int index = (int) hash & current.mask;
+                while (true) {
+                    Object old = current.values.get(index);
+                    if (old == null) {
+                        break;
+                    }
+                    if (current.keys[index] == key) {
+                        current.values.set(index, value);
+                        if (old == DELETED) {
+                            size++;
+                        }
+                        return true;
+                    }
+                    index = (index + 1) & current.mask;
+                }
+
+                if (used + 1 > current.keys.length * TOP_LOAD_FACTOR) {
+                    if (size + 1 > current.keys.length * TOP_LOAD_FACTOR / 2) {
+                        if (current.keys.length == MAX_CAPACITY) {
+                            return false;
+                        }
+                        rehash(current.keys.length << 1);
+                    } else {
+                        rehash(current.keys.length);
+                    }
+                    current = table;
+                    index = getFreeIndex(current, hash);
+                }
+                current.keys[index] = key;
+                current.values.set(index, value);
+                used++;
+                size++;
+                return true;
+            } finally {
+                unlock();
+            }
+        }
+
+        @Nullable
+        private Object remove(long key, long hash) {
+            lock();
+            try {
+                Table current = table;
+                if (current == null) {
+                    return null;
+                }
+                int index = (int) hash & current.mask;
+                while (true) {
+                    Object value = current.values.get(index);
+                    if (value == null) {
+                        return null;
+                    }
+                    if (current.keys[index] == key) {
+                        if (value == DELETED) {
+                            return null;
+                        }
+                        if (current.shared) {
+                            //the snapshot keeps the shared table, the removal goes to a copy
+                            rehash(current.keys.length);
+                            current = table;
+                            index = getIndex(current, key, hash);
+                        }
+                        current.values.set(index, DELETED);
+                        size--;
+                        if (size == 0) {
+                            clear();
+                        } else if (size < current.keys.length * BOTTOM_LOAD_FACTOR
+                                && current.keys.length > DEFAULT_CAPACITY) {
+                            rehash(current.keys.length >> 1);
+                        }
+                        return value;
+                    }
+                    index = (index + 1) & current.mask;
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        @Nullable
+        private Object putIfAbsent(long key, long hash, Object value) {
+            lock();
+            try {
+                Object oldValue = get(key, hash);
+                if (oldValue == null) {
+                    put(key, hash, value);
+                }
+                return oldValue;
+            } finally {
+                unlock();
+            }
+        }
+
+        @Nullable
+        private Object replace(long key, long hash, Object value) {
+            lock();
+            try {
+                Object oldValue = get(key, hash);
+                if (oldValue != null) {
+                    put(key, hash, value);
+                }
+                return oldValue;
+            } finally {
+                unlock();
+            }
+        }
+
+        @Nullable
+        private <V> V compute(long key, long hash, LongObjFunction<? super V, ? extends V> remappingFunction) {
+            lock();
+            try {
+                V oldValue = (V) get(key, hash);
+                V value = remappingFunction.apply(key, oldValue);
+                if (value != null) {
+                    if (!put(key, hash, value)) {
+                        return null;
+                    }
+                } else if (oldValue != null) {
+                    remove(key, hash);
+                }
+                return value;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Copies the live mappings into a new table and publishes it, readers of the old
+         * table still see a consistent (though outdated) state.
+         */
+        private void rehash(int capacity) {
+            Table old = table;
+            Table current = new Table(capacity);
+            for (int i = 0; i < old.keys.length; i++) {
+                Object value = old.values.get(i);
+                if (value != null && value != DELETED) {
+                    int index = getFreeIndex(current, LongMaps.mix(old.keys[i]));
+                    current.keys[index] = old.keys[i];
+                    current.values.lazySet(index, value);
+                }
+            }
+            used = size;
+            table = current;
+        }
+
+        private static int getIndex(Table table, long key, long hash) {
+            int index = (int) hash & table.mask;
+            while (table.keys[index] != key || table.values.get(index) == null) {
+                index = (index + 1) & table.mask;
+            }
+            return index;
+        }
+
+        private static int getFreeIndex(Table table, long hash) {
+            int index = (int) hash & table.mask;
+            while (table.values.get(index) != null) {
+                index = (index + 1) & table.mask;
+            }
+            return index;
+        }
+
+        private boolean containsValue(Object value) {
+            Table current = table;
+            return current != null && current.containsValue(value);
+        }
+
+        private int copyKeys(long[] result, int position) {
+            Table current = table;
+            return (current != null) ? current.copyKeys(result, position) : position;
+        }
+
+        private int copyValues(Object[] result, int position) {
+            Table current = table;
+            return (current != null) ? current.copyValues(result, position) : position;
+        }
+
+        private void clear() {
+            table = null;
+            used = 0;
+            size = 0;
+        }
+    }
+
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int segmentIndex = -1;
+        private Table table;                // the table of the current segment as the walk has found it
+        private int index;                  // the current slot of the table
+
+        boolean findNext() {
+            while (true) {
+                if (table != null) {
+                    while (++index < table.keys.length) {
+                        Object value = table.values.get(index);
+                        if (value != null && value != DELETED) {
+                            setCurrent(table.keys[index], value);
+                            return true;
+                        }
+                    }
+                }
+                if (++segmentIndex == segments.length) {
+                    return false;
+                }
+                table = segments[segmentIndex].table;
+                index = -1;
+            }
+        }
+
+        void removeCurrent() {
+            ConcurrentLongMap.this.remove(key());
+        }
+
+        void afterRemovals() {
+        }
+    }
+
+    /**
+     * Read-only view of the tables which the segments had when the snapshot was taken.
+     * No writer changes these tables any more, so the view needs no locks.
+     */
+    private static class Snapshot<V> implements LongMap<V> {
+
+        private final Table[] tables;           // null for a segment which was empty
+        private final int segmentShift;
+        private final long size;
+
+        private Snapshot(Table[] tables, int segmentShift, long size) {
+            this.tables = tables;
+            this.segmentShift = segmentShift;
+            this.size = size;
+        }
+
+        public V put(long key, V value) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("snapshot");
+        }
+
+        @Nullable
+        public V get(long key) {
+            long hash = LongMaps.mix(key);
+            Table table = tables[(int) (hash >>> segmentShift)];
+            return (table != null) ? (V) table.get(key, hash) : null;
+        }
+
+        public V remove(long key) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("snapshot");
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public boolean containsKey(long key) {
+            return get(key) != null;
+        }
+
+        public boolean containsValue(V value) {
+            if (value != null) {
+                for (Table table : tables) {
+                    if (table != null && table.containsValue(value)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public long[] keys() {
+            long[] result = new long[(int) size];
+            int position = 0;
+            for (Table table : tables) {
+                if (table != null) {
+                    position = table.copyKeys(result, position);
+                }
+            }
+            return result;
+        }
+
+        @Nullable
+        public V[] values() {
+            if (size == 0) {
+                return null;
+            }
+            Object[] all = new Object[(int) size];
+            int position = 0;
+            for (Table table : tables) {
+                if (table != null) {
+                    position = table.copyValues(all, position);
+                }
+            }
+
+            Class<?> valuesClass = null;
+            for (Object value : all) {
+                valuesClass = LongMaps.getCommonClass(valuesClass, value);
+            }
+            V[] result = (V[]) Array.newInstance(valuesClass, all.length);
+            System.arraycopy(all, 0, result, 0, all.length);
+            return result;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public void clear() throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("snapshot");
+        }
+
+        public LongMapCursor<V> cursor() {
+            return new SnapshotCursor<>(tables);
+        }
+    }
+
+    private static class SnapshotCursor<V> extends AbstractLongMapCursor<V> {
+
+        private final Table[] tables;
+        private int tableIndex = -1;
+        private Table table;
+        private int index;
+
+        private SnapshotCursor(Table[] tables) {
+            this.tables = tables;
+        }
+
+        boolean findNext() {
+            while (true) {
+                if (table != null) {
+                    while (++index < table.keys.length) {
+                        Object value = table.values.get(index);
+                        if (value != null && value != DELETED) {
+                            setCurrent(table.keys[index], value);
+                            return true;
+                        }
+                    }
+                }
+                if (++tableIndex == tables.length) {
+                    return false;
+                }
+                table = tables[tableIndex];
+                index = -1;
+            }
+        }
+
+        void removeCurrent() {
+            throw new UnsupportedOperationException("snapshot");
+        }
+
+        void afterRemovals() {
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Long map based on cuckoo hashing with two tables and a small stash.
+ * Every key may live only in its slot of the first table, in its slot of the second table
+ * or in the stash, so {@link #get(long)} and {@link #containsKey(long)} make at most
+ * 2 + {@value CuckooLongMap#STASH_CAPACITY} reads whatever the content of the map is.
+ * The price is paid by {@link #put(long, Object)}, which may move up to
+ * {@value CuckooLongMap#DEFAULT_MAX_LOOP} keys to their alternative slots.
+ */
+public class CuckooLongMap<V> implements LongMap<V> {
+
+    private long[] firstKeys;
+    private Object[] firstValues;           // null for a free slot
+    private long[] secondKeys;
+    private Object[] secondValues;
+    private long[] stashKeys;
+    private Object[] stashValues;
+
+    private int capacity;                   // of each table, always a power of two
+    private int size;
+    private int stashSize;
+    private long seed;
+    private long pendingKey;                // the pair left without a slot by the last failed place()
+    private Object pendingValue;
+
+    private double topLoadFactor;
+    private double bottomLoadFactor;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double DEFAULT_TOP_LOAD_FACTOR = 0.45;
+    private static final double DEFAULT_BOTTOM_LOAD_FACTOR = 0.1;
+    private static final int DEFAULT_MAX_LOOP = 32;
+    private static final int STASH_CAPACITY = 4;
+    private static final long SEED_INCREMENT = 0x9e3779b97f4a7c15L;
+    private static final int MAX_SEEDS_PER_CAPACITY = 4;
+
+    /**
+     * Creates cuckoo long map instance with default parameters:
+     * initial capacity of each table = {@value CuckooLongMap#DEFAULT_CAPACITY},
+     * top load factor = {@value CuckooLongMap#DEFAULT_TOP_LOAD_FACTOR},
+     * bottom load factor = {@value CuckooLongMap#DEFAULT_BOTTOM_LOAD_FACTOR}.
+     * The tables of the map are initialized lazily (not exist before the first usage).
+     */
+    public CuckooLongMap() {
+        capacity = DEFAULT_CAPACITY;
+        size = 0;
+        topLoadFactor = DEFAULT_TOP_LOAD_FACTOR;
+        bottomLoadFactor = DEFAULT_BOTTOM_LOAD_FACTOR;
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        initTables();
+
+        long hash = getHash(key);
+        int index = getFirstIndex(hash);
+        if (firstValues[index] != null && firstKeys[index] == key) {
+            firstValues[index] = value;
+            return value;
+        }
+        index = getSecondIndex(hash);
+        if (secondValues[index] != null && secondKeys[index] == key) {
+            secondValues[index] = value;
+            return value;
+        }
+        index = getStashIndex(key);
+        if (index != -1) {
+            stashValues[index] = value;
+            return value;
+        }
+
+        if (size == Integer.MAX_VALUE) {
+            return null;
+        }
+        if ((double) (size + 1) / (2L * capacity) > topLoadFactor && capacity < MAX_CAPACITY) {
+            rehash(capacity << 1, 0, null);
+        }
+        //the key takes a slot even if another pair is left without one
+        size++;
+        if (!place(key, value)) {
+            rehash(capacity, pendingKey, pendingValue);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        if (firstValues == null) {
+            return null;
+        }
+        long hash = getHash(key);
+        int index = getFirstIndex(hash);
+        if (firstKeys[index] == key && firstValues[index] != null) {
+            return (V) firstValues[index];
+        }
+        index = getSecondIndex(hash);
+        if (secondKeys[index] == key && secondValues[index] != null) {
+            return (V) secondValues[index];
+        }
+        index = getStashIndex(key);
+        return (index != -1) ? (V) stashValues[index] : null;
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        if (firstValues == null) {
+            return null;
+        }
+        V value = removeFromTables(key);
+        if (value != null) {
+            size--;
+            trim();
+        }
+        return value;
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null && firstValues != null) {
+            return containsValue(firstValues, firstValues.length, value)
+                    || containsValue(secondValues, secondValues.length, value)
+                    || containsValue(stashValues, stashSize, value);
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        if (size != 0) {
+            int position = copyKeys(firstKeys, firstValues, firstValues.length, result, 0);
+            position = copyKeys(secondKeys, secondValues, secondValues.length, result, position);
+            copyKeys(stashKeys, stashValues, stashSize, result, position);
+        }
+        return result;
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        if (size == 0) {
+            return null;
+        }
+        Class<?> valuesClass = getValuesClass(firstValues, firstValues.length, null);
+        valuesClass = getValuesClass(secondValues, secondValues.length, valuesClass);
+        valuesClass = getValuesClass(stashValues, stashSize, valuesClass);
+
+        V[] result = (V[]) Array.newInstance(valuesClass, size);
+        int position = copyValues(firstValues, firstValues.length, result, 0);
+        position = copyValues(secondValues, secondValues.length, result, position);
+        copyValues(stashValues, stashSize, result, position);
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     */
+    public void clear() {
+        capacity = DEFAULT_CAPACITY;
+        firstKeys = null;
+        firstValues = null;
+        secondKeys = null;
+        secondValues = null;
+        stashKeys = null;
+        stashValues = null;
+        stashSize = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+
+    private void initTables() {
+        if (firstValues == null) {
+            allocateTables(capacity);
+        }
+    }
+
+    private void allocateTables(int newCapacity) {
+        capacity = newCapacity;
+        firstKeys = new long[newCapacity];
+        firstValues = new Object[newCapacity];
+        secondKeys = new long[newCapacity];
+        secondValues = new Object[newCapacity];
+        stashKeys = new long[STASH_CAPACITY];
+        stashValues = new Object[STASH_CAPACITY];
+        stashSize = 0;
+    }
+
+    private void trim() {
+        if (size == 0) {
+            clear();
+        } else if ((double) size / (2L * capacity) < bottomLoadFactor
+                && capacity >= DEFAULT_CAPACITY * 2) {
+            rehash(capacity >> 1, 0, null);
+        }
+    }
+
+    private long getHash(long key) {
+        return LongMaps.mix(key ^ seed);
+    }
+
+    private int getFirstIndex(long hash) {
+        return (int) hash & (capacity - 1);
+    }
+
+    private int getSecondIndex(long hash) {
+        return (int) (hash >>> 32) & (capacity - 1);
+    }
+
+    private int getStashIndex(long key) {
+        for (int i = 0; i < stashSize; i++) {
+            if (stashKeys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Puts a new key into the tables, moving the keys which occupy its slots to their
+     * alternative slots. If after {@value CuckooLongMap#DEFAULT_MAX_LOOP} moves some key
+     * is left without a slot, it goes to the stash. If the stash is full too, the
+     * homeless pair is saved in {@link #pendingKey} and {@link #pendingValue}.
+     *
+     * @return <tt>true</tt> if all keys have found their slots, or <tt>false</tt> otherwise.
+     */
+    private boolean place(long key, Object value) {
+        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
+            long hash = getHash(key);
+            int first = getFirstIndex(hash);
+            if (firstValues[first] == null) {
+                firstKeys[first] = key;
+                firstValues[first] = value;
+                return true;
+            }
+            int second = getSecondIndex(hash);
+            if (secondValues[second] == null) {
+                secondKeys[second] = key;
+                secondValues[second] = value;
+                return true;
+            }
+
+            long evictedKey;
+            Object evictedValue;
+            if ((i & 1) == 0) {
+                evictedKey = firstKeys[first];
+                evictedValue = firstValues[first];
+                firstKeys[first] = key;
+                firstValues[first] = value;
+            } else {
+                evictedKey = secondKeys[second];
+                evictedValue = secondValues[second];
+                secondKeys[second] = key;
+                secondValues[second] = value;
+            }
+            key = evictedKey;
+            value = evictedValue;
+        }
+
+        if (stashSize < STASH_CAPACITY) {
+            stashKeys[stashSize] = key;
+            stashValues[stashSize] = value;
+            stashSize++;
+            return true;
+        }
+        pendingKey = key;
+        pendingValue = value;
+        return false;
+    }
+
+    /**
+     * Rebuilds the tables with the new capacity. While some key can not be placed, the hash
+     * functions are changed, and after {@value CuckooLongMap#MAX_SEEDS_PER_CAPACITY} of them
+     * at the same capacity the capacity is doubled.
+     *
+     * @throws IllegalStateException if the keys can not be placed at the maximum capacity.
+     *                               The map keeps its tables then, with the extra pair in the stash.
+     */
+    private void rehash(int newCapacity, long extraKey, @Nullable Object extraValue) throws IllegalStateException {
+        long[] oldFirstKeys = firstKeys;
+        Object[] oldFirstValues = firstValues;
+        long[] oldSecondKeys = secondKeys;
+        Object[] oldSecondValues = secondValues;
+        long[] oldStashKeys = stashKeys;
+        Object[] oldStashValues = stashValues;
+        int oldStashSize = stashSize;
+        long oldSeed = seed;
+        pendingValue = null;
+
+        for (int attempt = 1; ; attempt++) {
+            allocateTables(newCapacity);
+            if (placeAll(oldFirstKeys, oldFirstValues, oldFirstValues.length)
+                    && placeAll(oldSecondKeys, oldSecondValues, oldSecondValues.length)
+                    && placeAll(oldStashKeys, oldStashValues, oldStashSize)
+                    && (extraValue == null || place(extraKey, extraValue))) {
+                pendingValue = null;
+                return;
+            }
+            seed += SEED_INCREMENT;
+            if (attempt % MAX_SEEDS_PER_CAPACITY == 0) {
+                if (newCapacity == MAX_CAPACITY) {
+                    capacity = oldFirstValues.length;
+                    firstKeys = oldFirstKeys;
+                    firstValues = oldFirstValues;
+                    secondKeys = oldSecondKeys;
+                    secondValues = oldSecondValues;
+                    stashKeys = oldStashKeys;
+                    stashValues = oldStashValues;
+                    stashSize = oldStashSize;
+                    seed = oldSeed;
+                    if (extraValue != null) {
+                        stashKeys = Arrays.copyOf(stashKeys, stashSize + 1);
+                        stashValues = Arrays.copyOf(stashValues, stashSize + 1);
+                        stashKeys[stashSize] = extraKey;
+                        stashValues[stashSize] = extraValue;
+                        stashSize++;
+                    }
+                    throw new IllegalStateException("the keys can not be placed at capacity = " + MAX_CAPACITY);
+                }
+                newCapacity <<= 1;
+            }
+        }
+    }
+
+    private boolean placeAll(long[] keys, Object[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null && !place(keys[i], values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private V removeFromTables(long key) {
+        long hash = getHash(key);
+        int index = getFirstIndex(hash);
+        if (firstKeys[index] == key && firstValues[index] != null) {
+            V value = (V) firstValues[index];
+            firstValues[index] = null;
+            return value;
+        }
+        index = getSecondIndex(hash);
+        if (secondKeys[index] == key && secondValues[index] != null) {
+            V value = (V) secondValues[index];
+            secondValues[index] = null;
+            return value;
+        }
+        index = getStashIndex(key);
+        if (index != -1) {
+            V value = (V) stashValues[index];
+            removeStashEntry(index);
+            return value;
+        }
+        return null;
+    }
+
+    private void removeStashEntry(int index) {
+        int last = --stashSize;
+        stashKeys[index] = stashKeys[last];
+        stashValues[index] = stashValues[last];
+        stashValues[last] = null;
+    }
+
+    private static boolean containsValue(Object[] values, int length, Object value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null && value.equals(values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int copyKeys(long[] keys, Object[] values, int length, long[] result, int position) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null) {
+                result[position++] = keys[i];
+            }
+        }
+        return position;
+    }
+
+    private static int copyValues(Object[] values, int length, Object[] result, int position) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null) {
+                result[position++] = values[i];
+            }
+        }
+        return position;
+    }
+
+    @Nullable
+    private static Class<?> getValuesClass(Object[] values, int length, @Nullable Class<?> valuesClass) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null) {
+                valuesClass = LongMaps.getCommonClass(valuesClass, values[i]);
+            }
+        }
+        return valuesClass;
+    }
+
+    /**
+     * Walks the first table, the second one, then the stash from its end, so that the swap
+     * with the last entry which removes a stash entry moves only an already visited one.
+     */
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int index = -1;                 // the current slot of the first (then of the second) table
+        private int stashIndex = stashSize;     // the current entry of the stash
+
+        boolean findNext() {
+            if (firstValues != null) {
+                while (++index < 2 * capacity) {
+                    Object value = getValues()[index & (capacity - 1)];
+                    if (value != null) {
+                        setCurrent(getKeys()[index & (capacity - 1)], value);
+                        return true;
+                    }
+                }
+                if (stashIndex > 0) {
+                    stashIndex--;
+                    setCurrent(stashKeys[stashIndex], stashValues[stashIndex]);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            if (index < 2 * capacity) {
+                getValues()[index & (capacity - 1)] = null;
+            } else {
+                removeStashEntry(stashIndex);
+            }
+            size--;
+        }
+
+        void afterRemovals() {
+            trim();
+        }
+
+        private long[] getKeys() {
+            return (index < capacity) ? firstKeys : secondKeys;
+        }
+
+        private Object[] getValues() {
+            return (index < capacity) ? firstValues : secondValues;
+        }
+    }
+}
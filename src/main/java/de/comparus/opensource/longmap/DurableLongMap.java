@@ -0,0 +1,993 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Long map which survives the restart of the process: the mappings are kept in a {@link ConcurrentLongMap},
+ * and every change ({@link #put(long, Object)}, {@link #remove(long)}, {@link #clear()}, ...) is appended
+ * to a write-ahead log in the directory of the map before it is applied. Opening the directory loads
+ * the last snapshot and replays the log written after it.
+ * <p>
+ * The log is written by a background committer with group commit: the records appended by all
+ * writers since the last commit are written and made durable by one fsync, at least every commit
+ * interval (see {@link Builder}). A write costs the encoding of its record into a buffer, not an fsync.
+ * By default a write returns at once and may be lost by a crash within the commit interval; with
+ * {@link Builder#syncOnWrite(boolean)} it returns when its record is durable, and concurrent writers
+ * still share one fsync. {@link #sync()} waits until all the writes made so far are durable.
+ * <p>
+ * When the log is bigger than the compaction threshold and the last snapshot, the committer starts
+ * a new log and takes a view of the mappings at the switch ({@link ConcurrentLongMap#snapshot()}: the
+ * segments become copy-on-write, nothing is copied under the lock). A compactor thread writes the view
+ * as a snapshot (in the format of {@link LongMapImpl#writeTo}) next to the new log and deletes the older
+ * snapshot and log, while the committer goes on committing. The snapshot is written to a temporary file
+ * which is atomically renamed, so a crash at any moment leaves a snapshot and the logs which complete it.
+ * A torn record at the end of the last log with records (the write the crash interrupted) is dropped
+ * on opening.
+ * <p>
+ * The map is thread-safe: every operation holds one lock, and the compound operations
+ * ({@link #putIfAbsent(long, Object)}, {@link #compute(long, LongObjFunction)}, ...) are atomic.
+ * {@link #cursor()} holds the lock for every step only, so the map must not be changed by other threads
+ * during the walk. The directory must not be opened by two maps at once.
+ */
+public class DurableLongMap<V> implements LongMap<V>, Closeable {
+
+    private final Path directory;
+    private final ValueCodec<V> codec;
+    private final boolean syncOnWrite;
+    private final long commitIntervalNanos;
+    private final long compactionThreshold;
+    private final ConcurrentLongMap<V> map;
+    private final CRC32 checksum = new CRC32();
+    private final Thread committer;
+    private Thread compactor;               // the thread of the last compaction
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition commitRequested = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+
+    private ByteBuffer pending;             // the records appended since the last commit
+    private ByteBuffer spare;               // the buffer of the commit in progress
+    private long appended;                  // the bytes of the records appended since the map is opened
+    private long durable;                   // the bytes of them made durable
+    private int waiters;                    // the threads waiting for a commit
+    private FileChannel log;
+    private long generation;                // of the current log and of the snapshot which precedes it
+    private long logBytes;
+    private long snapshotBytes;
+    private boolean compactionRequested;
+    private boolean compacting;             // a compactor writes the snapshot
+    private long compactions;
+    private boolean closed;
+    private IOException failure;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final int RECORD_HEADER_BYTES = 1 + Long.BYTES;     // type and key
+    private static final int CHECKSUM_BYTES = Integer.BYTES;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int REPLAY_BUFFER_BYTES = 1 << 20;
+
+    private static final long DEFAULT_COMMIT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 64L << 20;
+
+    private static final String LOG_PREFIX = "log.";
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private DurableLongMap(Path directory, ValueCodec<V> codec, Builder<V> builder) throws IOException {
+        this.directory = directory;
+        this.codec = codec;
+        syncOnWrite = builder.syncOnWrite;
+        commitIntervalNanos = builder.commitIntervalNanos;
+        compactionThreshold = builder.compactionThreshold;
+        pending = ByteBuffer.allocate(Math.max(BUFFER_BYTES, getMaxRecordBytes()));
+        spare = ByteBuffer.allocate(pending.capacity());
+
+        Files.createDirectories(directory);
+        map = recover();
+        committer = new Thread(this::commitLoop, "DurableLongMap committer " + directory);
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Returns a builder of a map kept in the directory: the directory is created if it does not exist,
+     * an existing one is recovered.
+     *
+     * @param directory the directory of the snapshot and the log of the map.
+     * @param codec     the codec of the values, must be the same as the map has been written with.
+     * @return a new builder.
+     */
+    public static <V> Builder<V> builder(Path directory, ValueCodec<V> codec) {
+        return new Builder<>(directory, codec);
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException     if value == {@code null}.
+     * @throws IllegalArgumentException if the encoded value is longer than the codec allows.
+     * @throws IllegalStateException    if the map is closed.
+     * @throws UncheckedIOException     if the log can not be written.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        lock.lock();
+        try {
+            append(PUT, key, value);
+            V result = map.put(key, value);
+            awaitIfSyncOnWrite();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        lock.lock();
+        try {
+            return map.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     * @throws IllegalStateException if the map is closed.
+     * @throws UncheckedIOException  if the log can not be written.
+     */
+    @Nullable
+    public V remove(long key) throws IllegalStateException {
+        lock.lock();
+        try {
+            if (!map.containsKey(key)) {
+                return null;
+            }
+            append(REMOVE, key, null);
+            V value = map.remove(key);
+            awaitIfSyncOnWrite();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return map.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        lock.lock();
+        try {
+            return map.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        lock.lock();
+        try {
+            return map.containsValue(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        lock.lock();
+        try {
+            return map.keys();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        lock.lock();
+        try {
+            return map.values();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return map.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     *
+     * @throws IllegalStateException if the map is closed.
+     * @throws UncheckedIOException  if the log can not be written.
+     */
+    public void clear() throws IllegalStateException {
+        lock.lock();
+        try {
+            append(CLEAR, 0, null);
+            map.clear();
+            awaitIfSyncOnWrite();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic.
+     */
+    @Nullable
+    public V putIfAbsent(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        return compute(key, (k, oldValue) -> (oldValue != null) ? oldValue : value, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic.
+     */
+    @Nullable
+    public V replace(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        return compute(key, (k, oldValue) -> (oldValue != null) ? value : null, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic.
+     */
+    @Nullable
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        return compute(key, (k, oldValue) -> (oldValue != null) ? oldValue : mappingFunction.apply(k));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic, the function is called under the lock of the map.
+     */
+    @Nullable
+    public V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        return compute(key, remappingFunction, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The operation is atomic, the function is called under the lock of the map.
+     */
+    @Nullable
+    public V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        return compute(key, (k, oldValue) -> (oldValue != null) ? remappingFunction.apply(oldValue, value) : value);
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, which holds the lock of the map for every step only:
+     * the map must not be changed by other threads during the walk.
+     * {@link LongMapCursor#remove()} writes the removal to the log.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor(map.cursor());
+    }
+
+    /**
+     * Waits until all the changes made so far are durable.
+     *
+     * @throws IOException           if the log can not be written.
+     * @throws IllegalStateException if the map is closed.
+     */
+    public void sync() throws IOException, IllegalStateException {
+        lock.lock();
+        try {
+            checkOpen();
+            awaitDurable(appended);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the map and deletes the log which precedes it, without waiting for
+     * the log to reach the compaction threshold. Returns when the snapshot is complete.
+     *
+     * @throws IOException           if the snapshot or the log can not be written.
+     * @throws IllegalStateException if the map is closed.
+     */
+    public void compact() throws IOException, IllegalStateException {
+        lock.lock();
+        try {
+            checkOpen();
+            //a compaction in progress has taken the mappings before the changes this one has to include
+            long target = compactions + (compacting ? 2 : 1);
+            compactionRequested = true;
+            commitRequested.signal();
+            while (compactions < target && failure == null) {
+                committed.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes all changes durable, stops the committer and closes the log.
+     * The map may still be read after it is closed.
+     *
+     * @throws IOException if the log can not be written.
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            commitRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (committer.isAlive()) {
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (compactor != null && compactor.isAlive()) {
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        log.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the number of bytes of the current log.
+     */
+    long logBytes() {
+        lock.lock();
+        try {
+            return logBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Nullable
+    private V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction, boolean returnOldValue) {
+        lock.lock();
+        try {
+            V oldValue = map.get(key);
+            V value = remappingFunction.apply(key, oldValue);
+            if (value != null) {
+                if (value != oldValue) {
+                    append(PUT, key, value);
+                    map.put(key, value);
+                    awaitIfSyncOnWrite();
+                }
+            } else if (oldValue != null) {
+                append(REMOVE, key, null);
+                map.remove(key);
+                awaitIfSyncOnWrite();
+            }
+            return returnOldValue ? oldValue : value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the record of a change to the pending records, before the change is applied,
+     * so a value which can not be encoded does not change the map.
+     */
+    private void append(byte type, long key, @Nullable V value) {
+        checkOpen();
+        if (failure != null) {
+            throw new UncheckedIOException("the log can not be written", failure);
+        }
+        boolean first = pending.position() == 0;
+        int start = pending.position();
+        pending.put(type).putLong(key);
+        if (value != null) {
+            int lengthPosition = pending.position();
+            pending.position(lengthPosition + Integer.BYTES);
+            try {
+                codec.encode(value, pending);
+            } catch (RuntimeException e) {
+                pending.position(start);
+                throw e;
+            }
+            pending.putInt(lengthPosition, pending.position() - lengthPosition - Integer.BYTES);
+        }
+        checksum.reset();
+        checksum.update(pending.array(), pending.arrayOffset() + start, pending.position() - start);
+        pending.putInt((int) checksum.getValue());
+        appended += pending.position() - start;
+
+        if (pending.remaining() < getMaxRecordBytes()) {
+            ByteBuffer bigger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            pending = bigger.put(pending);
+        }
+        if (first) {
+            commitRequested.signal();
+        }
+    }
+
+    private void awaitIfSyncOnWrite() {
+        if (syncOnWrite) {
+            awaitDurable(appended);
+        }
+    }
+
+    /**
+     * Waits (releasing the lock) until the committer has made the records up to the position durable.
+     */
+    private void awaitDurable(long position) {
+        while (durable < position) {
+            if (failure != null) {
+                throw new UncheckedIOException("the log can not be written", failure);
+            }
+            waiters++;
+            commitRequested.signal();
+            try {
+                committed.awaitUninterruptibly();
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("the map is closed");
+        }
+    }
+
+    private int getMaxRecordBytes() {
+        return RECORD_HEADER_BYTES + Integer.BYTES + codec.maxSize() + CHECKSUM_BYTES;
+    }
+
+    /**
+     * Runs in the committer thread: commits the pending records when a writer waits for them
+     * or the commit interval has passed, and compacts the log when it is due and no compaction
+     * is in progress. A closed map stops when its records are durable and no requested compaction is left.
+     */
+    private void commitLoop() {
+        lock.lock();
+        try {
+            long lastCommit = System.nanoTime();
+            while (failure == null) {
+                long remaining = lastCommit + commitIntervalNanos - System.nanoTime();
+                boolean idle = pending.position() == 0;
+                boolean due = (compactionRequested && !compacting)
+                        || (!idle && (closed || waiters > 0 || remaining <= 0));
+                boolean finished = closed && idle && !compactionRequested;
+                if (!due && !finished) {
+                    try {
+                        if (idle) {
+                            commitRequested.await();
+                        } else {
+                            commitRequested.awaitNanos(remaining);
+                        }
+                    } catch (InterruptedException e) {
+                        //the committer stops only when the map is closed
+                    }
+                    continue;
+                }
+                lastCommit = System.nanoTime();
+                try {
+                    commit();
+                    if (!compacting && (compactionRequested
+                            || (!closed && logBytes > compactionThreshold && logBytes > snapshotBytes))) {
+                        compactLog();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                committed.signalAll();
+                if (closed && pending.position() == 0 && !compactionRequested) {
+                    break;
+                }
+            }
+        } finally {
+            committed.signalAll();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending records to the log and forces them to the disk, without holding the lock
+     * meanwhile, so the writers keep appending the records of the next commit.
+     */
+    private void commit() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        ByteBuffer batch = swapPending();
+        long position = appended;
+        int length = batch.position();
+        FileChannel channel = log;
+        lock.unlock();
+        try {
+            writeFully(channel, batch);
+            channel.force(false);
+        } finally {
+            lock.lock();
+            batch.clear();
+            spare = batch;
+        }
+        logBytes += length;
+        durable = position;
+    }
+
+    /**
+     * Writes the rest of the current log and then starts the log of the next generation, so a crash
+     * never leaves a torn log followed by another one. The view of the mappings at the switch is written
+     * as the snapshot of the next generation by a compactor thread, while the committer goes on committing.
+     */
+    private void compactLog() throws IOException {
+        compactionRequested = false;
+        long nextGeneration = generation + 1;
+        LongMap<V> view = map.snapshot();
+        ByteBuffer batch = swapPending();
+        long position = appended;
+        FileChannel previousLog = log;
+        FileChannel nextLog;
+
+        lock.unlock();
+        try {
+            writeFully(previousLog, batch);
+            previousLog.force(false);
+            previousLog.close();
+            nextLog = FileChannel.open(getFile(LOG_PREFIX, nextGeneration),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } finally {
+            lock.lock();
+            batch.clear();
+            spare = batch;
+        }
+        log = nextLog;
+        generation = nextGeneration;
+        logBytes = 0;
+        durable = position;
+
+        compacting = true;
+        compactor = new Thread(() -> compactInto(nextGeneration, view), "DurableLongMap compactor " + directory);
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    /**
+     * Runs in the compactor thread: writes the view as the snapshot of the generation
+     * and deletes the older snapshot and logs.
+     */
+    private void compactInto(long snapshotGeneration, LongMap<V> view) {
+        long bytes = -1;
+        IOException error = null;
+        try {
+            bytes = writeSnapshot(snapshotGeneration, view);
+            deleteGenerationsBefore(snapshotGeneration);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+            try {
+                if (bytes >= 0) {
+                    snapshotBytes = bytes;
+                    compactions++;
+                } else {
+                    failure = (error != null) ? error : new IOException("the snapshot can not be written");
+                }
+                compacting = false;
+                committed.signalAll();
+                commitRequested.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ByteBuffer swapPending() {
+        ByteBuffer batch = pending;
+        if (spare.capacity() < batch.capacity()) {
+            spare = ByteBuffer.allocate(batch.capacity());
+        }
+        pending = spare;
+        spare = null;
+        batch.flip();
+        return batch;
+    }
+
+    private long writeSnapshot(long snapshotGeneration, LongMap<V> view) throws IOException {
+        Path snapshot = getFile(SNAPSHOT_PREFIX, snapshotGeneration);
+        Path temporary = directory.resolve(snapshot.getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            LongMapSnapshot.write(view.size(), view.cursor(), channel, codec);
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(snapshot);
+    }
+
+    /**
+     * Loads the last snapshot, replays the logs which follow it, drops a torn record at the end
+     * of the last log with records and opens the last log for appending.
+     */
+    private ConcurrentLongMap<V> recover() throws IOException {
+        long snapshotGeneration = -1;
+        long lastLogGeneration = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMPORARY_SUFFIX)) {
+                    Files.delete(file);
+                } else if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    snapshotGeneration = Math.max(snapshotGeneration, getGeneration(name, SNAPSHOT_PREFIX));
+                } else if (name.startsWith(LOG_PREFIX)) {
+                    lastLogGeneration = Math.max(lastLogGeneration, getGeneration(name, LOG_PREFIX));
+                }
+            }
+        }
+
+        ConcurrentLongMap<V> result;
+        if (snapshotGeneration >= 0) {
+            Path snapshot = getFile(SNAPSHOT_PREFIX, snapshotGeneration);
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                result = LongMapSnapshot.read(channel, codec, size -> new ConcurrentLongMap<>());
+            }
+            snapshotBytes = Files.size(snapshot);
+        } else {
+            result = new ConcurrentLongMap<>();
+        }
+        generation = Math.max(0, Math.max(snapshotGeneration, lastLogGeneration));
+        //the logs after the last one with records are empty: a crash may have created the next log
+        //before the previous one was whole, so the previous one may end with a torn record too
+        long lastWrittenGeneration = generation;
+        while (lastWrittenGeneration > Math.max(0, snapshotGeneration)
+                && isEmptyOrMissing(getFile(LOG_PREFIX, lastWrittenGeneration))) {
+            lastWrittenGeneration--;
+        }
+        for (long logGeneration = Math.max(0, snapshotGeneration); logGeneration <= generation; logGeneration++) {
+            Path file = getFile(LOG_PREFIX, logGeneration);
+            if (Files.exists(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    long valid = replay(channel, result, logGeneration >= lastWrittenGeneration);
+                    channel.truncate(valid);
+                }
+            }
+        }
+        deleteGenerationsBefore(Math.max(0, snapshotGeneration));
+
+        log = FileChannel.open(getFile(LOG_PREFIX, generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        logBytes = log.size();
+        log.position(logBytes);
+        return result;
+    }
+
+    /**
+     * Applies the records of the log to the map.
+     *
+     * @param last <tt>true</tt> for the last log, which may end with a torn or damaged record
+     *             the crash has left, <tt>false</tt> for a log which must be whole.
+     * @return the length of the valid records of the log.
+     * @throws IOException if a log other than the last one is damaged.
+     */
+    private long replay(FileChannel channel, ConcurrentLongMap<V> target, boolean last) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(REPLAY_BUFFER_BYTES, getMaxRecordBytes()));
+        CRC32 replayChecksum = new CRC32();
+        long valid = 0;
+        boolean end = false;
+        while (!end) {
+            end = channel.read(buffer) == -1;
+            buffer.flip();
+            while (true) {
+                int start = buffer.position();
+                int available = buffer.remaining();
+                if (available < RECORD_HEADER_BYTES + CHECKSUM_BYTES) {
+                    break;
+                }
+                byte type = buffer.get(start);
+                int recordBytes = RECORD_HEADER_BYTES;
+                int length = 0;
+                if (type == PUT) {
+                    if (available < RECORD_HEADER_BYTES + Integer.BYTES) {
+                        break;
+                    }
+                    length = buffer.getInt(start + RECORD_HEADER_BYTES);
+                    if (length < 0 || length > codec.maxSize()) {
+                        return stopReplay(valid, last);
+                    }
+                    recordBytes += Integer.BYTES + length;
+                } else if (type != REMOVE && type != CLEAR) {
+                    return stopReplay(valid, last);
+                }
+                if (available < recordBytes + CHECKSUM_BYTES) {
+                    break;
+                }
+                replayChecksum.reset();
+                replayChecksum.update(buffer.array(), buffer.arrayOffset() + start, recordBytes);
+                if (buffer.getInt(start + recordBytes) != (int) replayChecksum.getValue()) {
+                    return stopReplay(valid, last);
+                }
+
+                long key = buffer.getLong(start + 1);
+                if (type == PUT) {
+                    int limit = buffer.limit();
+                    int valueStart = start + RECORD_HEADER_BYTES + Integer.BYTES;
+                    buffer.limit(valueStart + length).position(valueStart);
+                    target.put(key, codec.decode(buffer));
+                    buffer.limit(limit);
+                } else if (type == REMOVE) {
+                    target.remove(key);
+                } else {
+                    target.clear();
+                }
+                buffer.position(start + recordBytes + CHECKSUM_BYTES);
+                valid += recordBytes + CHECKSUM_BYTES;
+            }
+            buffer.compact();
+        }
+        return (buffer.position() == 0) ? valid : stopReplay(valid, last);
+    }
+
+    private static long stopReplay(long valid, boolean last) throws IOException {
+        if (!last) {
+            throw new IOException("damaged log record at " + valid);
+        }
+        return valid;
+    }
+
+    private void deleteGenerationsBefore(long firstKept) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if ((name.startsWith(SNAPSHOT_PREFIX) && getGeneration(name, SNAPSHOT_PREFIX) < firstKept)
+                        || (name.startsWith(LOG_PREFIX) && getGeneration(name, LOG_PREFIX) < firstKept)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static boolean isEmptyOrMissing(Path file) throws IOException {
+        return !Files.exists(file) || Files.size(file) == 0;
+    }
+
+    private Path getFile(String prefix, long fileGeneration) {
+        return directory.resolve(prefix + fileGeneration);
+    }
+
+    private static long getGeneration(String name, String prefix) throws IOException {
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("unknown file " + name + " in the directory of the map", e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Builds a {@link DurableLongMap}.
+     */
+    public static final class Builder<V> {
+
+        private final Path directory;
+        private final ValueCodec<V> codec;
+        private boolean syncOnWrite;
+        private long commitIntervalNanos = DEFAULT_COMMIT_INTERVAL_NANOS;
+        private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+        private Builder(Path directory, ValueCodec<V> codec) {
+            this.directory = directory;
+            this.codec = codec;
+        }
+
+        /**
+         * @param syncOnWrite <tt>true</tt> if a write returns when its record is durable,
+         *                    <tt>false</tt> (by default) if it returns at once.
+         * @return this builder.
+         */
+        public Builder<V> syncOnWrite(boolean syncOnWrite) {
+            this.syncOnWrite = syncOnWrite;
+            return this;
+        }
+
+        /**
+         * @param interval the longest time the pending records wait for a commit, 10 ms by default, positive.
+         * @param unit     the unit of the interval.
+         * @return this builder.
+         * @throws IllegalArgumentException if interval is not positive.
+         */
+        public Builder<V> commitInterval(long interval, TimeUnit unit) throws IllegalArgumentException {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("interval = " + interval);
+            }
+            commitIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * @param bytes the length of the log above which it is compacted into a snapshot
+         *              (if it is also longer than the last snapshot), 64 MB by default, positive.
+         * @return this builder.
+         * @throws IllegalArgumentException if bytes is not positive.
+         */
+        public Builder<V> compactionThreshold(long bytes) throws IllegalArgumentException {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("bytes = " + bytes);
+            }
+            compactionThreshold = bytes;
+            return this;
+        }
+
+        /**
+         * Opens the map: loads the last snapshot and replays the log of the directory.
+         *
+         * @return the map with the recovered mappings.
+         * @throws IOException if the directory can not be read or written, or its files are damaged.
+         */
+        public DurableLongMap<V> open() throws IOException {
+            return new DurableLongMap<>(directory, codec, this);
+        }
+    }
+
+    /**
+     * Walks the map holding the lock for every step, so no step runs beside an operation of another
+     * thread or the switch of a compaction (the last step may resize the storage after the removals),
+     * and writes the removals to the log.
+     */
+    private class Cursor implements LongMapCursor<V> {
+
+        private final LongMapCursor<V> cursor;
+
+        private Cursor(LongMapCursor<V> cursor) {
+            this.cursor = cursor;
+        }
+
+        public boolean advance() {
+            lock.lock();
+            try {
+                return cursor.advance();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long key() throws IllegalStateException {
+            return cursor.key();
+        }
+
+        public V value() throws IllegalStateException {
+            return cursor.value();
+        }
+
+        public void remove() throws IllegalStateException {
+            long key = cursor.key();
+            lock.lock();
+            try {
+                append(REMOVE, key, null);
+                cursor.remove();
+                awaitIfSyncOnWrite();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
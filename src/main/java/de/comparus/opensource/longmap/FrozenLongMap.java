@@ -0,0 +1,447 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Immutable long map built once from the mappings of another map, for maps which are only read
+ * after they are built (see {@link LongMapImpl#freeze()}).
+ * <p>
+ * The keys and values are kept in dense arrays of exactly {@link #size()} slots, placed by
+ * a minimal perfect hash function of the keys ("hash and displace"): every key hashes to a bucket
+ * of about {@value FrozenLongMap#KEYS_PER_BUCKET} keys, and the displacement of the bucket, found
+ * when the map is built, sends each key of the bucket to its own slot (a bucket of one key keeps
+ * its slot itself). A lookup reads the displacement of the bucket and then exactly one slot,
+ * which either holds the key or proves that the key is not mapped. The structure takes about
+ * 14 bytes per mapping: the key, the reference to the value and half of an int. Building takes
+ * about half a microsecond per mapping.
+ * <p>
+ * The map is safe to share between threads without synchronization: all its fields are final
+ * and nothing is written after the constructor. The mutating methods throw
+ * {@link UnsupportedOperationException}.
+ */
+public final class FrozenLongMap<V> implements LongMap<V> {
+
+    private final long[] keys;
+    private final Object[] values;
+    private final int[] displacements;      // of every bucket, or -1 - the slot of a bucket of one key
+    private final long seed;
+
+    private static final int KEYS_PER_BUCKET = 2;
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+    private static final int MAX_SEEDS = 64;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long DISPLACEMENT_STEP = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Creates the frozen copy of the mappings of the specified map. The mappings are those its cursor
+     * walks, {@link LongMap#size()} is only a hint (e.g. a cache counts the expired entries its cursor skips).
+     *
+     * @param map the map which mappings are copied, it is not changed.
+     * @throws IllegalArgumentException if the cursor of the map walks a key twice,
+     *                                  or the map has more mappings than an array can hold.
+     * @throws IllegalStateException    if no hash function places the keys (practically impossible).
+     */
+    public FrozenLongMap(LongMap<? extends V> map) throws IllegalArgumentException, IllegalStateException {
+        long[] mapKeys = new long[(int) Math.min(Math.max(map.size(), DEFAULT_CAPACITY), MAX_ARRAY_LENGTH)];
+        Object[] mapValues = new Object[mapKeys.length];
+        int size = 0;
+        LongMapCursor<? extends V> cursor = map.cursor();
+        while (cursor.advance()) {
+            if (size == mapKeys.length) {
+                if (size == MAX_ARRAY_LENGTH) {
+                    throw new IllegalArgumentException("the map has more than " + MAX_ARRAY_LENGTH + " mappings");
+                }
+                int length = (int) Math.min((long) size * 2, MAX_ARRAY_LENGTH);
+                mapKeys = Arrays.copyOf(mapKeys, length);
+                mapValues = Arrays.copyOf(mapValues, length);
+            }
+            mapKeys[size] = cursor.key();
+            mapValues[size++] = cursor.value();
+        }
+        mapKeys = Arrays.copyOf(mapKeys, size);
+        checkDistinct(mapKeys);
+
+        keys = new long[size];
+        values = new Object[size];
+        displacements = new int[Math.max(1, (size + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET)];
+        long seed = 0;
+        for (int seeds = 1; !place(mapKeys, mapValues, seed); seeds++) {
+            if (seeds == MAX_SEEDS) {
+                throw new IllegalStateException("the keys can not be placed by " + MAX_SEEDS + " hash functions");
+            }
+            seed = LongMaps.mix(seed + 1);
+        }
+        this.seed = seed;
+    }
+
+    /**
+     * Not supported, the map is immutable.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    public V put(long key, V value) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("frozen map");
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        if (keys.length == 0) {
+            return null;
+        }
+        int slot = getSlot(key);
+        return (keys[slot] == key) ? (V) values[slot] : null;
+    }
+
+    /**
+     * Not supported, the map is immutable.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    public V remove(long key) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("frozen map");
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return keys.length != 0 && keys[getSlot(key)] == key;
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null) {
+            for (Object current : values) {
+                if (value.equals(current)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        return keys.clone();
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        if (values.length == 0) {
+            return null;
+        }
+        Class<?> valuesClass = null;
+        for (Object value : values) {
+            valuesClass = LongMaps.getCommonClass(valuesClass, value);
+        }
+        V[] result = (V[]) Array.newInstance(valuesClass, values.length);
+        System.arraycopy(values, 0, result, 0, values.length);
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return keys.length;
+    }
+
+    /**
+     * Not supported, the map is immutable.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    public void clear() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("frozen map");
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     * Its {@link LongMapCursor#remove()} throws {@link UnsupportedOperationException}.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Performs the action for every mapping of the map, walking the dense arrays.
+     *
+     * @param action the action performed for every key and its value.
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            action.accept(keys[slot], (V) values[slot]);
+        }
+    }
+
+    /**
+     * Returns a spliterator over the mappings of the map, which splits the dense arrays in halves.
+     *
+     * @return a new spliterator over all mappings.
+     */
+    public LongMapSpliterator<V> spliterator() {
+        return new RangeSpliterator(0, keys.length);
+    }
+
+    /**
+     * Estimates the heap taken by the map structure (not counting the values).
+     *
+     * @return the number of bytes taken by the map structure.
+     */
+    long memoryUsage() {
+        return LongMaps.getArrayBytes(keys.length, Long.BYTES)
+                + LongMaps.getArrayBytes(values.length, LongMaps.REFERENCE_BYTES)
+                + LongMaps.getArrayBytes(displacements.length, Integer.BYTES);
+    }
+
+
+    /**
+     * Two equal keys would never get distinct slots, so a cursor which repeats a key is rejected up front.
+     */
+    private static void checkDistinct(long[] mapKeys) throws IllegalArgumentException {
+        long[] sorted = mapKeys.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("the cursor of the map walks the key " + sorted[i] + " twice");
+            }
+        }
+    }
+
+    private int getSlot(long key) {
+        long hash = LongMaps.mix(key ^ seed);
+        int displacement = displacements[reduce(hash, displacements.length)];
+        if (displacement < 0) {
+            return -1 - displacement;
+        }
+        return getDisplacedSlot(hash, displacement, keys.length);
+    }
+
+    private static int getDisplacedSlot(long hash, int displacement, int length) {
+        return reduce(LongMaps.mix(hash + displacement * DISPLACEMENT_STEP), length);
+    }
+
+    /**
+     * Maps the high half of the hash to [0, length) by multiplication, which needs no power of two.
+     */
+    private static int reduce(long hash, int length) {
+        return (int) (((hash >>> 32) * length) >>> 32);
+    }
+
+    /**
+     * Places the keys by the hash function of the seed: the buckets from the biggest one get
+     * the first displacement which sends all their keys to free slots, then the buckets of one key
+     * take the remaining free slots.
+     *
+     * @return <tt>false</tt> if some bucket has no displacement and another seed has to be tried.
+     */
+    private boolean place(long[] mapKeys, Object[] mapValues, long seed) {
+        int bucketsNumber = displacements.length;
+        long[] hashes = new long[mapKeys.length];
+        int[] bucketStarts = new int[bucketsNumber + 1];
+        for (int i = 0; i < mapKeys.length; i++) {
+            hashes[i] = LongMaps.mix(mapKeys[i] ^ seed);
+            bucketStarts[reduce(hashes[i], bucketsNumber) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int bucket = 0; bucket < bucketsNumber; bucket++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[bucket + 1]);
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        //the keys sorted by bucket
+        int[] bucketKeys = new int[mapKeys.length];
+        int[] fill = bucketStarts.clone();
+        for (int i = 0; i < mapKeys.length; i++) {
+            bucketKeys[fill[reduce(hashes[i], bucketsNumber)]++] = i;
+        }
+        //the buckets sorted by size, the biggest first
+        int[] sizeStarts = new int[maxBucketSize + 2];
+        for (int bucket = 0; bucket < bucketsNumber; bucket++) {
+            sizeStarts[maxBucketSize - getBucketSize(bucketStarts, bucket) + 1]++;
+        }
+        for (int i = 1; i < sizeStarts.length; i++) {
+            sizeStarts[i] += sizeStarts[i - 1];
+        }
+        int[] buckets = new int[bucketsNumber];
+        for (int bucket = 0; bucket < bucketsNumber; bucket++) {
+            buckets[sizeStarts[maxBucketSize - getBucketSize(bucketStarts, bucket)]++] = bucket;
+        }
+
+        boolean[] taken = new boolean[mapKeys.length];
+        int[] bucketSlots = new int[maxBucketSize];
+        int freeSlot = 0;
+        for (int bucket : buckets) {
+            int start = bucketStarts[bucket];
+            int bucketSize = getBucketSize(bucketStarts, bucket);
+            if (bucketSize == 0) {
+                displacements[bucket] = 0;
+            } else if (bucketSize == 1) {
+                while (taken[freeSlot]) {
+                    freeSlot++;
+                }
+                taken[freeSlot] = true;
+                displacements[bucket] = -1 - freeSlot;
+                setSlot(freeSlot, mapKeys, mapValues, bucketKeys[start]);
+            } else {
+                int displacement = findDisplacement(hashes, bucketKeys, start, bucketSize, taken, bucketSlots);
+                if (displacement == -1) {
+                    return false;
+                }
+                displacements[bucket] = displacement;
+                for (int i = 0; i < bucketSize; i++) {
+                    taken[bucketSlots[i]] = true;
+                    setSlot(bucketSlots[i], mapKeys, mapValues, bucketKeys[start + i]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the first displacement which sends all keys of the bucket to distinct free slots
+     * (written to bucketSlots), or -1 if there is none below {@value FrozenLongMap#MAX_DISPLACEMENT}.
+     */
+    private int findDisplacement(long[] hashes, int[] bucketKeys, int start, int bucketSize,
+                                 boolean[] taken, int[] bucketSlots) {
+        for (int displacement = 0; displacement < MAX_DISPLACEMENT; displacement++) {
+            int placed = 0;
+            while (placed < bucketSize) {
+                int slot = getDisplacedSlot(hashes[bucketKeys[start + placed]], displacement, taken.length);
+                if (taken[slot] || contains(bucketSlots, placed, slot)) {
+                    break;
+                }
+                bucketSlots[placed++] = slot;
+            }
+            if (placed == bucketSize) {
+                return displacement;
+            }
+        }
+        return -1;
+    }
+
+    private void setSlot(int slot, long[] mapKeys, Object[] mapValues, int index) {
+        keys[slot] = mapKeys[index];
+        values[slot] = mapValues[index];
+    }
+
+    private static int getBucketSize(int[] bucketStarts, int bucket) {
+        return bucketStarts[bucket + 1] - bucketStarts[bucket];
+    }
+
+    private static boolean contains(int[] array, int length, int element) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == element) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int slot = -1;
+
+        boolean findNext() {
+            if (++slot < keys.length) {
+                setCurrent(keys[slot], values[slot]);
+                return true;
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            throw new UnsupportedOperationException("frozen map");
+        }
+
+        void afterRemovals() {
+        }
+    }
+
+    private class RangeSpliterator implements LongMapSpliterator<V> {
+
+        private final int fence;
+        private int slot;
+
+        private RangeSpliterator(int slot, int fence) {
+            this.slot = slot;
+            this.fence = fence;
+        }
+
+        public boolean tryAdvance(LongObjConsumer<? super V> action) {
+            if (slot < fence) {
+                action.accept(keys[slot], (V) values[slot]);
+                slot++;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongObjConsumer<? super V> action) {
+            for (; slot < fence; slot++) {
+                action.accept(keys[slot], (V) values[slot]);
+            }
+        }
+
+        @Nullable
+        public LongMapSpliterator<V> trySplit() {
+            int middle = (slot + fence) >>> 1;
+            if (middle <= slot) {
+                return null;
+            }
+            RangeSpliterator prefix = new RangeSpliterator(slot, middle);
+            slot = middle;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return fence - slot;
+        }
+    }
+}
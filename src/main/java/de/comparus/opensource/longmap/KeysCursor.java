@@ -0,0 +1,32 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * The default cursor of a {@link LongMap}: walks a copy of the keys of the map taken by {@link LongMap#keys()},
+ * reading the value of every key with {@link LongMap#get(long)} and removing it with {@link LongMap#remove(long)}.
+ */
+final class KeysCursor<V> extends AbstractLongMapCursor<V> {
+
+    private final LongMap<V> map;
+    private final long[] keys;
+    private int index = -1;
+
+    KeysCursor(LongMap<V> map) {
+        this.map = map;
+        this.keys = map.keys();
+    }
+
+    boolean findNext() {
+        if (++index < keys.length) {
+            setCurrent(keys[index], map.get(keys[index]));
+            return true;
+        }
+        return false;
+    }
+
+    void removeCurrent() {
+        map.remove(keys[index]);
+    }
+
+    void afterRemovals() {
+    }
+}
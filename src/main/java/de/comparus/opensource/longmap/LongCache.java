@@ -0,0 +1,797 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded long map which evicts entries when it holds more than the maximum number of entries
+ * (or of their total weight), see {@link Builder}.
+ * <p>
+ * The entries are kept in parallel arrays and addressed by their index: keys, values, and the
+ * bookkeeping of the eviction policy - the links of the recency list for {@link EvictionPolicy#LRU},
+ * the reference bits for {@link EvictionPolicy#CLOCK}, the weights and the expiration deadlines
+ * (allocated only if used). The hash index is a linear probing table of entry indices with
+ * backward-shift deletion. No object is allocated per entry.
+ * <p>
+ * Entries may expire after a time to live, given for the whole cache or per entry. An expired
+ * entry is absent for all lookups and is removed when it is met (or by {@link #cleanUp()}),
+ * so {@link #size()} may count expired entries which have not been met yet.
+ * {@link #get(long)} counts hits and misses and marks the entry as used; the other lookups do not.
+ * The cache is not thread-safe.
+ */
+public class LongCache<V> implements LongMap<V> {
+
+    private final long maximumSize;
+    private final long maximumWeight;
+    private final ToIntFunction<? super V> weigher;         // null if every entry weighs 1
+    private final EvictionPolicy policy;
+    private final long defaultTtlNanos;                     // 0 if the entries do not expire by default
+    private final RemovalListener<? super V> listener;      // null if there is no listener
+    private final LongSupplier ticker;
+
+    private long[] keys;                // the entries, addressed by their index
+    private Object[] values;            // null for a free entry
+    private int[] next;                 // LRU: the next less recently used entry; a free entry: the next free one
+    private int[] previous;             // LRU only
+    private boolean[] referenced;       // CLOCK only
+    private int[] weights;              // only with a weigher, 0 for a free entry
+    private long[] deadlines;           // allocated for the first entry with a time to live
+    private int[] slots;                // the hash index: entry + 1, 0 for a free slot
+    private int usedEntries;            // the entries below this index have been used
+    private int freeEntry = -1;
+    private int head = -1;              // LRU: the most recently used entry
+    private int tail = -1;              // LRU: the least recently used entry
+    private int hand;                   // CLOCK: the next entry to look at
+    private int size;
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 29;
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    /**
+     * The policy which chooses the entry to evict.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts the least recently used entry. A hit moves the entry to the head of a doubly linked list.
+         */
+        LRU,
+        /**
+         * Evicts the first entry without the reference bit, which a hit sets, clearing the bits
+         * on the way (second chance). A hit only sets a bit, so it is cheaper than for LRU.
+         */
+        CLOCK
+    }
+
+    /**
+     * The reason of the removal of an entry.
+     */
+    public enum RemovalCause {
+        /**
+         * Removed by {@link #remove(long)}, {@link #clear()} or a cursor.
+         */
+        EXPLICIT,
+        /**
+         * The value has been replaced by a put.
+         */
+        REPLACED,
+        /**
+         * Evicted because the cache has exceeded its maximum size or weight.
+         */
+        SIZE,
+        /**
+         * The time to live of the entry has passed.
+         */
+        EXPIRED
+    }
+
+    /**
+     * Is notified of every removed entry, after the entry is removed.
+     */
+    @FunctionalInterface
+    public interface RemovalListener<V> {
+
+        /**
+         * @param key   the key of the removed entry.
+         * @param value the value of the removed entry.
+         * @param cause the reason of the removal.
+         */
+        void onRemoval(long key, V value, RemovalCause cause);
+    }
+
+    private LongCache(Builder<V> builder) {
+        maximumSize = builder.maximumSize;
+        maximumWeight = builder.maximumWeight;
+        weigher = builder.weigher;
+        policy = builder.policy;
+        defaultTtlNanos = builder.ttlNanos;
+        listener = builder.listener;
+        ticker = builder.ticker;
+    }
+
+    /**
+     * Returns a builder of a cache, which is unbounded, without expiration and evicts by LRU
+     * if not configured otherwise.
+     *
+     * @return a new builder.
+     */
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the cache, with the default
+     * time to live, and evicts entries if the cache has become too big.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt>.
+     * @throws NullPointerException     if value == {@code null}.
+     * @throws IllegalArgumentException if the weigher returns a negative weight.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException, IllegalArgumentException {
+        return putEntry(key, value, defaultTtlNanos);
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the cache, which expires after
+     * the specified time, and evicts entries if the cache has become too big.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @param ttl   the time to live of the mapping, positive.
+     * @param unit  the unit of the time to live.
+     * @return the <tt>value</tt>.
+     * @throws NullPointerException     if value == {@code null}.
+     * @throws IllegalArgumentException if ttl is not positive or the weigher returns a negative weight.
+     */
+    @Nullable
+    public V put(long key, V value, long ttl, TimeUnit unit) throws NullPointerException, IllegalArgumentException {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl = " + ttl);
+        }
+        return putEntry(key, value, unit.toNanos(ttl));
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, marks the entry as used
+     * and counts a hit, or counts a miss.
+     *
+     * @param key the key which mapping is searched in the cache.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the cache or it has expired.
+     */
+    @Nullable
+    public V get(long key) {
+        int slot = getSlot(key);
+        if (slot != -1) {
+            int entry = slots[slot] - 1;
+            if (!isExpired(entry)) {
+                hits++;
+                touch(entry);
+                return (V) values[entry];
+            }
+            removeAt(slot, RemovalCause.EXPIRED);
+            releaseIfEmpty();
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the cache.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the cache or it has expired.
+     */
+    @Nullable
+    public V remove(long key) {
+        int slot = getSlot(key);
+        if (slot == -1) {
+            return null;
+        }
+        boolean expired = isExpired(slots[slot] - 1);
+        V value = removeAt(slot, expired ? RemovalCause.EXPIRED : RemovalCause.EXPLICIT);
+        releaseIfEmpty();
+        return expired ? null : value;
+    }
+
+    /**
+     * Checks if there are no entries in the cache.
+     *
+     * @return <tt>true</tt> if there are no entries in the cache,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if there is an unexpired mapping for specified key in the cache, without marking it as used.
+     *
+     * @param key the key which mapping is searched in the cache.
+     * @return <tt>true</tt> if the cache contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        int slot = getSlot(key);
+        return slot != -1 && !isExpired(slots[slot] - 1);
+    }
+
+    /**
+     * Checks if there is an unexpired mapping with specified value in the cache.
+     *
+     * @param value the value which mapping is searched in the cache.
+     * @return <tt>true</tt> if the cache contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null) {
+            for (int entry = 0; entry < usedEntries; entry++) {
+                if (isLive(entry) && value.equals(values[entry])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys of unexpired mappings.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the cache,
+     * or empty array if the cache is empty.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int position = 0;
+        for (int entry = 0; entry < usedEntries; entry++) {
+            if (isLive(entry)) {
+                result[position++] = keys[entry];
+            }
+        }
+        return (position == size) ? result : Arrays.copyOf(result, position);
+    }
+
+    /**
+     * Returns all values of unexpired mappings.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the cache.
+     * or {@code null} if the cache is empty.
+     */
+    @Nullable
+    public V[] values() {
+        Class<?> valuesClass = null;
+        int count = 0;
+        for (int entry = 0; entry < usedEntries; entry++) {
+            if (isLive(entry)) {
+                valuesClass = LongMaps.getCommonClass(valuesClass, values[entry]);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        V[] result = (V[]) Array.newInstance(valuesClass, count);
+        int position = 0;
+        for (int entry = 0; entry < usedEntries; entry++) {
+            if (isLive(entry)) {
+                result[position++] = (V) values[entry];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of entries in the cache, including the expired ones which have not been removed yet.
+     *
+     * @return the number of entries in the cache.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries from the cache, notifying the listener of each one.
+     */
+    public void clear() {
+        if (listener == null) {
+            release();
+            return;
+        }
+        long[] clearedKeys = keys;
+        Object[] clearedValues = values;
+        int cleared = usedEntries;
+        release();
+        for (int entry = 0; entry < cleared; entry++) {
+            if (clearedValues[entry] != null) {
+                listener.onRemoval(clearedKeys[entry], (V) clearedValues[entry], RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor over the unexpired mappings of the cache, see {@link LongMapCursor}.
+     * The cursor does not mark the entries as used.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Removes all expired entries.
+     */
+    public void cleanUp() {
+        if (deadlines != null) {
+            for (int entry = 0; entry < usedEntries; entry++) {
+                if (values[entry] != null && isExpired(entry)) {
+                    removeAt(getSlot(keys[entry]), RemovalCause.EXPIRED);
+                }
+            }
+            releaseIfEmpty();
+        }
+    }
+
+    /**
+     * Returns the total weight of the entries, or their number if the cache has no weigher.
+     *
+     * @return the weight of the cache.
+     */
+    public long weightedSize() {
+        return (weigher != null) ? weight : size;
+    }
+
+    /**
+     * Returns the number of {@link #get(long)} calls which have found an unexpired entry.
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of {@link #get(long)} calls which have not found an unexpired entry.
+     *
+     * @return the number of misses.
+     */
+    public long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries evicted because the cache has exceeded its maximum size or weight.
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Estimates the heap taken by the entries and the index of the cache (not counting the values).
+     *
+     * @return the number of bytes taken by the cache structure.
+     */
+    long memoryUsage() {
+        return LongMaps.getArrayBytes(keys == null ? -1 : keys.length, Long.BYTES)
+                + LongMaps.getArrayBytes(values == null ? -1 : values.length, LongMaps.REFERENCE_BYTES)
+                + LongMaps.getArrayBytes(next == null ? -1 : next.length, Integer.BYTES)
+                + LongMaps.getArrayBytes(previous == null ? -1 : previous.length, Integer.BYTES)
+                + LongMaps.getArrayBytes(referenced == null ? -1 : referenced.length, 1)
+                + LongMaps.getArrayBytes(weights == null ? -1 : weights.length, Integer.BYTES)
+                + LongMaps.getArrayBytes(deadlines == null ? -1 : deadlines.length, Long.BYTES)
+                + LongMaps.getArrayBytes(slots == null ? -1 : slots.length, Integer.BYTES);
+    }
+
+
+    private V putEntry(long key, V value, long ttlNanos) {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        int entryWeight = (weigher != null) ? weigher.applyAsInt(value) : 1;
+        if (entryWeight < 0) {
+            throw new IllegalArgumentException("weight = " + entryWeight);
+        }
+        initStorage();
+
+        int slot = getSlot(key);
+        if (slot != -1) {
+            int entry = slots[slot] - 1;
+            V oldValue = (V) values[entry];
+            boolean expired = isExpired(entry);
+            values[entry] = value;
+            setWeight(entry, entryWeight);
+            setDeadline(entry, ttlNanos);
+            touch(entry);
+            evict();
+            notifyListener(key, oldValue, expired ? RemovalCause.EXPIRED : RemovalCause.REPLACED);
+        } else {
+            int entry = allocateEntry();
+            keys[entry] = key;
+            values[entry] = value;
+            setWeight(entry, entryWeight);
+            setDeadline(entry, ttlNanos);
+            link(entry);
+            insertSlot(entry);
+            size++;
+            evict();
+        }
+        return value;
+    }
+
+    private void evict() {
+        while (size > maximumSize || (weigher != null && weight > maximumWeight)) {
+            int victim = (policy == EvictionPolicy.LRU) ? tail : getClockVictim();
+            boolean expired = isExpired(victim);
+            if (!expired) {
+                evictions++;
+            }
+            removeAt(getSlot(keys[victim]), expired ? RemovalCause.EXPIRED : RemovalCause.SIZE);
+        }
+        releaseIfEmpty();
+    }
+
+    private int getClockVictim() {
+        while (true) {
+            if (hand >= usedEntries) {
+                hand = 0;
+            }
+            int entry = hand++;
+            if (values[entry] != null) {
+                if (!referenced[entry]) {
+                    return entry;
+                }
+                referenced[entry] = false;
+            }
+        }
+    }
+
+    private void touch(int entry) {
+        if (policy == EvictionPolicy.CLOCK) {
+            referenced[entry] = true;
+        } else if (entry != head) {
+            unlink(entry);
+            link(entry);
+        }
+    }
+
+    private void link(int entry) {
+        if (policy == EvictionPolicy.CLOCK) {
+            referenced[entry] = false;
+            return;
+        }
+        previous[entry] = -1;
+        next[entry] = head;
+        if (head != -1) {
+            previous[head] = entry;
+        } else {
+            tail = entry;
+        }
+        head = entry;
+    }
+
+    private void unlink(int entry) {
+        if (policy == EvictionPolicy.CLOCK) {
+            return;
+        }
+        if (previous[entry] != -1) {
+            next[previous[entry]] = next[entry];
+        } else {
+            head = next[entry];
+        }
+        if (next[entry] != -1) {
+            previous[next[entry]] = previous[entry];
+        } else {
+            tail = previous[entry];
+        }
+    }
+
+    private void setWeight(int entry, int entryWeight) {
+        if (weigher != null) {
+            weight += entryWeight - weights[entry];
+            weights[entry] = entryWeight;
+        }
+    }
+
+    private void setDeadline(int entry, long ttlNanos) {
+        if (ttlNanos > 0) {
+            if (deadlines == null) {
+                deadlines = new long[keys.length];
+                Arrays.fill(deadlines, NO_DEADLINE);
+            }
+            deadlines[entry] = ticker.getAsLong() + ttlNanos;
+        } else if (deadlines != null) {
+            deadlines[entry] = NO_DEADLINE;
+        }
+    }
+
+    private boolean isExpired(int entry) {
+        return deadlines != null && deadlines[entry] != NO_DEADLINE && ticker.getAsLong() - deadlines[entry] >= 0;
+    }
+
+    private boolean isLive(int entry) {
+        return values[entry] != null && !isExpired(entry);
+    }
+
+    /**
+     * Removes the entry of the slot of the index, frees the entry and notifies the listener.
+     */
+    private V removeAt(int slot, RemovalCause cause) {
+        int entry = slots[slot] - 1;
+        long key = keys[entry];
+        V value = (V) values[entry];
+        deleteSlot(slot);
+        unlink(entry);
+        if (weigher != null) {
+            weight -= weights[entry];
+            weights[entry] = 0;
+        }
+        values[entry] = null;
+        next[entry] = freeEntry;
+        freeEntry = entry;
+        size--;
+        notifyListener(key, value, cause);
+        return value;
+    }
+
+    private void notifyListener(long key, V value, RemovalCause cause) {
+        if (listener != null) {
+            listener.onRemoval(key, value, cause);
+        }
+    }
+
+    private void initStorage() {
+        if (keys == null) {
+            allocateEntries(DEFAULT_CAPACITY);
+            slots = new int[DEFAULT_CAPACITY * 2];
+        }
+    }
+
+    private void releaseIfEmpty() {
+        if (size == 0) {
+            release();
+        }
+    }
+
+    private void release() {
+        keys = null;
+        values = null;
+        next = null;
+        previous = null;
+        referenced = null;
+        weights = null;
+        deadlines = null;
+        slots = null;
+        usedEntries = 0;
+        freeEntry = -1;
+        head = -1;
+        tail = -1;
+        hand = 0;
+        size = 0;
+        weight = 0;
+    }
+
+    private int allocateEntry() {
+        if (freeEntry != -1) {
+            int entry = freeEntry;
+            freeEntry = next[entry];
+            return entry;
+        }
+        if (usedEntries == keys.length) {
+            if (keys.length == MAX_CAPACITY) {
+                throw new IllegalStateException("cache capacity = " + MAX_CAPACITY + " is exhausted");
+            }
+            allocateEntries(keys.length << 1);
+            rebuildIndex(keys.length << 1);
+        }
+        return usedEntries++;
+    }
+
+    private void allocateEntries(int capacity) {
+        int oldCapacity = (keys == null) ? 0 : keys.length;
+        keys = (keys == null) ? new long[capacity] : Arrays.copyOf(keys, capacity);
+        values = (values == null) ? new Object[capacity] : Arrays.copyOf(values, capacity);
+        next = (next == null) ? new int[capacity] : Arrays.copyOf(next, capacity);
+        if (policy == EvictionPolicy.LRU) {
+            previous = (previous == null) ? new int[capacity] : Arrays.copyOf(previous, capacity);
+        } else {
+            referenced = (referenced == null) ? new boolean[capacity] : Arrays.copyOf(referenced, capacity);
+        }
+        if (weigher != null) {
+            weights = (weights == null) ? new int[capacity] : Arrays.copyOf(weights, capacity);
+        }
+        if (deadlines != null) {
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            Arrays.fill(deadlines, oldCapacity, capacity, NO_DEADLINE);
+        }
+    }
+
+    private void rebuildIndex(int capacity) {
+        slots = new int[capacity];
+        for (int entry = 0; entry < usedEntries; entry++) {
+            if (values[entry] != null) {
+                insertSlot(entry);
+            }
+        }
+    }
+
+    private int getHome(long key) {
+        return (int) LongMaps.mix(key) & (slots.length - 1);
+    }
+
+    private int getSlot(long key) {
+        if (slots == null) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int slot = getHome(key); slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slots[slot] - 1] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insertSlot(int entry) {
+        int mask = slots.length - 1;
+        int slot = getHome(keys[entry]);
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry + 1;
+    }
+
+    private void deleteSlot(int free) {
+        int mask = slots.length - 1;
+        int slot = free;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (slots[slot] == 0) {
+                break;
+            }
+            int home = getHome(keys[slots[slot] - 1]);
+            //the entry may fill the free slot if its home is not in (free, slot]
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                slots[free] = slots[slot];
+                free = slot;
+            }
+        }
+        slots[free] = 0;
+    }
+
+    /**
+     * Builds a {@link LongCache}.
+     */
+    public static final class Builder<V> {
+
+        private long maximumSize = Long.MAX_VALUE;
+        private long maximumWeight = Long.MAX_VALUE;
+        private ToIntFunction<? super V> weigher;
+        private EvictionPolicy policy = EvictionPolicy.LRU;
+        private long ttlNanos;
+        private RemovalListener<? super V> listener;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maximumSize the maximal number of entries, not negative.
+         * @return this builder.
+         * @throws IllegalArgumentException if maximumSize is negative.
+         */
+        public Builder<V> maximumSize(long maximumSize) throws IllegalArgumentException {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("maximumSize = " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param maximumWeight the maximal total weight of the entries, not negative.
+         * @param weigher       returns the weight of a value, not negative.
+         * @return this builder.
+         * @throws IllegalArgumentException if maximumWeight is negative.
+         */
+        public Builder<V> maximumWeight(long maximumWeight, ToIntFunction<? super V> weigher)
+                throws IllegalArgumentException {
+            if (maximumWeight < 0) {
+                throw new IllegalArgumentException("maximumWeight = " + maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * @param policy the policy which chooses the entry to evict.
+         * @return this builder.
+         */
+        public Builder<V> eviction(EvictionPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * @param ttl  the time to live of the entries put without their own, positive.
+         * @param unit the unit of the time to live.
+         * @return this builder.
+         * @throws IllegalArgumentException if ttl is not positive.
+         */
+        public Builder<V> expireAfterWrite(long ttl, TimeUnit unit) throws IllegalArgumentException {
+            if (ttl <= 0) {
+                throw new IllegalArgumentException("ttl = " + ttl);
+            }
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * @param listener is notified of every removed entry.
+         * @return this builder.
+         */
+        public Builder<V> removalListener(RemovalListener<? super V> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * @param ticker the source of the time in nanoseconds for expiration, {@link System#nanoTime()} by default.
+         * @return this builder.
+         */
+        public Builder<V> ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * @return a new empty cache.
+         */
+        public LongCache<V> build() {
+            return new LongCache<>(this);
+        }
+    }
+
+    /**
+     * Walks the entries in the order of their indices, which removals do not change.
+     */
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int entry = -1;
+
+        boolean findNext() {
+            while (++entry < usedEntries) {
+                if (isLive(entry)) {
+                    setCurrent(keys[entry], (V) values[entry]);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            removeAt(getSlot(keys[entry]), RemovalCause.EXPLICIT);
+        }
+
+        void afterRemovals() {
+            releaseIfEmpty();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Map with keys of type long and values of type double, which stores the values without boxing.
+ * Absence of a mapping is reported with the "no value" sentinel of the map (see {@link #getNoValue()}).
+ */
+public interface LongDoubleMap {
+    double put(long key, double value);
+    double get(long key);
+    double remove(long key);
+
+    double addTo(long key, double delta);
+    double increment(long key);
+
+    boolean isEmpty();
+    boolean containsKey(long key);
+    boolean containsValue(double value);
+
+    long[] keys();
+    double[] values();
+
+    long size();
+    void clear();
+
+    double getNoValue();
+}
@@ -0,0 +1,186 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * {@link LongDoubleMap} on the engine of {@link LongMapImpl}: open addressing with double hashing
+ * and a small reserve for the keys which have not found a slot (see {@link AbstractPrimitiveLongMap}).
+ * The values are kept in a {@code double[]}, and the state of every slot (free, occupied or deleted)
+ * in a {@code byte[]}.
+ */
+public class LongDoubleMapImpl extends AbstractPrimitiveLongMap<double[]> implements LongDoubleMap {
+
+    private final double noValue;
+
+    /**
+     * Creates long-to-double map instance with the "no value" sentinel = 0.0 and default parameters:
+     * initial capacity = {@value AbstractPrimitiveLongMap#DEFAULT_CAPACITY},
+     * top load factor = {@value AbstractPrimitiveLongMap#DEFAULT_TOP_LOAD_FACTOR},
+     * bottom load factor = {@value AbstractPrimitiveLongMap#DEFAULT_BOTTOM_LOAD_FACTOR}.
+     * The table of the map is initialized lazily (not exists before the first usage).
+     */
+    public LongDoubleMapImpl() {
+        this(0.0);
+    }
+
+    /**
+     * Creates long-to-double map instance with the specified "no value" sentinel and default parameters.
+     *
+     * @param noValue the value returned by {@link #get(long)}, {@link #remove(long)} and
+     *                {@link #put(long, double)} when there is no mapping or it can not be done.
+     */
+    public LongDoubleMapImpl(double noValue) {
+        this.noValue = noValue;
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or the "no value" sentinel otherwise.
+     */
+    public double put(long key, double value) {
+        int index = getIndexForPut(key);
+        if (index == NO_INDEX) {
+            return noValue;
+        }
+        if (index >= 0) {
+            values[index] = value;
+        } else {
+            reserveValues[~index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     * As the sentinel may be a legal value too, use {@link #containsKey(long)} to tell them apart.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or the "no value" sentinel if there is no mapping with such key in the map.
+     */
+    public double get(long key) {
+        int index = getKeyIndex(key);
+        if (index != -1) {
+            return values[index];
+        }
+        index = getReserveIndex(key);
+        return (index != -1) ? reserveValues[index] : noValue;
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or the "no value" sentinel if there is no mapping for the specified key in the map.
+     */
+    public double remove(long key) {
+        double value = noValue;
+        int index = getKeyIndex(key);
+        if (index != -1) {
+            value = values[index];
+            removeEntry(index);
+        } else {
+            index = getReserveIndex(key);
+            if (index != -1) {
+                value = reserveValues[index];
+                removeReserveEntry(index);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Adds the delta to the value mapped with the specified key in place.
+     * If there is no mapping for the key, the delta is mapped with it (as if added to 0.0).
+     *
+     * @param key   the key which value is changed.
+     * @param delta the number to add to the value.
+     * @return the new <tt>value</tt> mapped with the key.
+     */
+    public double addTo(long key, double delta) {
+        int index = getKeyIndex(key);
+        if (index != -1) {
+            return values[index] += delta;
+        }
+        index = getReserveIndex(key);
+        if (index != -1) {
+            return reserveValues[index] += delta;
+        }
+        return put(key, delta);
+    }
+
+    /**
+     * Adds one to the value mapped with the specified key in place.
+     *
+     * @param key the key which value is incremented.
+     * @return the new <tt>value</tt> mapped with the key.
+     * @see #addTo(long, double)
+     */
+    public double increment(long key) {
+        return addTo(key, 1.0);
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsValue(double value) {
+        if (states != null) {
+            for (int i = 0; i < states.length; i++) {
+                if (states[i] == OCCUPIED && Double.doubleToLongBits(values[i]) == Double.doubleToLongBits(value)) {
+                    return true;
+                }
+            }
+            for (int i = 0; reserveStates != null && i < reserveStates.length; i++) {
+                if (reserveStates[i] == OCCUPIED
+                        && Double.doubleToLongBits(reserveValues[i]) == Double.doubleToLongBits(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all values mapped in the map, in the same order as {@link #keys()} returns the keys.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public double[] values() {
+        double[] result = new double[(int) size()];
+        if (result.length != 0) {
+            int position = 0;
+            for (int i = 0; i < states.length; i++) {
+                if (states[i] == OCCUPIED) {
+                    result[position++] = values[i];
+                }
+            }
+            for (int i = 0; reserveStates != null && i < reserveStates.length; i++) {
+                if (reserveStates[i] == OCCUPIED) {
+                    result[position++] = reserveValues[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the "no value" sentinel of the map.
+     *
+     * @return the value which means that there is no mapping.
+     */
+    public double getNoValue() {
+        return noValue;
+    }
+
+    @Override
+    double[] newValues(int length) {
+        return new double[length];
+    }
+}
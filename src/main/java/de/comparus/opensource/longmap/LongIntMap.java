@@ -0,0 +1,26 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Map with keys of type long and values of type int, which stores the values without boxing.
+ * Absence of a mapping is reported with the "no value" sentinel of the map (see {@link #getNoValue()}).
+ */
+public interface LongIntMap {
+    int put(long key, int value);
+    int get(long key);
+    int remove(long key);
+
+    int addTo(long key, int delta);
+    int increment(long key);
+
+    boolean isEmpty();
+    boolean containsKey(long key);
+    boolean containsValue(int value);
+
+    long[] keys();
+    int[] values();
+
+    long size();
+    void clear();
+
+    int getNoValue();
+}
@@ -0,0 +1,26 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Map with keys of type long and values of type long, which stores the values without boxing.
+ * Absence of a mapping is reported with the "no value" sentinel of the map (see {@link #getNoValue()}).
+ */
+public interface LongLongMap {
+    long put(long key, long value);
+    long get(long key);
+    long remove(long key);
+
+    long addTo(long key, long delta);
+    long increment(long key);
+
+    boolean isEmpty();
+    boolean containsKey(long key);
+    boolean containsValue(long value);
+
+    long[] keys();
+    long[] values();
+
+    long size();
+    void clear();
+
+    long getNoValue();
+}
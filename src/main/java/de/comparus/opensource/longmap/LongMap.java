@@ -1,5 +1,10 @@
 package de.comparus.opensource.longmap;
 
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongFunction;
+
 public interface LongMap<V> {
     V put(long key, V value);
     V get(long key);
@@ -14,4 +19,276 @@ public interface LongMap<V> {
 
     long size();
     void clear();
+
+    /**
+     * Returns the value to which the specified key is mapped, or the default value if there is no mapping.
+     *
+     * @param key          the key which mapping is searched in the map.
+     * @param defaultValue the value returned if there is no mapping for the key.
+     * @return the <tt>value</tt> mapped with the key, or the <tt>defaultValue</tt>.
+     */
+    default V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return (value != null) ? value : defaultValue;
+    }
+
+    /**
+     * Maps the key with the value if the key is not mapped yet.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> already mapped with the key, or {@code null} if the new mapping has been set.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    default V putIfAbsent(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        V oldValue = get(key);
+        if (oldValue == null) {
+            put(key, value);
+        }
+        return oldValue;
+    }
+
+    /**
+     * Maps the key with the value only if the key is mapped already.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the previous <tt>value</tt> mapped with the key, or {@code null} if there was no mapping.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    default V replace(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        V oldValue = get(key);
+        if (oldValue != null) {
+            put(key, value);
+        }
+        return oldValue;
+    }
+
+    /**
+     * If the key is not mapped yet, maps it with the value computed by the function
+     * (nothing is mapped if the function returns {@code null}).
+     * The function must not change the map.
+     *
+     * @param key             the key which value is returned or computed.
+     * @param mappingFunction the function computing the value of the key.
+     * @return the <tt>value</tt> mapped with the key (the existing or the computed one).
+     */
+    default V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Maps the key with the value computed by the function from the key and its current value
+     * ({@code null} if there is no mapping). If the function returns {@code null}, the mapping is removed.
+     * The function must not change the map.
+     *
+     * @param key               the key which value is computed.
+     * @param remappingFunction the function computing the new value of the key.
+     * @return the new <tt>value</tt> mapped with the key, or {@code null} if there is no mapping now.
+     */
+    default V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        V oldValue = get(key);
+        V value = remappingFunction.apply(key, oldValue);
+        if (value != null) {
+            put(key, value);
+        } else if (oldValue != null) {
+            remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Maps the key with the value if the key is not mapped yet, otherwise with the value computed
+     * by the function from the current and the specified values. If the function returns
+     * {@code null}, the mapping is removed. The function must not change the map.
+     *
+     * @param key               the key which value is merged.
+     * @param value             the value to map or merge with the current one.
+     * @param remappingFunction the function merging the current value with the specified one.
+     * @return the new <tt>value</tt> mapped with the key, or {@code null} if there is no mapping now.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    default V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        V oldValue = get(key);
+        V newValue = (oldValue != null) ? remappingFunction.apply(oldValue, value) : value;
+        if (newValue != null) {
+            put(key, newValue);
+        } else {
+            remove(key);
+        }
+        return newValue;
+    }
+
+    /**
+     * Looks up the values of the keys of a batch: the value of keys[i] is written to out[i]
+     * ({@code null} if there is no mapping). The default one calls {@link #get(long)} for every key,
+     * an implementation may probe the keys of the batch together.
+     *
+     * @param keys the keys which values are searched.
+     * @param out  the array of at least keys.length elements the values are written to.
+     * @return the number of keys which have mappings.
+     * @throws IllegalArgumentException if out is shorter than keys.
+     */
+    default int getAll(long[] keys, V[] out) throws IllegalArgumentException {
+        LongMaps.checkBatch(keys, out);
+        int found = 0;
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = get(keys[i]);
+            if (out[i] != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Maps every keys[i] with values[i]. The values are checked before the map is changed,
+     * so a {@code null} value leaves the map unchanged. The default one calls {@link #put(long, Object)}
+     * for every key, an implementation may presize the map once and probe the keys of the batch together.
+     *
+     * @param keys   the keys for mapping.
+     * @param values the values for mapping, of at least keys.length elements.
+     * @throws IllegalArgumentException if values is shorter than keys.
+     * @throws NullPointerException     if any of the values == {@code null}.
+     */
+    default void putAll(long[] keys, V[] values) throws IllegalArgumentException, NullPointerException {
+        LongMaps.checkBatch(keys, values);
+        LongMaps.checkValues(values, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Removes the mappings of the keys of a batch. The default one calls {@link #remove(long)}
+     * for every key, an implementation may probe the keys of the batch together.
+     *
+     * @param keys the keys which mappings are removed.
+     * @return the number of removed mappings.
+     */
+    default int removeAll(long[] keys) {
+        int removed = 0;
+        for (long key : keys) {
+            if (remove(key) != null) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     * The default one walks a copy of {@link #keys()} and reads every value with {@link #get(long)},
+     * the implementations walk their storage in place.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    default LongMapCursor<V> cursor() {
+        return new KeysCursor<>(this);
+    }
+
+    /**
+     * Performs the action for every mapping of the map, without allocating arrays of keys or values.
+     *
+     * @param action the action performed for every key and its value.
+     */
+    default void forEach(LongObjConsumer<? super V> action) {
+        LongMapCursor<V> cursor = cursor();
+        while (cursor.advance()) {
+            action.accept(cursor.key(), cursor.value());
+        }
+    }
+
+    /**
+     * Returns a spliterator over the mappings of the map, see {@link LongMapSpliterator}.
+     * The default one walks the cursor and can not be split, so the parallel operations
+     * of such a map run in one thread.
+     *
+     * @return a new spliterator over all mappings.
+     */
+    default LongMapSpliterator<V> spliterator() {
+        return new LongMapTasks.CursorSpliterator<>(cursor(), size());
+    }
+
+    /**
+     * Performs the action for every mapping of the map in parallel, on the common fork-join pool.
+     * The action must be thread-safe and must not change the map; the map must not be changed
+     * until the method returns.
+     *
+     * @param action the action performed for every key and its value.
+     */
+    default void parallelForEach(LongObjConsumer<? super V> action) {
+        LongMapTasks.forEach(spliterator(), action);
+    }
+
+    /**
+     * Maps every mapping of the map and reduces the results in parallel, on the common fork-join pool.
+     * The map must not be changed until the method returns.
+     *
+     * @param identity the identity of the combiner, the result for an empty map.
+     * @param mapper   the function of a key and its value.
+     * @param combiner the associative function combining two results.
+     * @return the combination of the results of the mapper for all mappings.
+     */
+    default <U> U parallelReduce(U identity, LongObjFunction<? super V, ? extends U> mapper,
+                                 BinaryOperator<U> combiner) {
+        return LongMapTasks.reduce(spliterator(), identity, mapper, combiner);
+    }
+
+    /**
+     * Maps every mapping of the map to a long and reduces the results in parallel, without boxing,
+     * on the common fork-join pool. The map must not be changed until the method returns.
+     *
+     * @param identity the identity of the combiner, the result for an empty map.
+     * @param mapper   the function of a key and its value.
+     * @param combiner the associative function combining two results.
+     * @return the combination of the results of the mapper for all mappings.
+     */
+    default long parallelReduceToLong(long identity, LongObjToLongFunction<? super V> mapper,
+                                      LongBinaryOperator combiner) {
+        return LongMapTasks.reduceToLong(spliterator(), identity, mapper, combiner);
+    }
+
+    /**
+     * Tests every mapping of the map in parallel, on the common fork-join pool.
+     * The map must not be changed until the method returns.
+     *
+     * @param predicate the thread-safe predicate of a key and its value.
+     * @return the <tt>array</tt> of the keys of the mappings which satisfy the predicate, in no particular order.
+     */
+    default long[] parallelFilterToArray(LongObjPredicate<? super V> predicate) {
+        return LongMapTasks.filter(spliterator(), predicate);
+    }
+
+    /**
+     * Removes the mappings which satisfy the predicate. The predicate is tested in parallel,
+     * on the common fork-join pool, then the found mappings are removed in the calling thread.
+     *
+     * @param predicate the thread-safe predicate of a key and its value.
+     * @return <tt>true</tt> if any mapping has been removed, or <tt>false</tt> otherwise.
+     */
+    default boolean parallelRemoveIf(LongObjPredicate<? super V> predicate) {
+        long[] keys = parallelFilterToArray(predicate);
+        for (long key : keys) {
+            remove(key);
+        }
+        return keys.length != 0;
+    }
 }
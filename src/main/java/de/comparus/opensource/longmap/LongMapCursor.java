@@ -0,0 +1,48 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Cursor over the mappings of a {@link LongMap}, which reads the storage of the map directly:
+ * it allocates nothing per mapping and boxes nothing.
+ * <pre>
+ *     LongMapCursor&lt;V&gt; cursor = map.cursor();
+ *     while (cursor.advance()) {
+ *         if (cursor.value() == stale) {
+ *             cursor.remove();
+ *         }
+ *     }
+ * </pre>
+ * The mappings are visited in no particular order. Removing the current mapping through
+ * the cursor is safe: no mapping is skipped or visited twice, and the shrink of the table
+ * the removals may need is postponed until {@link #advance()} returns <tt>false</tt>.
+ * Any other change of the map during the walk makes the result of the cursor undefined
+ * (unless the map says otherwise).
+ */
+public interface LongMapCursor<V> {
+
+    /**
+     * Moves the cursor to the next mapping.
+     *
+     * @return <tt>true</tt> if the cursor points to a mapping,
+     * or <tt>false</tt> if all mappings have been visited.
+     */
+    boolean advance();
+
+    /**
+     * @return the key of the current mapping.
+     * @throws IllegalStateException if there is no current mapping.
+     */
+    long key() throws IllegalStateException;
+
+    /**
+     * @return the value of the current mapping.
+     * @throws IllegalStateException if there is no current mapping.
+     */
+    V value() throws IllegalStateException;
+
+    /**
+     * Removes the current mapping from the map, the cursor stays before the next mapping.
+     *
+     * @throws IllegalStateException if there is no current mapping (e.g. it has been removed already).
+     */
+    void remove() throws IllegalStateException;
+}
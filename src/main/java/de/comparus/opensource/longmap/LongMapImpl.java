@@ -2,28 +2,59 @@ package de.comparus.opensource.longmap;
 
 import com.sun.istack.internal.Nullable;
 
-import java.util.Arrays;
-import java.util.function.Predicate;
-import java.util.stream.LongStream;
-import java.util.stream.Stream;
+import java.io.IOException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.reflect.Array;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
 
 public class LongMapImpl<V> implements LongMap<V> {
 
-    private Entry[] table;
+    private long[] keys;
+    private Object[] values;            // null for a free slot, DELETED for a removed one
 
-    private Reserve<V> reserve;
+    private long[] reserveKeys;         // a linear probing table with the home slots of mixed keys
+    private Object[] reserveValues;     // null for a free slot
     private int capacity;
+    private int minCapacity;            // the table never shrinks below, see ensureCapacity(long)
     private int size;
+    private int removalsSinceResize;    // the removals which pay for the next shrink
     private int reserveSize;
+    private long reserveLookups;        // the statistics of the reserve, see getReserveLookupCount() etc.
+    private long reserveHits;
+    private long reserveInserts;
+    private int tombstones;             // DELETED slots of the table
+    private LongMapStatsRecorder statsRecorder;     // null while the statistics are disabled
 
     private double topLoadFactor;
     private double bottomLoadFactor;
 
+    private final boolean incrementalResize;
+    private long[] oldKeys;             // the table and the reserve being migrated by incremental resize
+    private Object[] oldValues;
+    private long[] oldReserveKeys;
+    private Object[] oldReserveValues;
+    private int migrationIndex;         // the next slot of the old table (then of the old reserve) to migrate
+
+    private Object[] denseValues;       // in the dense mode the value of the key denseBase + i, null if absent
+    private long denseBase;
+
     private static final int DEFAULT_CAPACITY = 16;
     private static final int MAX_CAPACITY = 1 << 30;
     private static final double DEFAULT_TOP_LOAD_FACTOR = 0.8;
     private static final double DEFAULT_BOTTOM_LOAD_FACTOR = 0.2;
     private static final int DEFAULT_MAX_LOOP = 10;
+    private static final int DEFAULT_RESERVE_CAPACITY = 8;
+    private static final int DEFAULT_MIGRATION_STEP = 64;
+    private static final int BATCH_SIZE = 64;              // at most 64, the bits of BatchProbe.decided
+    private static final int DENSE_MIN_SIZE = 64;
+    private static final int DENSE_MAX_SLOTS_PER_MAPPING = 2;
+    private static final int SPARSE_MIN_SLOTS_PER_MAPPING = 4;
+
+    private static final Object DELETED = new Object();
 
     /**
      * Creates long map instance with default parameters:
@@ -33,10 +64,73 @@ public class LongMapImpl<V> implements LongMap<V> {
      * The table of the map is initialized lazily (not exists before the first usage).
      */
     public LongMapImpl() {
-        capacity = DEFAULT_CAPACITY;
+        this(false);
+    }
+
+    /**
+     * Creates long map instance with default parameters and the specified resize mode.
+     * <p>
+     * With incremental resize the old table is not rehashed at once: the new table is
+     * allocated and both tables coexist, while every following {@link #put(long, Object)},
+     * {@link #get(long)} and {@link #remove(long)} migrates up to
+     * {@value LongMapImpl#DEFAULT_MIGRATION_STEP} slots of the old table. No single operation
+     * pays the whole O(n) rehash, at the price of checking both tables until the migration ends.
+     *
+     * @param incrementalResize <tt>true</tt> for incremental resize,
+     *                          <tt>false</tt> for rehashing the whole table at once.
+     */
+    public LongMapImpl(boolean incrementalResize) {
+        this(0, DEFAULT_TOP_LOAD_FACTOR, DEFAULT_BOTTOM_LOAD_FACTOR, incrementalResize);
+    }
+
+    /**
+     * Creates long map instance with default load factors, which holds the expected number of mappings
+     * without resizing. The capacity for the expected size is the minimal capacity of the map:
+     * the table does not shrink below it when the mappings are removed.
+     * The table of the map is initialized lazily (not exists before the first usage).
+     *
+     * @param expectedSize the expected number of mappings.
+     * @throws IllegalArgumentException if expectedSize < 0.
+     */
+    public LongMapImpl(long expectedSize) {
+        this(expectedSize, DEFAULT_TOP_LOAD_FACTOR, DEFAULT_BOTTOM_LOAD_FACTOR, false);
+    }
+
+    /**
+     * Creates long map instance with the specified load factors, which holds the expected number
+     * of mappings without resizing.
+     * <p>
+     * The table is doubled when the load exceeds the top load factor and halved when it falls
+     * below the bottom load factor. The bottom load factor must be at most a quarter of the top one:
+     * then the load of a doubled table is at least twice the bottom load factor, and the load
+     * of a halved table is at most a half of the top one, so a map which oscillates around
+     * a threshold never shrinks right after a grow or grows right after a shrink.
+     *
+     * @param expectedSize      the expected number of mappings.
+     * @param topLoadFactor     the load factor above which the table is doubled, in (0, 1].
+     * @param bottomLoadFactor  the load factor below which the table is halved, in [0, topLoadFactor / 4],
+     *                          0 for a table which never shrinks.
+     * @param incrementalResize <tt>true</tt> for incremental resize,
+     *                          <tt>false</tt> for rehashing the whole table at once.
+     * @throws IllegalArgumentException if expectedSize < 0 or the load factors are out of their ranges.
+     */
+    public LongMapImpl(long expectedSize, double topLoadFactor, double bottomLoadFactor, boolean incrementalResize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize = " + expectedSize);
+        }
+        if (!(topLoadFactor > 0 && topLoadFactor <= 1)) {
+            throw new IllegalArgumentException("topLoadFactor = " + topLoadFactor);
+        }
+        if (!(bottomLoadFactor >= 0 && bottomLoadFactor <= topLoadFactor / 4)) {
+            throw new IllegalArgumentException("bottomLoadFactor = " + bottomLoadFactor
+                    + ", must be in [0, topLoadFactor / 4]");
+        }
         size = 0;
-        topLoadFactor = DEFAULT_TOP_LOAD_FACTOR;
-        bottomLoadFactor = DEFAULT_BOTTOM_LOAD_FACTOR;
+        this.topLoadFactor = topLoadFactor;
+        this.bottomLoadFactor = bottomLoadFactor;
+        this.incrementalResize = incrementalResize;
+        minCapacity = getCapacityFor(expectedSize);
+        capacity = minCapacity;
     }
 
     /**
@@ -52,9 +146,16 @@ public class LongMapImpl<V> implements LongMap<V> {
         if (value == null) {
             throw new NullPointerException("value = null");
         }
+        if (isDense()) {
+            return putDense(key, value);
+        }
 
         if (size <= MAX_CAPACITY) {
+            migrate();
             if ((double) (size + 1) / capacity > topLoadFactor) {
+                if (toDense(key, key, size + 1L)) {
+                    return putDense(key, value);
+                }
                 changeTableSize(true);
             }
             return putNewPair(key, value);
@@ -71,9 +172,24 @@ public class LongMapImpl<V> implements LongMap<V> {
      */
     @Nullable
     public V get(long key) {
-        int index = getKeyIndex(key);
+        if (isDense()) {
+            int index = getDenseIndex(key);
+            return (index != -1) ? (V) denseValues[index] : null;
+        }
+        migrate();
+        int index = getKeyIndex(key, keys, values);
         if (index != -1) {
-            return (V) getTable()[index].value;
+            return (V) values[index];
+        }
+        if (isMigrating()) {
+            index = getKeyIndex(key, oldKeys, oldValues);
+            if (index != -1) {
+                return (V) oldValues[index];
+            }
+            index = getOldReserveIndex(key);
+            if (index != -1) {
+                return (V) oldReserveValues[index];
+            }
         }
         return getFromReserve(key);
     }
@@ -87,18 +203,15 @@ public class LongMapImpl<V> implements LongMap<V> {
      */
     @Nullable
     public V remove(long key) {
-        V value;
-        int index = getKeyIndex(key);
-        if (index != -1) {
-            value = removeEntry(index);
-        } else {
-            value = removeInReserve(key);
-        }
-        if (size == 0) {
-            clear();
-        } else if ((double) size / capacity < bottomLoadFactor) {
-            changeTableSize(false);
+        if (isDense()) {
+            int index = getDenseIndex(key);
+            V value = (index != -1) ? removeDenseEntry(index) : null;
+            trim();
+            return value;
         }
+        migrate();
+        V value = removeFromTable(key);
+        trim();
         return value;
     }
 
@@ -120,8 +233,13 @@ public class LongMapImpl<V> implements LongMap<V> {
      * or <tt>false</tt> otherwise.
      */
     public boolean containsKey(long key) {
-        return getKeyIndex(key) != -1
-                || containsKeyInReserve(key);
+        if (isDense()) {
+            int index = getDenseIndex(key);
+            return index != -1 && denseValues[index] != null;
+        }
+        return getKeyIndex(key, keys, values) != -1
+                || getReserveIndex(key) != -1
+                || (isMigrating() && (getKeyIndex(key, oldKeys, oldValues) != -1 || getOldReserveIndex(key) != -1));
     }
 
     /**
@@ -132,13 +250,14 @@ public class LongMapImpl<V> implements LongMap<V> {
      * or <tt>false</tt> if not or if value == null.
      */
     public boolean containsValue(V value) {
-        if (value != null) {
-            for (Entry entry : getTable()) {
-                if (entry != null && value.equals(entry.value) && entry.zeroForDeletedEntry == 1) {
-                    return true;
-                }
-            }
-            return containsValueInReserve(value);
+        if (value != null && isDense()) {
+            return containsValue(denseValues, denseValues.length, value);
+        }
+        if (value != null && values != null) {
+            return containsValue(values, capacity, value)
+                    || containsValue(reserveValues, getLength(reserveValues), value)
+                    || (isMigrating() && (containsValue(oldValues, oldValues.length, value)
+                    || containsValue(oldReserveValues, getLength(oldReserveValues), value)));
         }
         return false;
     }
@@ -150,18 +269,28 @@ public class LongMapImpl<V> implements LongMap<V> {
      * or empty array if the map is empty.
      */
     public long[] keys() {
-        if (size == 0) {
-            return new long[0];
-        } else {
-            LongStream tableKeys = Arrays.stream(getTable()).filter(isEntryNotEmpty())
-                    .mapToLong(Entry::getKey);
-            LongStream reserveKeys = getReserveKeys();
-            return LongStream.concat(tableKeys, reserveKeys).toArray();
+        long[] result = new long[size];
+        if (isDense()) {
+            int position = 0;
+            for (int i = 0; position < size; i++) {
+                if (denseValues[i] != null) {
+                    result[position++] = denseBase + i;
+                }
+            }
+        } else if (size != 0) {
+            int position = copyKeys(keys, values, capacity, result, 0);
+            position = copyKeys(reserveKeys, reserveValues, getLength(reserveValues), result, position);
+            if (isMigrating()) {
+                position = copyKeys(oldKeys, oldValues, oldValues.length, result, position);
+                copyKeys(oldReserveKeys, oldReserveValues, getLength(oldReserveValues), result, position);
+            }
         }
+        return result;
     }
 
     /**
      * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
      *
      * @return the <tt>array</tt> of all values mapped in the map.
      * or {@code null} if the map is empty.
@@ -170,11 +299,26 @@ public class LongMapImpl<V> implements LongMap<V> {
     public V[] values() {
         if (size == 0) {
             return null;
+        } else if (isDense()) {
+            V[] result = (V[]) Array.newInstance(getValuesClass(denseValues, denseValues.length, null), size);
+            copyValues(denseValues, denseValues.length, result, 0);
+            return result;
         } else {
-            Stream tableValue = Arrays.stream(getTable()).filter(isEntryNotEmpty())
-                    .map(Entry::getValue);
-            Stream reserveValue = getReserveValues();
-            return (V[]) Stream.concat(tableValue, reserveValue).toArray();
+            Class<?> valuesClass = getValuesClass(values, capacity, null);
+            valuesClass = getValuesClass(reserveValues, getLength(reserveValues), valuesClass);
+            if (isMigrating()) {
+                valuesClass = getValuesClass(oldValues, oldValues.length, valuesClass);
+                valuesClass = getValuesClass(oldReserveValues, getLength(oldReserveValues), valuesClass);
+            }
+
+            V[] result = (V[]) Array.newInstance(valuesClass, size);
+            int position = copyValues(values, capacity, result, 0);
+            position = copyValues(reserveValues, getLength(reserveValues), result, position);
+            if (isMigrating()) {
+                position = copyValues(oldValues, oldValues.length, result, position);
+                copyValues(oldReserveValues, getLength(oldReserveValues), result, position);
+            }
+            return result;
         }
     }
 
@@ -188,270 +332,1703 @@ public class LongMapImpl<V> implements LongMap<V> {
     }
 
     /**
-     * Removes all key-value mappings from the map.
+     * Removes all key-value mappings from the map and frees its table.
+     * The next table is created with the minimal capacity of the map.
      */
     public void clear() {
-        Arrays.fill(getTable(), null);
-        capacity = DEFAULT_CAPACITY;
-        table = null;
+        capacity = minCapacity;
+        removalsSinceResize = 0;
+        keys = null;
+        values = null;
+        denseValues = null;
         clearReserve();
+        clearOldGeneration();
         size = 0;
+        tombstones = 0;
     }
 
-
-    private V putNewPair(long key, V value) {
-        int indexForInsert = -1;
-
-        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
-            int index = calculateIndex(key, i);
-            Entry entry = getTable()[index];
-
-            if (entry == null || (entry.key == key && entry.zeroForDeletedEntry == 1)) {
-                indexForInsert = index;
-                break;
-            }
-            if (entry.zeroForDeletedEntry == 0 && indexForInsert == -1) {
-                indexForInsert = index;
-            }
+    /**
+     * {@inheritDoc}
+     * The slot of the key is located once and reused for the write. While the keys are in the dense array
+     * or an incremental resize is in progress, it falls back to the lookup and the write of {@link LongMap}.
+     */
+    @Nullable
+    public V putIfAbsent(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
         }
-
-        if (indexForInsert != -1) {
-            getTable()[indexForInsert] = new Entry<>(key, value);
-            size++;
-        } else {
-            putToReserve(key, value, true);
+        migrate();
+        if (isMigrating() || isDense()) {
+            return LongMap.super.putIfAbsent(key, value);
         }
-        return value;
+        int probe = probe(key);
+        int reserveIndex = (probe < 0) ? getReserveIndex(key) : -1;
+        V oldValue = getProbed(probe, reserveIndex);
+        if (oldValue == null) {
+            insert(probe, key, value);
+        }
+        return oldValue;
     }
 
-    private Entry[] getTable() {
-        if (table == null) {
-            table = new Entry[capacity];
+    /**
+     * {@inheritDoc}
+     * The slot is located once as in {@link #putIfAbsent(long, Object)}.
+     */
+    @Nullable
+    public V replace(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        migrate();
+        if (isMigrating() || isDense()) {
+            return LongMap.super.replace(key, value);
         }
-        return table;
+        int probe = probe(key);
+        int reserveIndex = (probe < 0) ? getReserveIndex(key) : -1;
+        V oldValue = getProbed(probe, reserveIndex);
+        if (oldValue != null) {
+            update(probe, reserveIndex, key, value);
+        }
+        return oldValue;
     }
 
-    private V removeEntry(int index) {
-        Entry entry = getTable()[index];
-        V value = (V) entry.value;
-        entry.zeroForDeletedEntry = 0;
-        size--;
+    /**
+     * {@inheritDoc}
+     * The slot is located once as in {@link #putIfAbsent(long, Object)}.
+     */
+    @Nullable
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        migrate();
+        if (isMigrating() || isDense()) {
+            return LongMap.super.computeIfAbsent(key, mappingFunction);
+        }
+        int probe = probe(key);
+        int reserveIndex = (probe < 0) ? getReserveIndex(key) : -1;
+        V value = getProbed(probe, reserveIndex);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            if (value != null) {
+                insert(probe, key, value);
+            }
+        }
         return value;
     }
 
-    private void changeTableSize(boolean increase) {
-        if ((increase && capacity <= MAX_CAPACITY / 2)
-                || (!increase && capacity >= DEFAULT_CAPACITY * 2)) {
-            capacity = (increase) ? (capacity << 1) : (capacity >> 1);
-            rehash();
+    /**
+     * {@inheritDoc}
+     * The slot is located once as in {@link #putIfAbsent(long, Object)}.
+     */
+    @Nullable
+    public V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        migrate();
+        if (isMigrating() || isDense()) {
+            return LongMap.super.compute(key, remappingFunction);
         }
+        int probe = probe(key);
+        int reserveIndex = (probe < 0) ? getReserveIndex(key) : -1;
+        V value = remappingFunction.apply(key, getProbed(probe, reserveIndex));
+        return update(probe, reserveIndex, key, value);
     }
 
-    private void rehash() {
-        Entry[] newTable = new Entry[capacity];
-        Stream<Entry> tableEntries = Arrays.stream(getTable()).filter(isEntryNotEmpty());
-        Stream<Entry> reserveEntries = getReserveEntries();
-        clearReserve();
-        Stream.concat(tableEntries, reserveEntries).forEach(e -> putToTable(e, newTable));
-        Arrays.fill(getTable(), null);
-        table = newTable;
+    /**
+     * {@inheritDoc}
+     * The slot is located once as in {@link #putIfAbsent(long, Object)}.
+     */
+    @Nullable
+    public V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        migrate();
+        if (isMigrating() || isDense()) {
+            return LongMap.super.merge(key, value, remappingFunction);
+        }
+        int probe = probe(key);
+        int reserveIndex = (probe < 0) ? getReserveIndex(key) : -1;
+        V oldValue = getProbed(probe, reserveIndex);
+        V newValue = (oldValue != null) ? remappingFunction.apply(oldValue, value) : value;
+        return update(probe, reserveIndex, key, newValue);
     }
 
-    private int getKeyIndex(long key) {
-        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
-            int index = calculateIndex(key, i);
-            Entry entry = getTable()[index];
-            if (entry != null) {
-                if (entry.key == key && entry.zeroForDeletedEntry == 1) {
-                    return index;
+    /**
+     * {@inheritDoc}
+     * The keys are probed by batches of {@value LongMapImpl#BATCH_SIZE}, advanced together
+     * (see {@link BatchProbe}), so the cache misses of different keys overlap instead of
+     * following one another.
+     */
+    public int getAll(long[] keys, V[] out) throws IllegalArgumentException {
+        LongMaps.checkBatch(keys, out);
+        if (isDense() || isMigrating() || values == null) {
+            return LongMap.super.getAll(keys, out);
+        }
+        BatchProbe probe = new BatchProbe();
+        int found = 0;
+        for (int start = 0; start < keys.length; start += BATCH_SIZE) {
+            probe.start(keys, start, Math.min(BATCH_SIZE, keys.length - start));
+            while (probe.nextRound(keys)) {
+                int kept = 0;
+                for (int p = 0; p < probe.size; p++) {
+                    if (!probe.isDecided(p)) {
+                        probe.keep(kept++, p);
+                        continue;
+                    }
+                    int offset = probe.offsets[p];
+                    Object current = values[probe.slots[p]];
+                    recordProbes(probe.round);
+                    out[offset] = (current != null) ? (V) current : getFromReserve(keys[offset]);
+                    found += (out[offset] != null) ? 1 : 0;
                 }
-            } else {
-                return -1;
+                probe.size = kept;
+            }
+            for (int p = 0; p < probe.size; p++) {
+                int offset = probe.offsets[p];
+                recordProbes(DEFAULT_MAX_LOOP);
+                out[offset] = getFromReserve(keys[offset]);
+                found += (out[offset] != null) ? 1 : 0;
             }
         }
-        return -1;
+        return found;
     }
 
-    private int calculateIndex(long key, int i) {
-        int hash = getHash(key);
-        int h1 = hash % capacity;
-        int h2 = 1 + (hash % (capacity - 1));
-        return (h1 + i * h2) % capacity;
+    /**
+     * {@inheritDoc}
+     * The keys are probed as by {@link #getAll(long[], Object[])} and the value of a found key
+     * is replaced in place. Then the table is resized at most once for the keys which have not been
+     * found (or the map turns dense, if the keys are dense), and they are probed again and put
+     * as by {@link #put(long, Object)} (their slots are in the cache by then).
+     */
+    public void putAll(long[] keys, V[] values) throws IllegalArgumentException, NullPointerException {
+        LongMaps.checkBatch(keys, values);
+        LongMaps.checkValues(values, keys.length);
+        if (incrementalResize || isMigrating()) {
+            LongMap.super.putAll(keys, values);
+            return;
+        }
+        long[] newKeys = keys;
+        V[] newValues = values;
+        if (!isDense() && size != 0) {
+            int[] missing = new int[keys.length];
+            int missingSize = replaceAll(keys, values, missing);
+            if (missingSize == 0) {
+                return;
+            }
+            newKeys = new long[missingSize];
+            newValues = (V[]) new Object[missingSize];
+            for (int i = 0; i < missingSize; i++) {
+                newKeys[i] = keys[missing[i]];
+                newValues[i] = values[missing[i]];
+            }
+        }
+        if (!isDense()) {
+            presizeFor(newKeys);
+        }
+        if (isDense()) {
+            for (int i = 0; i < newKeys.length; i++) {
+                put(newKeys[i], newValues[i]);
+            }
+            return;
+        }
+        initTable();
+        insertAll(newKeys, newValues);
     }
 
-    private int getHash(long key) {
-        return Math.abs((int) (key ^ (key >>> 32)));
+    /**
+     * Replaces the values of the keys of the batch which are mapped, without any change of the table.
+     * A key repeated in the batch is decided in the same round every time, so the offsets
+     * of its occurrences stay in the order of the batch.
+     *
+     * @param missing receives the offsets of the keys which are not mapped.
+     * @return the number of the keys which are not mapped.
+     */
+    private int replaceAll(long[] keys, V[] values, int[] missing) {
+        BatchProbe probe = new BatchProbe();
+        int missingSize = 0;
+        for (int start = 0; start < keys.length; start += BATCH_SIZE) {
+            probe.start(keys, start, Math.min(BATCH_SIZE, keys.length - start));
+            while (probe.nextRound(keys)) {
+                int kept = 0;
+                for (int p = 0; p < probe.size; p++) {
+                    if (!probe.isDecided(p)) {
+                        probe.keep(kept++, p);
+                        continue;
+                    }
+                    int offset = probe.offsets[p];
+                    int slot = probe.slots[p];
+                    if (this.values[slot] != null) {
+                        recordProbes(probe.round);
+                        this.values[slot] = values[offset];
+                    } else if (!replaceInReserve(keys[offset], values[offset])) {
+                        missing[missingSize++] = offset;
+                    }
+                }
+                probe.size = kept;
+            }
+            for (int p = 0; p < probe.size; p++) {
+                int offset = probe.offsets[p];
+                if (!replaceInReserve(keys[offset], values[offset])) {
+                    missing[missingSize++] = offset;
+                }
+            }
+        }
+        return missingSize;
     }
 
-    private void putToTable(Entry entry, Entry[] newTable) {
-        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
-            int index = calculateIndex(entry.key, i);
-            if (newTable[index] == null) {
-                newTable[index] = entry;
+    /**
+     * Puts the keys of the batch into the table which has been sized for them.
+     */
+    private void insertAll(long[] keys, V[] values) {
+        BatchProbe probe = new BatchProbe();
+        for (int start = 0; start < keys.length; start += BATCH_SIZE) {
+            Object[] table = this.values;
+            if (table == null) {
+                //the reserve has grown the table into the dense mode
+                for (int i = start; i < keys.length; i++) {
+                    put(keys[i], values[i]);
+                }
                 return;
             }
+            probe.start(keys, start, Math.min(BATCH_SIZE, keys.length - start));
+            while (this.values == table && probe.nextRound(keys)) {
+                int kept = 0;
+                for (int p = 0; p < probe.size; p++) {
+                    int offset = probe.offsets[p];
+                    int slot = probe.slots[p];
+                    //a put of this round may have resized the table, or taken the loaded slot
+                    if (this.values == table && probe.isDecided(p)) {
+                        Object current = table[slot];
+                        if (isLive(current) && this.keys[slot] == keys[offset]) {
+                            recordProbes(probe.round);
+                            table[slot] = values[offset];
+                            continue;
+                        } else if (current == null) {
+                            put(keys[offset], values[offset]);
+                            continue;
+                        }
+                    }
+                    probe.keep(kept++, p);
+                }
+                probe.size = kept;
+            }
+            for (int p = 0; p < probe.size; p++) {
+                put(keys[probe.offsets[p]], values[probe.offsets[p]]);
+            }
         }
-        putToReserve(entry.key, (V) entry.value, false);
     }
 
-    private Predicate<Entry> isEntryNotEmpty() {
-        return e -> e != null && e.zeroForDeletedEntry == 1;
+    /**
+     * {@inheritDoc}
+     * The keys are probed as by {@link #getAll(long[], Object[])}, and the table
+     * is shrunk (if needed) once after the whole batch.
+     */
+    public int removeAll(long[] keys) {
+        if (isDense() || isMigrating() || values == null) {
+            return LongMap.super.removeAll(keys);
+        }
+        BatchProbe probe = new BatchProbe();
+        int removed = 0;
+        for (int start = 0; start < keys.length; start += BATCH_SIZE) {
+            probe.start(keys, start, Math.min(BATCH_SIZE, keys.length - start));
+            while (probe.nextRound(keys)) {
+                int kept = 0;
+                for (int p = 0; p < probe.size; p++) {
+                    int offset = probe.offsets[p];
+                    int slot = probe.slots[p];
+                    //a removal of this round may have deleted the loaded slot (a key repeated in the batch)
+                    if (probe.isDecided(p)) {
+                        Object current = values[slot];
+                        if (isLive(current) && this.keys[slot] == keys[offset]) {
+                            recordProbes(probe.round);
+                            removeEntry(values, slot);
+                            removed++;
+                            continue;
+                        } else if (current == null) {
+                            recordProbes(probe.round);
+                            removed += (removeInReserve(keys[offset]) != null) ? 1 : 0;
+                            continue;
+                        }
+                    }
+                    probe.keep(kept++, p);
+                }
+                probe.size = kept;
+            }
+            for (int p = 0; p < probe.size; p++) {
+                recordProbes(DEFAULT_MAX_LOOP);
+                removed += (removeInReserve(keys[probe.offsets[p]]) != null) ? 1 : 0;
+            }
+        }
+        trim();
+        return removed;
     }
 
-    private static class Entry<V> {
-        private long key;
-        private V value;
-        private byte zeroForDeletedEntry;         // == 0, when entry marked as deleted
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     * An unfinished incremental resize is not completed: the cursor walks the old generation
+     * after the current table and reserve, and removals through it do not move any mapping.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
 
-        private Entry(long key, V value) {
-            this.key = key;
-            this.value = value;
-            this.zeroForDeletedEntry = 1;
+    /**
+     * Performs the action for every mapping of the map, walking the table and the reserve
+     * (and the old generation of an incremental resize) in place.
+     *
+     * @param action the action performed for every key and its value.
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        if (isDense()) {
+            for (int i = 0; i < denseValues.length; i++) {
+                if (denseValues[i] != null) {
+                    action.accept(denseBase + i, (V) denseValues[i]);
+                }
+            }
+        } else if (values != null) {
+            forEach(keys, values, capacity, action);
+            forEach(reserveKeys, reserveValues, getLength(reserveValues), action);
+            if (isMigrating()) {
+                forEach(oldKeys, oldValues, oldValues.length, action);
+                forEach(oldReserveKeys, oldReserveValues, getLength(oldReserveValues), action);
+            }
         }
+    }
 
-        private Entry(Reserve<V> reserve) {
-            this(reserve.key, reserve.value);
+    /**
+     * Returns a spliterator over the mappings of the map, which splits the range of the slots
+     * of the table and the reserve in halves. An unfinished incremental resize is completed first.
+     *
+     * @return a new spliterator over all mappings.
+     */
+    public LongMapSpliterator<V> spliterator() {
+        finishMigration();
+        if (isDense()) {
+            return new DenseSpliterator<>(denseValues, denseBase, 0, denseValues.length, size);
         }
+        return new TableSpliterator<>(keys, values, reserveKeys, reserveValues,
+                0, getLength(values) + getLength(reserveValues), size);
+    }
 
-        private long getKey() {
-            return key;
-        }
+    /**
+     * Returns an immutable copy of the map for lookups only, see {@link FrozenLongMap}: the mappings
+     * are placed in dense arrays by a minimal perfect hash function, so a lookup reads one slot,
+     * and the copy may be shared between threads. This map stays unchanged and mutable.
+     *
+     * @return the frozen copy of the current mappings.
+     */
+    public FrozenLongMap<V> freeze() {
+        return new FrozenLongMap<>(this);
+    }
 
-        private V getValue() {
-            return value;
-        }
+    /**
+     * Writes a snapshot of the map to the channel, see {@link #writeTo(WritableByteChannel, ValueCodec, boolean)}.
+     * The mappings are written in the order of the table, which allocates nothing per mapping.
+     *
+     * @param channel the channel the snapshot is written to, it is not closed.
+     * @param codec   the codec of the values.
+     * @throws IOException if the channel fails.
+     */
+    public void writeTo(WritableByteChannel channel, ValueCodec<V> codec) throws IOException {
+        writeTo(channel, codec, false);
     }
 
-    private static class Reserve<V> {
+    /**
+     * Writes a snapshot of the map to the channel: a versioned header and chunks of mappings
+     * of up to 1 MB, each one protected by a CRC32 checksum. The chunks are built in a direct buffer.
+     * <p>
+     * With sorted keys the keys are written in ascending order as varint deltas, which makes
+     * a snapshot of dense keys several times smaller, at the price of an array of all keys
+     * to sort and a lookup of every value.
+     *
+     * @param channel    the channel the snapshot is written to, it is not closed.
+     * @param codec      the codec of the values.
+     * @param sortedKeys <tt>true</tt> to write delta encoded sorted keys,
+     *                   <tt>false</tt> to write the keys as they are in the table.
+     * @throws IOException if the channel fails.
+     */
+    public void writeTo(WritableByteChannel channel, ValueCodec<V> codec, boolean sortedKeys) throws IOException {
+        LongMapSnapshot.write(this, channel, codec, sortedKeys);
+    }
 
-        private long key;
-        private V value;
-        private Reserve next;
+    /**
+     * Reads a map from a snapshot written by {@link #writeTo(WritableByteChannel, ValueCodec, boolean)}.
+     * The table is allocated once for the number of mappings of the snapshot, so the restore
+     * does not rehash.
+     *
+     * @param channel the channel positioned at the snapshot, it is not closed.
+     * @param codec   the codec of the values.
+     * @return the new map with the mappings of the snapshot.
+     * @throws IOException if the channel fails, or the snapshot is damaged or of an unknown version.
+     */
+    public static <V> LongMapImpl<V> readFrom(ReadableByteChannel channel, ValueCodec<V> codec) throws IOException {
+        return LongMapSnapshot.read(channel, codec, size -> {
+            LongMapImpl<V> map = new LongMapImpl<>();
+            if (size > 0) {
+                map.presize(size);
+            }
+            return map;
+        });
+    }
 
-        private Reserve(long key, V value) {
-            this.key = key;
-            this.value = value;
+    /**
+     * Makes the map hold the expected number of mappings without resizing: grows the table at once
+     * if it is smaller, and keeps the table from shrinking below that capacity (until {@link #trimToSize()}).
+     *
+     * @param expectedSize the expected number of mappings.
+     * @throws IllegalArgumentException if expectedSize < 0.
+     */
+    public void ensureCapacity(long expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize = " + expectedSize);
         }
-
-        private boolean hasNext() {
-            return next != null;
+        int required = getCapacityFor(expectedSize);
+        minCapacity = Math.max(minCapacity, required);
+        if (isDense()) {
+            //the dense array has no load slack to reserve, the capacity is for a return to hashing
+            capacity = Math.max(capacity, required);
+        } else if (required > capacity) {
+            finishMigration();
+            if (values == null) {
+                capacity = required;
+            } else {
+                resize(required, false);
+            }
         }
     }
 
-    private void putToReserve(long key, V value, boolean isSizeIncrease) {
-        if (reserve == null) {
-            reserve = new Reserve<>(key, value);
+    /**
+     * Shrinks the table to the smallest capacity which holds the mappings under the top load factor
+     * (a dense array to the range of the keys), or frees the table if the map is empty. Drops the minimal capacity set by the constructor
+     * or {@link #ensureCapacity(long)}, so the map shrinks again as the mappings are removed.
+     */
+    public void trimToSize() {
+        finishMigration();
+        minCapacity = DEFAULT_CAPACITY;
+        if (size == 0) {
+            clear();
+        } else if (isDense()) {
+            compactDense();
         } else {
-            Reserve lastReserve = reserve;
-            while (lastReserve.hasNext()) {
-                lastReserve = lastReserve.next;
+            int fitting = getCapacityFor(size);
+            if (fitting < capacity) {
+                resize(fitting, false);
             }
-            lastReserve.next = new Reserve<>(key, value);
-        }
-        if (isSizeIncrease) {
-            size++;
         }
-        reserveSize++;
+    }
 
-        if (reserveSize > Math.max(10, size / 10)) {
-            changeTableSize(true);
-        }
+    /**
+     * Returns the number of mappings which have not found a slot in the table and are kept in the reserve.
+     *
+     * @return the number of mappings in the reserve.
+     */
+    public int getReserveSize() {
+        return reserveSize;
     }
 
-    @Nullable
-    private V getFromReserve(long key) {
-        if (reserve != null) {
-            Reserve lastReserve = reserve;
-            while (true) {
-                if (lastReserve.key == key) {
-                    return (V) lastReserve.value;
-                }
-                if (lastReserve.hasNext()) {
-                    lastReserve = lastReserve.next;
-                } else {
-                    break;
-                }
-            }
-        }
-        return null;
+    /**
+     * Returns the number of searches of a key in the reserve: every lookup or write of a key
+     * which is not in the table searches the reserve, if the reserve is not empty.
+     * The statistics of the reserve are counted for the whole life of the map, {@link #clear()} keeps them.
+     *
+     * @return the number of searches in the reserve.
+     */
+    public long getReserveLookupCount() {
+        return reserveLookups;
     }
 
-    @Nullable
-    private V removeInReserve(long key) {
-        V value = null;
-        if (reserve != null) {
-            if (reserve.key == key) {
-                value = removeReserveFirstElement();
-            } else {
-                value = removeReserveMiddleElement(key, reserve);
-            }
-        }
-        return value;
+    /**
+     * Returns the number of searches in the reserve which have found the key.
+     *
+     * @return the number of successful searches in the reserve.
+     */
+    public long getReserveHitCount() {
+        return reserveHits;
     }
 
-    private V removeReserveFirstElement() {
-        V value;
-        value = reserve.value;
-        if (reserve.next == null) {
-            reserve = null;
-            reserveSize = 0;
-        } else {
-            reserve = reserve.next;
-            reserveSize--;
-        }
-        size--;
-        return value;
+    /**
+     * Returns the number of mappings put into the reserve (by writes and by rehashes of the table).
+     *
+     * @return the number of insertions into the reserve.
+     */
+    public long getReserveInsertCount() {
+        return reserveInserts;
     }
 
-    @Nullable
-    private V removeReserveMiddleElement(long key, Reserve current) {
-        V value = null;
-        while (current.hasNext()) {
-            Reserve next = current.next;
-            if (next.key == key) {
-                value = (V) next.value;
-                current.next = next.next;
-                size--;
-                reserveSize--;
-                break;
-            }
-            current = next;
-        }
-        return value;
+    /**
+     * Enables or disables the counting of probe lengths and resizes, see {@link #getStats()}.
+     * Enabling starts the counts from zero. While disabled, the map pays one {@code null} check per lookup.
+     *
+     * @param enabled <tt>true</tt> to count, <tt>false</tt> to stop counting and forget the counts.
+     */
+    public void setStatsEnabled(boolean enabled) {
+        statsRecorder = enabled ? new LongMapStatsRecorder(DEFAULT_MAX_LOOP) : null;
     }
 
-    private boolean containsKeyInReserve(long key) {
-        return getReserveKeys().anyMatch(k -> k == key);
+    /**
+     * Checks if the probe lengths and resizes are counted.
+     *
+     * @return <tt>true</tt> if the statistics are enabled, or <tt>false</tt> otherwise.
+     */
+    public boolean isStatsEnabled() {
+        return statsRecorder != null;
     }
 
-    private boolean containsValueInReserve(V value) {
-        if (value != null) {
-            return getReserveValues().anyMatch(value::equals);
-        }
-        return false;
+    /**
+     * Takes a snapshot of the statistics of the map: the occupancy of the table and the reserve,
+     * the tombstones and the memory, and (if enabled by {@link #setStatsEnabled(boolean)})
+     * the histogram of probe lengths and the number and duration of resizes.
+     *
+     * @return the snapshot of the statistics.
+     */
+    public LongMapStats getStats() {
+        //the MXBean calls it from another thread, so every array is read once
+        Object[] dense = denseValues;
+        int length = (dense != null) ? dense.length : getLength(values);
+        return new LongMapStats(size, length, reserveSize, tombstones,
+                reserveLookups, reserveHits, reserveInserts, memoryUsage(), DEFAULT_MAX_LOOP, statsRecorder);
     }
 
-    private LongStream getReserveKeys() {
-        return getReserveStream().mapToLong(r -> r.key);
+    /**
+     * Registers the statistics of the map as an MXBean ({@link LongMapStatsMXBean}) in the platform
+     * MBean server, named {@code de.comparus.opensource.longmap:type=LongMap,name=<name>}.
+     * The attributes are read from the map without synchronization, so they may be inconsistent
+     * while other threads write to the map.
+     *
+     * @param name the name of the map.
+     * @return the name of the registered MXBean, to unregister it.
+     * @throws JMException if the name is invalid or already registered.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        return LongMapStats.registerMBean(name, this::getStats);
     }
 
-    private Stream<V> getReserveValues() {
-        return getReserveStream().map(r -> r.value);
+    /**
+     * Estimates the heap taken by the table and the reserve of the map (not counting the values).
+     *
+     * @return the number of bytes taken by the map structure.
+     */
+    long memoryUsage() {
+        //called by getStats() from another thread, so every array is read once, into a local
+        long[] tableKeys = keys;
+        Object[] tableValues = values;
+        long[] reserveTableKeys = reserveKeys;
+        Object[] reserveTableValues = reserveValues;
+        long[] oldTableKeys = oldKeys;
+        Object[] oldTableValues = oldValues;
+        long[] oldReserveTableKeys = oldReserveKeys;
+        Object[] oldReserveTableValues = oldReserveValues;
+        Object[] dense = denseValues;
+        return getArraysBytes(tableKeys, tableValues) + getArraysBytes(reserveTableKeys, reserveTableValues)
+                + getArraysBytes(oldTableKeys, oldTableValues) + getArraysBytes(oldReserveTableKeys, oldReserveTableValues)
+                + getArraysBytes(null, dense);
     }
 
-    private Stream<Entry> getReserveEntries() {
-        return getReserveStream().map(Entry::new);
+    /**
+     * Returns the number of slots of the old table and reserve which an incremental resize has still to migrate.
+     *
+     * @return the number of slots to migrate, or 0 if no incremental resize is in progress.
+     */
+    int getPendingMigrationSlots() {
+        return isMigrating() ? oldValues.length + getLength(oldReserveValues) - migrationIndex : 0;
     }
 
-    private void clearReserve() {
-        reserve = null;
-        reserveSize = 0;
+
+    private boolean isDense() {
+        return denseValues != null;
     }
 
-    private Stream<Reserve<V>> getReserveStream() {
-        if (reserve == null) {
-            return Stream.empty();
+    /**
+     * @return the slot of the dense array for the key, or -1 if the key is out of the range of the array.
+     */
+    private int getDenseIndex(long key) {
+        long offset = key - denseBase;
+        if (offset >= 0 && offset < denseValues.length) {
+            recordProbes(1);
+            return (int) offset;
+        }
+        return -1;
+    }
+
+    private V putDense(long key, V value) {
+        int index = getDenseIndex(key);
+        if (index == -1) {
+            if (!growDense(key)) {
+                toHashed();
+                return put(key, value);
+            }
+            index = getDenseIndex(key);
+        }
+        if (denseValues[index] == null) {
+            size++;
+        }
+        denseValues[index] = value;
+        return value;
+    }
+
+    @Nullable
+    private V removeDenseEntry(int index) {
+        V value = (V) denseValues[index];
+        if (value != null) {
+            denseValues[index] = null;
+            size--;
+            removalsSinceResize++;
+        }
+        return value;
+    }
+
+    /**
+     * Switches the map, whose table is about to be resized, to the dense mode if its keys (with the range
+     * of the new keys, if any) span at most {@value LongMapImpl#DENSE_MAX_SLOTS_PER_MAPPING} slots
+     * per expected mapping:
+     * a key is then the offset of its value in an array, without hashing and without the slack of the load
+     * factor. The check scans the keys, which the resize would rehash anyway. Small maps and maps with
+     * incremental resize (which must not pay O(n) at once) keep hashing.
+     *
+     * @return <tt>true</tt> if the map is dense now.
+     */
+    private boolean toDense(long min, long max, long expectedSize) {
+        if (incrementalResize || expectedSize < DENSE_MIN_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < getLength(values); i++) {
+            if (isLive(values[i])) {
+                min = Math.min(min, keys[i]);
+                max = Math.max(max, keys[i]);
+            }
+        }
+        for (int i = 0; i < getLength(reserveValues); i++) {
+            if (reserveValues[i] != null) {
+                min = Math.min(min, reserveKeys[i]);
+                max = Math.max(max, reserveKeys[i]);
+            }
+        }
+        long span = max - min + 1;      //overflows to a non-positive number for a range over half of longs
+        if (span <= 0 || span > MAX_CAPACITY || span > DENSE_MAX_SLOTS_PER_MAPPING * expectedSize) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        denseValues = new Object[getDenseLength(span)];
+        denseBase = getDenseBase(min, max, denseValues.length, false);
+        for (int i = 0; i < getLength(values); i++) {
+            if (isLive(values[i])) {
+                denseValues[(int) (keys[i] - denseBase)] = values[i];
+            }
+        }
+        for (int i = 0; i < getLength(reserveValues); i++) {
+            if (reserveValues[i] != null) {
+                denseValues[(int) (reserveKeys[i] - denseBase)] = reserveValues[i];
+            }
+        }
+        keys = null;
+        values = null;
+        tombstones = 0;
+        clearReserve();
+        removalsSinceResize = 0;
+        recordResize(start);
+        return true;
+    }
+
+    /**
+     * Extends the dense array to the key, at least doubling it towards the key.
+     *
+     * @return <tt>false</tt> if the extended range would be sparse
+     * (over {@value LongMapImpl#SPARSE_MIN_SLOTS_PER_MAPPING} slots per mapping) or too long.
+     */
+    private boolean growDense(long key) {
+        long last = denseBase + (denseValues.length - 1);
+        long min = Math.min(denseBase, key);
+        long max = Math.max(last, key);
+        long span = max - min + 1;
+        if (span <= 0 || span > MAX_CAPACITY || span > (long) SPARSE_MIN_SLOTS_PER_MAPPING * (size + 1)) {
+            return false;
+        }
+        int length = (int) Math.min(MAX_CAPACITY, Math.max(span, 2L * denseValues.length));
+        relocateDense(getDenseBase(min, max, length, key < denseBase), length);
+        return true;
+    }
+
+    /**
+     * Shrinks the dense array to the range of its keys, or returns to hashing if the keys are sparse.
+     */
+    private void compactDense() {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < denseValues.length; i++) {
+            if (denseValues[i] != null) {
+                min = Math.min(min, denseBase + i);
+                max = Math.max(max, denseBase + i);
+            }
+        }
+        long span = max - min + 1;
+        if (span > (long) DENSE_MAX_SLOTS_PER_MAPPING * size) {
+            toHashed();
+        } else if (span < denseValues.length) {
+            relocateDense(min, (int) span);
+        }
+    }
+
+    private void relocateDense(long base, int length) {
+        long start = System.nanoTime();
+        Object[] oldDenseValues = denseValues;
+        long oldDenseBase = denseBase;
+        denseValues = new Object[length];
+        denseBase = base;
+        for (int i = 0; i < oldDenseValues.length; i++) {
+            if (oldDenseValues[i] != null) {
+                denseValues[(int) (oldDenseBase + i - base)] = oldDenseValues[i];
+            }
+        }
+        removalsSinceResize = 0;
+        recordResize(start);
+    }
+
+    /**
+     * Returns the dense map to hashing: rehashes the mappings into a table for the current size.
+     */
+    private void toHashed() {
+        long start = System.nanoTime();
+        Object[] oldDenseValues = denseValues;
+        long oldDenseBase = denseBase;
+        denseValues = null;
+        capacity = Math.max(minCapacity, getCapacityFor(size + 1L));
+        initTable();
+        for (int i = 0; i < oldDenseValues.length; i++) {
+            if (oldDenseValues[i] != null) {
+                putToTable(oldDenseBase + i, oldDenseValues[i]);
+            }
+        }
+        removalsSinceResize = 0;
+        recordResize(start);
+        if (reserveSize > Math.max(10, size / 10)) {
+            changeTableSize(true);
+        }
+    }
+
+    /**
+     * Returns the length of a new dense array for the range of keys, with a half of it to grow.
+     */
+    private static int getDenseLength(long span) {
+        return (int) Math.min(MAX_CAPACITY, span + (span >> 1));
+    }
+
+    /**
+     * Places the array of the specified length over the range [min, max], leaving the free slots
+     * below the range if it grows down, and above otherwise. The array never wraps around
+     * the ends of the long range, so an offset in the array is a unique key.
+     */
+    private static long getDenseBase(long min, long max, int length, boolean down) {
+        if (down) {
+            long base = max - (length - 1);
+            return (base <= min) ? base : Long.MIN_VALUE;
+        }
+        long last = min + (length - 1);
+        return (last >= max) ? min : Long.MAX_VALUE - (length - 1);
+    }
+
+    private V putNewPair(long key, V value) {
+        initTable();
+        int probe = probe(key);
+        if (probe >= 0) {
+            values[probe] = value;
+            return value;
+        }
+
+        int reserveIndex = getReserveIndex(key);
+        if (reserveIndex != -1) {
+            reserveValues[reserveIndex] = value;
+        } else if (isMigrating() && replaceInOldGeneration(key, value)) {
+            return value;
+        } else if (probe < -1) {
+            int index = -2 - probe;
+            if (values[index] == DELETED) {
+                tombstones--;
+            }
+            keys[index] = key;
+            values[index] = value;
+            size++;
+        } else {
+            putToReserve(key, value);
+            size++;
+            if (!isMigrating() && reserveSize > Math.max(10, size / 10)) {
+                changeTableSize(true);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Probes the table for the key, writing nothing. The writes (put, compute, merge, ...)
+     * use the result to write without probing again.
+     *
+     * @return the slot of the key if it is in the table, or -2 - the slot where the key
+     * may be inserted, or -1 if the key is not in the table and there is no slot for it.
+     */
+    private int probe(long key) {
+        if (values == null) {
+            return -1;
+        }
+        int indexForInsert = -1;
+        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
+            int index = calculateIndex(key, i, capacity);
+            Object current = values[index];
+            if (current == null) {
+                if (indexForInsert == -1) {
+                    indexForInsert = index;
+                }
+                recordProbes(i + 1);
+                return -2 - indexForInsert;
+            }
+            if (current == DELETED) {
+                if (indexForInsert == -1) {
+                    indexForInsert = index;
+                }
+            } else if (keys[index] == key) {
+                recordProbes(i + 1);
+                return index;
+            }
+        }
+        recordProbes(DEFAULT_MAX_LOOP);
+        return -2 - indexForInsert;
+    }
+
+    @Nullable
+    private V getProbed(int probe, int reserveIndex) {
+        if (probe >= 0) {
+            return (V) values[probe];
+        }
+        return (reserveIndex != -1) ? (V) reserveValues[reserveIndex] : null;
+    }
+
+    /**
+     * Sets the value of the probed key, removes its mapping if the value is {@code null}.
+     */
+    @Nullable
+    private V update(int probe, int reserveIndex, long key, @Nullable V value) {
+        if (probe >= 0) {
+            if (value != null) {
+                values[probe] = value;
+            } else {
+                removeEntry(values, probe);
+                trim();
+            }
+        } else if (reserveIndex != -1) {
+            if (value != null) {
+                reserveValues[reserveIndex] = value;
+            } else {
+                removeReserveEntry(reserveIndex);
+                trim();
+            }
+        } else if (value != null) {
+            return insert(probe, key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Inserts the probed key, which is neither in the table nor in the reserve.
+     */
+    @Nullable
+    private V insert(int probe, long key, V value) {
+        if (values == null || (double) (size + 1) / capacity > topLoadFactor) {
+            //the table is created or resized, so the probed slot is useless
+            return put(key, value);
+        }
+        if (probe < -1) {
+            int index = -2 - probe;
+            if (values[index] == DELETED) {
+                tombstones--;
+            }
+            keys[index] = key;
+            values[index] = value;
+            size++;
+        } else {
+            putToReserve(key, value);
+            size++;
+            if (reserveSize > Math.max(10, size / 10)) {
+                changeTableSize(true);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Resizes the table once for the mappings of the batch (the keys which are not mapped),
+     * or makes the map dense if the keys allow.
+     */
+    private void presizeFor(long[] batch) {
+        long expectedSize = (long) size + batch.length;
+        if (expectedSize <= capacity * topLoadFactor) {
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long key : batch) {
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+        if (!toDense(min, max, expectedSize)) {
+            int required = getCapacityFor(expectedSize);
+            if (values == null) {
+                capacity = Math.max(capacity, required);
+            } else if (required > capacity) {
+                resize(required, false);
+            }
+        }
+    }
+
+    /**
+     * Allocates the table for the expected number of mappings of an empty map.
+     */
+    private void presize(long expectedSize) {
+        capacity = Math.max(capacity, getCapacityFor(expectedSize));
+        initTable();
+    }
+
+    /**
+     * Returns the smallest capacity of the table which holds the expected number of mappings
+     * under the top load factor.
+     */
+    private int getCapacityFor(long expectedSize) {
+        int result = DEFAULT_CAPACITY;
+        while (result <= MAX_CAPACITY / 2 && expectedSize > result * topLoadFactor) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    private void initTable() {
+        if (values == null) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    @Nullable
+    private V removeFromTable(long key) {
+        int index = getKeyIndex(key, keys, values);
+        if (index != -1) {
+            return removeEntry(values, index);
+        }
+        V value = removeInReserve(key);
+        if (value == null && isMigrating()) {
+            value = removeInOldGeneration(key);
+        }
+        return value;
+    }
+
+    private V removeEntry(Object[] table, int index) {
+        V value = (V) table[index];
+        table[index] = DELETED;
+        if (table == values) {
+            tombstones++;
+        }
+        size--;
+        removalsSinceResize++;
+        return value;
+    }
+
+    /**
+     * Halves the table (or makes the map dense) if its load is below the bottom load factor,
+     * compacts a dense array which is a quarter full. The table is kept when the map
+     * becomes empty, so a map oscillating between empty and a few mappings does not reallocate it,
+     * and it is not shrunk until the removals since the last resize are a bottom load factor
+     * of its capacity: a table doubled early for the reserve (at a low load) is not halved right away.
+     */
+    private void trim() {
+        if (isDense()) {
+            if (size == 0) {
+                clear();
+            } else if ((long) size * SPARSE_MIN_SLOTS_PER_MAPPING < denseValues.length) {
+                compactDense();
+            }
+        } else if ((double) size / capacity < bottomLoadFactor && removalsSinceResize >= capacity * bottomLoadFactor
+                && capacity >= minCapacity * 2 && !toDense(Long.MAX_VALUE, Long.MIN_VALUE, size)) {
+            changeTableSize(false);
+        }
+    }
+
+    private void changeTableSize(boolean increase) {
+        finishMigration();
+        if ((increase && capacity <= MAX_CAPACITY / 2)
+                || (!increase && capacity >= minCapacity * 2)) {
+            resize((increase) ? (capacity << 1) : (capacity >> 1), incrementalResize);
+        }
+    }
+
+    private void resize(int newCapacity, boolean incremental) {
+        capacity = newCapacity;
+        removalsSinceResize = 0;
+        long start = System.nanoTime();
+        if (incremental && values != null) {
+            startMigration();
+            recordResize(start);
+        } else {
+            rehash();
+            recordResize(start);
+            if (reserveSize > Math.max(10, size / 10)) {
+                changeTableSize(true);
+            }
+        }
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] oldReserveKeys = reserveKeys;
+        Object[] oldReserveValues = reserveValues;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        tombstones = 0;
+        clearReserve();
+        putAllToTable(oldKeys, oldValues);
+        putAllToTable(oldReserveKeys, oldReserveValues);
+    }
+
+    private void putAllToTable(long[] keys, @Nullable Object[] values) {
+        for (int i = 0; i < getLength(values); i++) {
+            if (isLive(values[i])) {
+                putToTable(keys[i], values[i]);
+            }
+        }
+    }
+
+    private boolean isMigrating() {
+        return oldValues != null;
+    }
+
+    /**
+     * Turns the current table and reserve into the old generation and allocates empty ones.
+     */
+    private void startMigration() {
+        oldKeys = keys;
+        oldValues = values;
+        oldReserveKeys = reserveKeys;
+        oldReserveValues = reserveValues;
+        migrationIndex = 0;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        tombstones = 0;
+        clearReserve();
+    }
+
+    private void migrate() {
+        if (isMigrating()) {
+            migrate(DEFAULT_MIGRATION_STEP);
+            if (!isMigrating() && reserveSize > Math.max(10, size / 10)) {
+                changeTableSize(true);
+            }
+        }
+    }
+
+    private void finishMigration() {
+        if (isMigrating()) {
+            migrate(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Moves the mappings of up to the specified number of slots from the old generation
+     * to the current table. Moved slots are marked as deleted, so that probing of the old
+     * table and reserve is not broken for keys which are still there, while free slots stay
+     * free, so that the searches in the old reserve still end at a free slot.
+     */
+    private void migrate(int slots) {
+        int end = (int) Math.min((long) migrationIndex + slots, (long) oldValues.length + getLength(oldReserveValues));
+        for (; migrationIndex < end; migrationIndex++) {
+            boolean inTable = migrationIndex < oldValues.length;
+            int index = inTable ? migrationIndex : migrationIndex - oldValues.length;
+            long[] generationKeys = inTable ? oldKeys : oldReserveKeys;
+            Object[] generationValues = inTable ? oldValues : oldReserveValues;
+            Object current = generationValues[index];
+            if (isLive(current)) {
+                generationValues[index] = DELETED;
+                putToTable(generationKeys[index], current);
+            }
+        }
+        if (migrationIndex == oldValues.length + getLength(oldReserveValues)) {
+            clearOldGeneration();
+        }
+    }
+
+    private boolean replaceInOldGeneration(long key, Object value) {
+        int index = getKeyIndex(key, oldKeys, oldValues);
+        if (index != -1) {
+            oldValues[index] = value;
+            return true;
+        }
+        index = getOldReserveIndex(key);
+        if (index != -1) {
+            oldReserveValues[index] = value;
+            return true;
+        }
+        return false;
+    }
+
+    @Nullable
+    private V removeInOldGeneration(long key) {
+        int index = getKeyIndex(key, oldKeys, oldValues);
+        if (index != -1) {
+            return removeEntry(oldValues, index);
+        }
+        index = getOldReserveIndex(key);
+        if (index != -1) {
+            return removeEntry(oldReserveValues, index);
+        }
+        return null;
+    }
+
+    private int getOldReserveIndex(long key) {
+        return getReserveIndex(key, oldReserveKeys, oldReserveValues);
+    }
+
+    private void clearOldGeneration() {
+        oldKeys = null;
+        oldValues = null;
+        oldReserveKeys = null;
+        oldReserveValues = null;
+        migrationIndex = 0;
+    }
+
+    private int getKeyIndex(long key, long[] keys, @Nullable Object[] values) {
+        if (values == null) {
+            return -1;
+        }
+        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
+            int index = calculateIndex(key, i, values.length);
+            Object current = values[index];
+            if (current != null) {
+                if (current != DELETED && keys[index] == key) {
+                    recordProbes(i + 1);
+                    return index;
+                }
+            } else {
+                recordProbes(i + 1);
+                return -1;
+            }
+        }
+        recordProbes(DEFAULT_MAX_LOOP);
+        return -1;
+    }
+
+    private void recordProbes(int probes) {
+        if (statsRecorder != null) {
+            statsRecorder.recordProbes(probes);
+        }
+    }
+
+    private void recordResize(long start) {
+        if (statsRecorder != null) {
+            statsRecorder.recordResize(System.nanoTime() - start);
+        }
+    }
+
+    private int calculateIndex(long key, int i, int capacity) {
+        int hash = getHash(key);
+        int h1 = hash % capacity;
+        int h2 = 1 + (hash % (capacity - 1));
+        return (int) ((h1 + (long) i * h2) % capacity);
+    }
+
+    private int getHash(long key) {
+        return (int) (key ^ (key >>> 32)) & Integer.MAX_VALUE;
+    }
+
+    private void putToTable(long key, Object value) {
+        for (int i = 0; i < DEFAULT_MAX_LOOP; i++) {
+            int index = calculateIndex(key, i, capacity);
+            if (values[index] == null) {
+                keys[index] = key;
+                values[index] = value;
+                return;
+            }
+        }
+        putToReserve(key, value);
+    }
+
+    private static boolean isLive(Object value) {
+        return value != null && value != DELETED;
+    }
+
+    private static boolean containsValue(@Nullable Object[] values, int length, Object value) {
+        for (int i = 0; i < length; i++) {
+            if (isLive(values[i]) && value.equals(values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <V> void forEach(long[] keys, Object[] values, int length, LongObjConsumer<? super V> action) {
+        for (int i = 0; i < length; i++) {
+            if (isLive(values[i])) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    private static int getLength(@Nullable Object[] values) {
+        return (values == null) ? 0 : values.length;
+    }
+
+    private static int copyKeys(long[] keys, Object[] values, int length, long[] result, int position) {
+        for (int i = 0; i < length; i++) {
+            if (isLive(values[i])) {
+                result[position++] = keys[i];
+            }
+        }
+        return position;
+    }
+
+    private static int copyValues(Object[] values, int length, Object[] result, int position) {
+        for (int i = 0; i < length; i++) {
+            if (isLive(values[i])) {
+                result[position++] = values[i];
+            }
+        }
+        return position;
+    }
+
+    @Nullable
+    private static Class<?> getValuesClass(Object[] values, int length, @Nullable Class<?> valuesClass) {
+        for (int i = 0; i < length; i++) {
+            if (isLive(values[i])) {
+                valuesClass = LongMaps.getCommonClass(valuesClass, values[i]);
+            }
+        }
+        return valuesClass;
+    }
+
+    private static long getArraysBytes(@Nullable long[] keys, @Nullable Object[] values) {
+        return LongMaps.getArrayBytes(keys == null ? -1 : keys.length, Long.BYTES)
+                + LongMaps.getArrayBytes(values == null ? -1 : values.length, LongMaps.REFERENCE_BYTES);
+    }
+
+    private void putToReserve(long key, Object value) {
+        if (reserveValues == null) {
+            reserveKeys = new long[DEFAULT_RESERVE_CAPACITY];
+            reserveValues = new Object[DEFAULT_RESERVE_CAPACITY];
+        } else if ((reserveSize + 1) * 2 > reserveValues.length) {
+            resizeReserve(reserveValues.length << 1);
+        }
+        insertToReserve(key, value);
+        reserveSize++;
+        reserveInserts++;
+    }
+
+    private void insertToReserve(long key, Object value) {
+        int mask = reserveValues.length - 1;
+        int index = getReserveHome(key, mask);
+        while (reserveValues[index] != null) {
+            index = (index + 1) & mask;
+        }
+        reserveKeys[index] = key;
+        reserveValues[index] = value;
+    }
+
+    private void resizeReserve(int newCapacity) {
+        long[] oldKeys = reserveKeys;
+        Object[] oldValues = reserveValues;
+        reserveKeys = new long[newCapacity];
+        reserveValues = new Object[newCapacity];
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                insertToReserve(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private int getReserveIndex(long key) {
+        if (reserveSize == 0) {
+            return -1;
+        }
+        reserveLookups++;
+        int index = getReserveIndex(key, reserveKeys, reserveValues);
+        if (index != -1) {
+            reserveHits++;
+        }
+        return index;
+    }
+
+    /**
+     * Searches the key in a reserve. The reserve is at most half full, so the search ends
+     * at a free slot within a few probes; a reserve of the old generation may have deleted slots.
+     */
+    private static int getReserveIndex(long key, @Nullable long[] keys, @Nullable Object[] values) {
+        if (values == null) {
+            return -1;
+        }
+        int mask = values.length - 1;
+        for (int index = getReserveHome(key, mask); values[index] != null; index = (index + 1) & mask) {
+            if (values[index] != DELETED && keys[index] == key) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static int getReserveHome(long key, int mask) {
+        //keys which collide in the table are spread by another hash
+        return (int) LongMaps.mix(key) & mask;
+    }
+
+    private boolean replaceInReserve(long key, V value) {
+        int index = getReserveIndex(key);
+        if (index == -1) {
+            return false;
+        }
+        reserveValues[index] = value;
+        return true;
+    }
+
+    @Nullable
+    private V getFromReserve(long key) {
+        int index = getReserveIndex(key);
+        if (index != -1) {
+            return (V) reserveValues[index];
+        }
+        return null;
+    }
+
+    @Nullable
+    private V removeInReserve(long key) {
+        int index = getReserveIndex(key);
+        if (index == -1) {
+            return null;
+        }
+        V value = (V) reserveValues[index];
+        removeReserveEntry(index);
+        return value;
+    }
+
+    /**
+     * Removes the entry of the reserve and shifts back the following entries which may fill its slot,
+     * so the reserve has no deleted slots.
+     */
+    private void removeReserveEntry(int free) {
+        int mask = reserveValues.length - 1;
+        int index = free;
+        while (true) {
+            index = (index + 1) & mask;
+            if (reserveValues[index] == null) {
+                break;
+            }
+            int home = getReserveHome(reserveKeys[index], mask);
+            //the entry may fill the free slot if its home is not in (free, index]
+            if (((index - home) & mask) >= ((index - free) & mask)) {
+                reserveKeys[free] = reserveKeys[index];
+                reserveValues[free] = reserveValues[index];
+                free = index;
+            }
+        }
+        reserveValues[free] = null;
+        reserveSize--;
+        size--;
+        removalsSinceResize++;
+    }
+
+    private void clearReserve() {
+        reserveKeys = null;
+        reserveValues = null;
+        reserveSize = 0;
+    }
+
+    /**
+     * The probe sequences of a batch of keys (the same as of {@link #getKeyIndex(long, long[], Object[])}),
+     * advanced together: a round loads the current slots of all pending keys before any of them
+     * is resolved, so the loads do not wait for one another. A key is decided by its slot if the slot
+     * is free or holds the key; the caller resolves it (reading the slot again, as the batch
+     * may have changed it), or keeps it pending for the next slot of its sequence.
+     */
+    private final class BatchProbe {
+
+        private final int[] offsets = new int[BATCH_SIZE];     // the offsets of the pending keys in the batch
+        private final int[] slots = new int[BATCH_SIZE];
+        private final int[] steps = new int[BATCH_SIZE];
+        private int size;                                       // the number of pending keys
+        private int round;                                      // the number of the slots probed by every key
+        private long decided;                                   // a bit for every decided pending key
+        private int length;
+
+        void start(long[] batch, int start, int batchSize) {
+            length = values.length;
+            for (int p = 0; p < batchSize; p++) {
+                int hash = getHash(batch[start + p]);
+                offsets[p] = start + p;
+                slots[p] = hash % length;
+                steps[p] = 1 + (hash % (length - 1));
+            }
+            size = batchSize;
+            round = 0;
+        }
+
+        /**
+         * Loads the slots of the pending keys.
+         *
+         * @return <tt>false</tt> if no key is pending, or the keys have been probed the maximum times.
+         */
+        boolean nextRound(long[] batch) {
+            if (size == 0 || round == DEFAULT_MAX_LOOP) {
+                return false;
+            }
+            round++;
+            long result = 0;
+            for (int p = 0; p < size; p++) {
+                Object current = values[slots[p]];
+                boolean isDecided = current == null || (current != DELETED && keys[slots[p]] == batch[offsets[p]]);
+                result |= (isDecided ? 1L : 0L) << p;
+            }
+            decided = result;
+            return true;
+        }
+
+        boolean isDecided(int p) {
+            return (decided & (1L << p)) != 0;
+        }
+
+        /**
+         * Moves the pending key to the position (not after its own) and advances it to its next slot.
+         */
+        void keep(int position, int p) {
+            offsets[position] = offsets[p];
+            slots[position] = (slots[p] + steps[p]) % length;
+            steps[position] = steps[p];
+        }
+    }
+
+    /**
+     * Walks the dense array, or the table, then the reserve once round from a free slot. A removal from the reserve
+     * shifts back only entries which are not visited yet, so the cursor just looks at the slot
+     * of the removed entry once more. During an incremental resize the slots of the old table and reserve
+     * which are not migrated yet are walked last; the cursor does not migrate, so no mapping moves
+     * between the generations during the walk.
+     */
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int index = -1;             // the current slot of the table
+        private int reserveStart = -1;      // the free slot the walk of the reserve starts after
+        private int reserveOffset;          // of the current slot of the reserve from the start
+        private int oldIndex = -1;          // the current slot of the old generation, as migrationIndex
+
+        boolean findNext() {
+            if (isDense()) {
+                while (++index < denseValues.length) {
+                    if (denseValues[index] != null) {
+                        setCurrent(denseBase + index, denseValues[index]);
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (values != null) {
+                while (++index < capacity) {
+                    if (isLive(values[index])) {
+                        setCurrent(keys[index], values[index]);
+                        return true;
+                    }
+                }
+            }
+            if (reserveValues != null) {
+                if (reserveStart == -1) {
+                    reserveStart = 0;
+                    while (reserveValues[reserveStart] != null) {
+                        reserveStart++;
+                    }
+                }
+                while (++reserveOffset < reserveValues.length) {
+                    int reserveIndex = getReserveSlot();
+                    if (reserveValues[reserveIndex] != null) {
+                        setCurrent(reserveKeys[reserveIndex], reserveValues[reserveIndex]);
+                        return true;
+                    }
+                }
+            }
+            if (isMigrating()) {
+                if (oldIndex == -1) {
+                    oldIndex = migrationIndex - 1;      //the slots before are migrated already
+                }
+                while (++oldIndex < oldValues.length + getLength(oldReserveValues)) {
+                    int slot = getOldSlot();
+                    Object[] generationValues = getOldGenerationValues();
+                    if (isLive(generationValues[slot])) {
+                        long[] generationKeys = (oldIndex < oldValues.length) ? oldKeys : oldReserveKeys;
+                        setCurrent(generationKeys[slot], generationValues[slot]);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            if (isDense()) {
+                removeDenseEntry(index);
+            } else if (oldIndex != -1) {
+                removeEntry(getOldGenerationValues(), getOldSlot());
+            } else if (index < capacity) {
+                removeEntry(values, index);
+            } else {
+                removeReserveEntry(getReserveSlot());
+                reserveOffset--;
+            }
+        }
+
+        void afterRemovals() {
+            trim();
+        }
+
+        private int getReserveSlot() {
+            return (reserveStart + reserveOffset) & (reserveValues.length - 1);
+        }
+
+        private int getOldSlot() {
+            return (oldIndex < oldValues.length) ? oldIndex : oldIndex - oldValues.length;
+        }
+
+        private Object[] getOldGenerationValues() {
+            return (oldIndex < oldValues.length) ? oldValues : oldReserveValues;
+        }
+    }
+
+    /**
+     * Walks a range of the slots of the table followed by the reserve, reading the arrays directly.
+     */
+    private static final class TableSpliterator<V> implements LongMapSpliterator<V> {
+
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] reserveKeys;
+        private final Object[] reserveValues;
+        private final int tableLength;
+        private final double mappingsPerSlot;
+        private final int fence;
+        private int index;
+
+        private TableSpliterator(long[] keys, Object[] values, long[] reserveKeys, Object[] reserveValues,
+                                 int index, int fence, int size) {
+            this(keys, values, reserveKeys, reserveValues, index, fence,
+                    (fence == 0) ? 0 : (double) size / fence);
+        }
+
+        private TableSpliterator(long[] keys, Object[] values, long[] reserveKeys, Object[] reserveValues,
+                                 int index, int fence, double mappingsPerSlot) {
+            this.keys = keys;
+            this.values = values;
+            this.reserveKeys = reserveKeys;
+            this.reserveValues = reserveValues;
+            this.tableLength = getLength(values);
+            this.index = index;
+            this.fence = fence;
+            this.mappingsPerSlot = mappingsPerSlot;
+        }
+
+        public boolean tryAdvance(LongObjConsumer<? super V> action) {
+            while (index < fence) {
+                int slot = index++;
+                if (slot < tableLength) {
+                    if (isLive(values[slot])) {
+                        action.accept(keys[slot], (V) values[slot]);
+                        return true;
+                    }
+                } else if (reserveValues[slot - tableLength] != null) {
+                    action.accept(reserveKeys[slot - tableLength], (V) reserveValues[slot - tableLength]);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongObjConsumer<? super V> action) {
+            int tableFence = Math.min(fence, tableLength);
+            for (int slot = index; slot < tableFence; slot++) {
+                if (isLive(values[slot])) {
+                    action.accept(keys[slot], (V) values[slot]);
+                }
+            }
+            for (int slot = Math.max(index, tableLength); slot < fence; slot++) {
+                if (reserveValues[slot - tableLength] != null) {
+                    action.accept(reserveKeys[slot - tableLength], (V) reserveValues[slot - tableLength]);
+                }
+            }
+            index = fence;
+        }
+
+        @Nullable
+        public LongMapSpliterator<V> trySplit() {
+            int middle = (index + fence) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            TableSpliterator<V> prefix = new TableSpliterator<>(keys, values, reserveKeys, reserveValues,
+                    index, middle, mappingsPerSlot);
+            index = middle;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return (long) Math.ceil((fence - index) * mappingsPerSlot);
+        }
+    }
+
+    /**
+     * Walks a range of the slots of the dense array, the key of a slot is its offset from the base.
+     */
+    private static final class DenseSpliterator<V> implements LongMapSpliterator<V> {
+
+        private final Object[] values;
+        private final long base;
+        private final double mappingsPerSlot;
+        private final int fence;
+        private int index;
+
+        private DenseSpliterator(Object[] values, long base, int index, int fence, int size) {
+            this(values, base, index, fence, (fence == 0) ? 0 : (double) size / fence);
+        }
+
+        private DenseSpliterator(Object[] values, long base, int index, int fence, double mappingsPerSlot) {
+            this.values = values;
+            this.base = base;
+            this.index = index;
+            this.fence = fence;
+            this.mappingsPerSlot = mappingsPerSlot;
+        }
+
+        public boolean tryAdvance(LongObjConsumer<? super V> action) {
+            while (index < fence) {
+                int slot = index++;
+                if (values[slot] != null) {
+                    action.accept(base + slot, (V) values[slot]);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongObjConsumer<? super V> action) {
+            for (int slot = index; slot < fence; slot++) {
+                if (values[slot] != null) {
+                    action.accept(base + slot, (V) values[slot]);
+                }
+            }
+            index = fence;
+        }
+
+        @Nullable
+        public LongMapSpliterator<V> trySplit() {
+            int middle = (index + fence) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            DenseSpliterator<V> prefix = new DenseSpliterator<>(values, base, index, middle, mappingsPerSlot);
+            index = middle;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return (long) Math.ceil((fence - index) * mappingsPerSlot);
         }
-        return Stream.iterate(reserve, r -> r.next).limit(reserveSize);
     }
 }
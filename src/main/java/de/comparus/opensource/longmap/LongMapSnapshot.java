@@ -0,0 +1,261 @@
+package de.comparus.opensource.longmap;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.function.LongFunction;
+import java.util.zip.CRC32;
+
+/**
+ * The binary snapshot format of a long map.
+ * <p>
+ * The header (magic, version, flags, number of mappings and the CRC32 of these fields) is followed
+ * by chunks of up to {@value LongMapSnapshot#CHUNK_BYTES} bytes of mappings, each one with the number
+ * of its mappings, its length and the CRC32 of these two fields and the mappings, and the snapshot
+ * ends with an empty chunk.
+ * A mapping is the key (8 bytes, or with {@link #FLAG_DELTA_KEYS} the unsigned varint of its
+ * difference to the previous key of the ascending order) followed by the varint length of the
+ * encoded value and the value. All numbers are big-endian.
+ * <p>
+ * Chunks are built in a direct buffer and passed to the channel whole, so a file channel writes
+ * and reads them without copying.
+ */
+final class LongMapSnapshot {
+
+    static final int MAGIC = 0x4c4d534e;                // "LMSN"
+    static final int VERSION = 2;                   // 2: the checksum of a chunk covers its header
+    static final int FLAG_DELTA_KEYS = 1;
+    static final int HEADER_BYTES = 24;
+    static final int CHUNK_HEADER_BYTES = 8;            // the number of mappings and the length of the chunk
+    static final int CHUNK_BYTES = 1 << 20;
+
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private LongMapSnapshot() {
+    }
+
+    /**
+     * Writes all mappings of the map to the channel.
+     *
+     * @param sortedKeys <tt>true</tt> to write the keys in ascending order as deltas, which takes
+     *                   an array of all keys and a lookup of every value,
+     *                   <tt>false</tt> to write the mappings in the order of the cursor.
+     */
+    static <V> void write(LongMap<V> map, WritableByteChannel channel, ValueCodec<V> codec, boolean sortedKeys)
+            throws IOException {
+        if (!sortedKeys) {
+            write(map.size(), map.cursor(), channel, codec);
+            return;
+        }
+        writeHeader(channel, FLAG_DELTA_KEYS, map.size());
+        ChunkWriter<V> writer = new ChunkWriter<>(channel, codec, true);
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        for (long key : keys) {
+            writer.write(key, map.get(key));
+        }
+        writer.finish();
+    }
+
+    /**
+     * Writes the mappings of the cursor to the channel, in the order of the cursor.
+     *
+     * @param size the number of mappings the cursor walks.
+     */
+    static <V> void write(long size, LongMapCursor<V> cursor, WritableByteChannel channel, ValueCodec<V> codec)
+            throws IOException {
+        writeHeader(channel, 0, size);
+        ChunkWriter<V> writer = new ChunkWriter<>(channel, codec, false);
+        while (cursor.advance()) {
+            writer.write(cursor.key(), cursor.value());
+        }
+        writer.finish();
+    }
+
+    /**
+     * Reads a snapshot into a new map.
+     *
+     * @param mapFactory creates the map for the number of mappings of the snapshot.
+     * @throws IOException if the channel fails or the snapshot is damaged.
+     */
+    static <V, M extends LongMap<V>> M read(ReadableByteChannel channel, ValueCodec<V> codec,
+                                            LongFunction<M> mapFactory) throws IOException {
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_BYTES);
+        readFully(channel, header);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("not a long map snapshot");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("unsupported snapshot version " + header.getInt(4));
+        }
+        if (header.getInt(HEADER_BYTES - 4) != getChecksum(header, 0, HEADER_BYTES - 4)) {
+            throw new IOException("damaged snapshot header");
+        }
+        boolean deltaKeys = (header.getInt(8) & FLAG_DELTA_KEYS) != 0;
+        long size = header.getLong(12);
+
+        M map = mapFactory.apply(size);
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        long key = 0;
+        long read = 0;
+        while (true) {
+            chunk.clear().limit(CHUNK_HEADER_BYTES);
+            readFully(channel, chunk);
+            int count = chunk.getInt(0);
+            int length = chunk.getInt(4);
+            if (count < 0 || length < 0 || length > CHUNK_BYTES - CHUNK_HEADER_BYTES - Integer.BYTES) {
+                throw new IOException("damaged snapshot chunk");
+            }
+            int end = CHUNK_HEADER_BYTES + length;
+            chunk.limit(end + Integer.BYTES).position(CHUNK_HEADER_BYTES);
+            readFully(channel, chunk);
+            if (chunk.getInt(end) != getChecksum(chunk, 0, end)) {
+                throw new IOException("damaged snapshot chunk");
+            }
+            if (count == 0) {
+                break;
+            }
+            chunk.limit(end).position(CHUNK_HEADER_BYTES);
+            try {
+                for (int i = 0; i < count; i++) {
+                    key = deltaKeys ? key + readVarLong(chunk) : chunk.getLong();
+                    int valueLength = (int) readVarLong(chunk);
+                    int valueEnd = chunk.position() + valueLength;
+                    if (valueLength < 0 || valueEnd > end) {
+                        throw new IOException("damaged snapshot chunk");
+                    }
+                    chunk.limit(valueEnd);
+                    map.put(key, codec.decode(chunk));
+                    chunk.limit(end).position(valueEnd);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("damaged snapshot chunk", e);
+            }
+            if (chunk.position() != end) {
+                throw new IOException("damaged snapshot chunk");
+            }
+            read += count;
+        }
+        if (read != size) {
+            throw new IOException("snapshot of " + size + " mappings has " + read);
+        }
+        return map;
+    }
+
+    private static void writeHeader(WritableByteChannel channel, int flags, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(flags).putLong(size);
+        header.putInt(getChecksum(header, 0, header.position()));
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    private static int getChecksum(ByteBuffer buffer, int from, int to) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(to).position(from);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("damaged snapshot chunk");
+    }
+
+    /**
+     * Collects mappings in a chunk and writes it to the channel when it is full.
+     */
+    private static final class ChunkWriter<V> {
+
+        private final WritableByteChannel channel;
+        private final ValueCodec<V> codec;
+        private final boolean deltaKeys;
+        private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        private final ByteBuffer encoded;
+        private final int maxMappingBytes;
+        private int count;
+        private long previousKey;
+
+        private ChunkWriter(WritableByteChannel channel, ValueCodec<V> codec, boolean deltaKeys) {
+            this.channel = channel;
+            this.codec = codec;
+            this.deltaKeys = deltaKeys;
+            encoded = ByteBuffer.allocate(codec.maxSize());
+            maxMappingBytes = 2 * MAX_VARINT_BYTES + codec.maxSize();
+            if (CHUNK_HEADER_BYTES + maxMappingBytes + Integer.BYTES > CHUNK_BYTES) {
+                throw new IllegalArgumentException("value size = " + codec.maxSize() + " does not fit a chunk");
+            }
+            chunk.position(CHUNK_HEADER_BYTES);
+        }
+
+        private void write(long key, V value) throws IOException {
+            if (chunk.remaining() < maxMappingBytes + Integer.BYTES) {
+                flush();
+            }
+            encoded.clear();
+            codec.encode(value, encoded);
+            encoded.flip();
+            if (deltaKeys) {
+                writeVarLong(chunk, key - previousKey);
+                previousKey = key;
+            } else {
+                chunk.putLong(key);
+            }
+            writeVarLong(chunk, encoded.remaining());
+            chunk.put(encoded);
+            count++;
+        }
+
+        private void finish() throws IOException {
+            if (count != 0) {
+                flush();
+            }
+            flush();        //the empty chunk which ends the snapshot
+        }
+
+        private void flush() throws IOException {
+            int length = chunk.position() - CHUNK_HEADER_BYTES;
+            chunk.putInt(0, count);
+            chunk.putInt(4, length);
+            chunk.putInt(getChecksum(chunk, 0, chunk.position()));
+            chunk.flip();
+            writeFully(channel, chunk);
+            chunk.clear().position(CHUNK_HEADER_BYTES);
+            count = 0;
+        }
+    }
+}
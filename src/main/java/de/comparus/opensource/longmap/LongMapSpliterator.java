@@ -0,0 +1,43 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+/**
+ * Splittable traversal of the mappings of a {@link LongMap}, the key-value counterpart of
+ * {@link java.util.Spliterator} which passes the key and the value to the action without boxing.
+ * The parallel bulk operations of {@link LongMap} split it to process the parts of the map
+ * in different threads. The map must not be changed during the traversal.
+ */
+public interface LongMapSpliterator<V> {
+
+    /**
+     * Performs the action for the next mapping, if there is one.
+     *
+     * @param action the action performed for the key and the value.
+     * @return <tt>false</tt> if there are no more mappings, or <tt>true</tt> otherwise.
+     */
+    boolean tryAdvance(LongObjConsumer<? super V> action);
+
+    /**
+     * Performs the action for all remaining mappings.
+     *
+     * @param action the action performed for every key and its value.
+     */
+    default void forEachRemaining(LongObjConsumer<? super V> action) {
+        while (tryAdvance(action)) {
+        }
+    }
+
+    /**
+     * Splits off a part of the remaining mappings into a new spliterator, which this one does not cover any more.
+     *
+     * @return the spliterator of the split off part, or {@code null} if this one can not be split.
+     */
+    @Nullable
+    LongMapSpliterator<V> trySplit();
+
+    /**
+     * @return the estimated number of the remaining mappings.
+     */
+    long estimateSize();
+}
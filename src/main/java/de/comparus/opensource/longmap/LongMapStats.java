@@ -0,0 +1,281 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * A snapshot of the statistics of a map, see {@link LongMapImpl#getStats()}.
+ * <p>
+ * The size, the capacity, the reserve, the tombstones and the memory are always known.
+ * The probe lengths and the resizes are counted only while the statistics of the map are enabled,
+ * otherwise they are zero.
+ */
+public final class LongMapStats {
+
+    private static final String DOMAIN = "de.comparus.opensource.longmap";
+
+    private final long size;
+    private final long capacity;
+    private final long reserveSize;
+    private final long tombstones;
+    private final long reserveLookups;
+    private final long reserveHits;
+    private final long reserveInserts;
+    private final long memoryUsage;
+    private final long[] probeLengthHistogram;
+    private final long resizes;
+    private final long resizeTimeNanos;
+    private final long maxResizeTimeNanos;
+
+    LongMapStats(long size, long capacity, long reserveSize, long tombstones,
+                 long reserveLookups, long reserveHits, long reserveInserts, long memoryUsage,
+                 int maxProbeLength, @Nullable LongMapStatsRecorder recorder) {
+        this.size = size;
+        this.capacity = capacity;
+        this.reserveSize = reserveSize;
+        this.tombstones = tombstones;
+        this.reserveLookups = reserveLookups;
+        this.reserveHits = reserveHits;
+        this.reserveInserts = reserveInserts;
+        this.memoryUsage = memoryUsage;
+        if (recorder != null) {
+            probeLengthHistogram = recorder.getProbeLengths();
+            resizes = recorder.getResizes();
+            resizeTimeNanos = recorder.getResizeNanos();
+            maxResizeTimeNanos = recorder.getMaxResizeNanos();
+        } else {
+            probeLengthHistogram = new long[maxProbeLength];
+            resizes = 0;
+            resizeTimeNanos = 0;
+            maxResizeTimeNanos = 0;
+        }
+    }
+
+    /**
+     * @return the number of mappings of the map.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots of the table.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of mappings kept in the reserve (the overflow of the table).
+     */
+    public long getReserveSize() {
+        return reserveSize;
+    }
+
+    /**
+     * @return the number of slots of the table marked as deleted, which lengthen the probes until a rehash.
+     */
+    public long getTombstones() {
+        return tombstones;
+    }
+
+    /**
+     * @return the share of the slots of the table marked as deleted.
+     */
+    public double getTombstoneRatio() {
+        return (capacity == 0) ? 0 : (double) tombstones / capacity;
+    }
+
+    /**
+     * @return the share of the slots of the table taken by mappings.
+     */
+    public double getLoadFactor() {
+        return (capacity == 0) ? 0 : (double) (size - reserveSize) / capacity;
+    }
+
+    /**
+     * @return the number of key lookups in the table counted while the statistics were enabled.
+     */
+    public long getLookups() {
+        long lookups = 0;
+        for (long count : probeLengthHistogram) {
+            lookups += count;
+        }
+        return lookups;
+    }
+
+    /**
+     * @return the mean number of slots read by a lookup in the table, or 0 if there were no lookups.
+     */
+    public double getMeanProbeLength() {
+        long lookups = 0;
+        long probes = 0;
+        for (int i = 0; i < probeLengthHistogram.length; i++) {
+            lookups += probeLengthHistogram[i];
+            probes += probeLengthHistogram[i] * (i + 1);
+        }
+        return (lookups == 0) ? 0 : (double) probes / lookups;
+    }
+
+    /**
+     * @return the number of lookups by the number of slots they have read:
+     * the element <tt>i</tt> counts the lookups of <tt>i + 1</tt> probes.
+     */
+    public long[] getProbeLengthHistogram() {
+        return probeLengthHistogram.clone();
+    }
+
+    /**
+     * @return the number of searches in the reserve.
+     */
+    public long getReserveLookups() {
+        return reserveLookups;
+    }
+
+    /**
+     * @return the number of searches in the reserve which have found the key.
+     */
+    public long getReserveHits() {
+        return reserveHits;
+    }
+
+    /**
+     * @return the number of mappings put into the reserve.
+     */
+    public long getReserveInserts() {
+        return reserveInserts;
+    }
+
+    /**
+     * @return the number of resizes of the table counted while the statistics were enabled.
+     */
+    public long getResizes() {
+        return resizes;
+    }
+
+    /**
+     * @return the total time of the resizes in nanoseconds (with incremental resize,
+     * the time of allocating the new table, the migration is spread over the following operations).
+     */
+    public long getResizeTimeNanos() {
+        return resizeTimeNanos;
+    }
+
+    /**
+     * @return the time of the longest resize in nanoseconds.
+     */
+    public long getMaxResizeTimeNanos() {
+        return maxResizeTimeNanos;
+    }
+
+    /**
+     * @return the estimated number of bytes taken by the structure of the map (not counting the values).
+     */
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    @Override
+    public String toString() {
+        return "LongMapStats{size=" + size + ", capacity=" + capacity + ", reserveSize=" + reserveSize
+                + ", tombstones=" + tombstones + ", meanProbeLength=" + getMeanProbeLength()
+                + ", probeLengthHistogram=" + Arrays.toString(probeLengthHistogram)
+                + ", reserveLookups=" + reserveLookups + ", reserveHits=" + reserveHits
+                + ", reserveInserts=" + reserveInserts + ", resizes=" + resizes
+                + ", resizeTimeNanos=" + resizeTimeNanos + ", maxResizeTimeNanos=" + maxResizeTimeNanos
+                + ", memoryUsage=" + memoryUsage + '}';
+    }
+
+    /**
+     * Registers an MXBean of the statistics in the platform MBean server,
+     * with the name {@code de.comparus.opensource.longmap:type=LongMap,name=<name>}.
+     *
+     * @param name  the name of the map.
+     * @param stats takes a snapshot of the statistics of the map, called for every read attribute.
+     * @return the name of the registered MXBean, to unregister it.
+     * @throws JMException if the name is invalid or already registered.
+     */
+    static ObjectName registerMBean(String name, Supplier<LongMapStats> stats) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=LongMap,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(stats), objectName);
+        return objectName;
+    }
+
+    private static final class MXBean implements LongMapStatsMXBean {
+
+        private final Supplier<LongMapStats> stats;
+
+        private MXBean(Supplier<LongMapStats> stats) {
+            this.stats = stats;
+        }
+
+        public long getSize() {
+            return stats.get().getSize();
+        }
+
+        public long getCapacity() {
+            return stats.get().getCapacity();
+        }
+
+        public long getReserveSize() {
+            return stats.get().getReserveSize();
+        }
+
+        public long getTombstones() {
+            return stats.get().getTombstones();
+        }
+
+        public double getTombstoneRatio() {
+            return stats.get().getTombstoneRatio();
+        }
+
+        public double getLoadFactor() {
+            return stats.get().getLoadFactor();
+        }
+
+        public long getLookups() {
+            return stats.get().getLookups();
+        }
+
+        public double getMeanProbeLength() {
+            return stats.get().getMeanProbeLength();
+        }
+
+        public long[] getProbeLengthHistogram() {
+            return stats.get().getProbeLengthHistogram();
+        }
+
+        public long getReserveLookups() {
+            return stats.get().getReserveLookups();
+        }
+
+        public long getReserveHits() {
+            return stats.get().getReserveHits();
+        }
+
+        public long getReserveInserts() {
+            return stats.get().getReserveInserts();
+        }
+
+        public long getResizes() {
+            return stats.get().getResizes();
+        }
+
+        public long getResizeTimeNanos() {
+            return stats.get().getResizeTimeNanos();
+        }
+
+        public long getMaxResizeTimeNanos() {
+            return stats.get().getMaxResizeTimeNanos();
+        }
+
+        public long getMemoryUsage() {
+            return stats.get().getMemoryUsage();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * The statistics of a map exposed through JMX, see {@link LongMapStats} for the meaning of the attributes.
+ * Every attribute is read from a fresh {@link LongMapStats} snapshot.
+ */
+public interface LongMapStatsMXBean {
+
+    long getSize();
+
+    long getCapacity();
+
+    long getReserveSize();
+
+    long getTombstones();
+
+    double getTombstoneRatio();
+
+    double getLoadFactor();
+
+    long getLookups();
+
+    double getMeanProbeLength();
+
+    long[] getProbeLengthHistogram();
+
+    long getReserveLookups();
+
+    long getReserveHits();
+
+    long getReserveInserts();
+
+    long getResizes();
+
+    long getResizeTimeNanos();
+
+    long getMaxResizeTimeNanos();
+
+    long getMemoryUsage();
+}
@@ -0,0 +1,44 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * The counters of an instrumented map: the histogram of probe lengths and the resizes.
+ * A map keeps a recorder only while its statistics are enabled, so a disabled map pays
+ * a {@code null} check per operation.
+ */
+final class LongMapStatsRecorder {
+
+    private final long[] probeLengths;      // the number of lookups by their probe length - 1
+    private long resizes;
+    private long resizeNanos;
+    private long maxResizeNanos;
+
+    LongMapStatsRecorder(int maxProbeLength) {
+        probeLengths = new long[maxProbeLength];
+    }
+
+    void recordProbes(int probes) {
+        probeLengths[probes - 1]++;
+    }
+
+    void recordResize(long nanos) {
+        resizes++;
+        resizeNanos += nanos;
+        maxResizeNanos = Math.max(maxResizeNanos, nanos);
+    }
+
+    long[] getProbeLengths() {
+        return probeLengths.clone();
+    }
+
+    long getResizes() {
+        return resizes;
+    }
+
+    long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    long getMaxResizeNanos() {
+        return maxResizeNanos;
+    }
+}
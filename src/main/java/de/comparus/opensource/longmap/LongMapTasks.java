@@ -0,0 +1,216 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * The parallel bulk operations of {@link LongMap}: fork-join tasks on the common pool which split
+ * the spliterator of the map until the parts are small enough and process the parts in parallel.
+ */
+final class LongMapTasks {
+
+    private static final int LEAVES_PER_THREAD = 4;
+
+    private LongMapTasks() {
+    }
+
+    static <V> void forEach(LongMapSpliterator<V> spliterator, LongObjConsumer<? super V> action) {
+        invoke(spliterator, new Operation<V, Void>() {
+            public Void computeLeaf(LongMapSpliterator<V> leaf) {
+                leaf.forEachRemaining(action);
+                return null;
+            }
+
+            public Void combine(Void left, Void right) {
+                return null;
+            }
+        });
+    }
+
+    static <V, U> U reduce(LongMapSpliterator<V> spliterator, U identity,
+                           LongObjFunction<? super V, ? extends U> mapper, BinaryOperator<U> combiner) {
+        return invoke(spliterator, new Operation<V, U>() {
+            public U computeLeaf(LongMapSpliterator<V> leaf) {
+                Reduction<V, U> reduction = new Reduction<>(identity, mapper, combiner);
+                leaf.forEachRemaining(reduction);
+                return reduction.result;
+            }
+
+            public U combine(U left, U right) {
+                return combiner.apply(left, right);
+            }
+        });
+    }
+
+    static <V> long reduceToLong(LongMapSpliterator<V> spliterator, long identity,
+                                 LongObjToLongFunction<? super V> mapper, LongBinaryOperator combiner) {
+        return invoke(spliterator, new Operation<V, Long>() {
+            public Long computeLeaf(LongMapSpliterator<V> leaf) {
+                LongReduction<V> reduction = new LongReduction<>(identity, mapper, combiner);
+                leaf.forEachRemaining(reduction);
+                return reduction.result;
+            }
+
+            public Long combine(Long left, Long right) {
+                return combiner.applyAsLong(left, right);
+            }
+        });
+    }
+
+    static <V> long[] filter(LongMapSpliterator<V> spliterator, LongObjPredicate<? super V> predicate) {
+        return invoke(spliterator, new Operation<V, long[]>() {
+            public long[] computeLeaf(LongMapSpliterator<V> leaf) {
+                Filter<V> filter = new Filter<>(predicate);
+                leaf.forEachRemaining(filter);
+                return Arrays.copyOf(filter.keys, filter.size);
+            }
+
+            public long[] combine(long[] left, long[] right) {
+                long[] keys = Arrays.copyOf(left, left.length + right.length);
+                System.arraycopy(right, 0, keys, left.length, right.length);
+                return keys;
+            }
+        });
+    }
+
+    private static <V, R> R invoke(LongMapSpliterator<V> spliterator, Operation<V, R> operation) {
+        //splits until a part has at most a quarter of the mappings per thread of the pool
+        long threshold = Math.max(1,
+                spliterator.estimateSize() / (ForkJoinPool.getCommonPoolParallelism() * LEAVES_PER_THREAD));
+        return ForkJoinPool.commonPool().invoke(new SplittingTask<>(spliterator, threshold, operation));
+    }
+
+    /**
+     * What a bulk operation does with a part of the map and how it combines the results of two parts.
+     */
+    private interface Operation<V, R> {
+
+        R computeLeaf(LongMapSpliterator<V> leaf);
+
+        R combine(R left, R right);
+    }
+
+    /**
+     * Splits the spliterator in halves while it is bigger than the threshold, forking the split off parts.
+     */
+    private static final class SplittingTask<V, R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LongMapSpliterator<V> spliterator;
+        private final long threshold;
+        private final Operation<V, R> operation;
+
+        private SplittingTask(LongMapSpliterator<V> spliterator, long threshold, Operation<V, R> operation) {
+            this.spliterator = spliterator;
+            this.threshold = threshold;
+            this.operation = operation;
+        }
+
+        @Override
+        protected R compute() {
+            if (spliterator.estimateSize() > threshold) {
+                LongMapSpliterator<V> prefix = spliterator.trySplit();
+                if (prefix != null) {
+                    SplittingTask<V, R> left = new SplittingTask<>(prefix, threshold, operation);
+                    left.fork();
+                    R right = new SplittingTask<>(spliterator, threshold, operation).compute();
+                    return operation.combine(left.join(), right);
+                }
+            }
+            return operation.computeLeaf(spliterator);
+        }
+    }
+
+    private static final class Reduction<V, U> implements LongObjConsumer<V> {
+
+        private final LongObjFunction<? super V, ? extends U> mapper;
+        private final BinaryOperator<U> combiner;
+        private U result;
+
+        private Reduction(U identity, LongObjFunction<? super V, ? extends U> mapper, BinaryOperator<U> combiner) {
+            this.mapper = mapper;
+            this.combiner = combiner;
+            result = identity;
+        }
+
+        public void accept(long key, V value) {
+            result = combiner.apply(result, mapper.apply(key, value));
+        }
+    }
+
+    private static final class LongReduction<V> implements LongObjConsumer<V> {
+
+        private final LongObjToLongFunction<? super V> mapper;
+        private final LongBinaryOperator combiner;
+        private long result;
+
+        private LongReduction(long identity, LongObjToLongFunction<? super V> mapper, LongBinaryOperator combiner) {
+            this.mapper = mapper;
+            this.combiner = combiner;
+            result = identity;
+        }
+
+        public void accept(long key, V value) {
+            result = combiner.applyAsLong(result, mapper.applyAsLong(key, value));
+        }
+    }
+
+    private static final class Filter<V> implements LongObjConsumer<V> {
+
+        private final LongObjPredicate<? super V> predicate;
+        private long[] keys = new long[16];
+        private int size;
+
+        private Filter(LongObjPredicate<? super V> predicate) {
+            this.predicate = predicate;
+        }
+
+        public void accept(long key, V value) {
+            if (predicate.test(key, value)) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size << 1);
+                }
+                keys[size++] = key;
+            }
+        }
+    }
+
+    /**
+     * The spliterator of a map which has no splittable one: walks the cursor and never splits.
+     */
+    static final class CursorSpliterator<V> implements LongMapSpliterator<V> {
+
+        private final LongMapCursor<V> cursor;
+        private long remaining;
+
+        CursorSpliterator(LongMapCursor<V> cursor, long size) {
+            this.cursor = cursor;
+            remaining = size;
+        }
+
+        public boolean tryAdvance(LongObjConsumer<? super V> action) {
+            if (!cursor.advance()) {
+                remaining = 0;
+                return false;
+            }
+            remaining = Math.max(0, remaining - 1);
+            action.accept(cursor.key(), cursor.value());
+            return true;
+        }
+
+        @Nullable
+        public LongMapSpliterator<V> trySplit() {
+            return null;
+        }
+
+        public long estimateSize() {
+            return remaining;
+        }
+    }
+}
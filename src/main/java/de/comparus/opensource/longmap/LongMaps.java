@@ -0,0 +1,91 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+/**
+ * Helpers shared by the {@link LongMap} implementations.
+ */
+final class LongMaps {
+
+    static final int REFERENCE_BYTES = 4;           // assumes compressed oops
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private LongMaps() {
+    }
+
+    /**
+     * Spreads all bits of the key over the result (finalizer of MurmurHash3),
+     * so that both the low and the high half of the result can be used as a hash.
+     *
+     * @param key the key to hash.
+     * @return the mixed 64-bit hash of the key.
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Returns the most specific class which both the current class and the value belong to.
+     * Is used to create the array returned by {@link LongMap#values()}.
+     *
+     * @param current the common class of the values seen so far, or {@code null} for the first value.
+     * @param value   the next value.
+     * @return the common class of all values seen so far.
+     */
+    static Class<?> getCommonClass(@Nullable Class<?> current, Object value) {
+        if (current == null) {
+            return value.getClass();
+        }
+        while (!current.isInstance(value)) {
+            current = current.getSuperclass();
+        }
+        return current;
+    }
+
+    /**
+     * Checks that the array of a batch operation has an element for every key.
+     *
+     * @param keys  the keys of the batch.
+     * @param array the values (or the output array) of the batch.
+     * @throws IllegalArgumentException if the array is shorter than the keys.
+     */
+    static void checkBatch(long[] keys, Object[] array) throws IllegalArgumentException {
+        if (array.length < keys.length) {
+            throw new IllegalArgumentException("keys.length = " + keys.length + ", array.length = " + array.length);
+        }
+    }
+
+    /**
+     * Checks that the values of a batch are not {@code null}.
+     *
+     * @param values the values of the batch.
+     * @param length the number of the checked values.
+     * @throws NullPointerException if any of the values == {@code null}.
+     */
+    static void checkValues(Object[] values, int length) throws NullPointerException {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == null) {
+                throw new NullPointerException("values[" + i + "] = null");
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap taken by an array (header and elements, aligned to 8 bytes).
+     *
+     * @param length       the length of the array, or -1 if the array is {@code null}.
+     * @param elementBytes the size of one element in bytes.
+     * @return the number of bytes taken by the array.
+     */
+    static long getArrayBytes(int length, int elementBytes) {
+        if (length < 0) {
+            return 0;
+        }
+        return (ARRAY_HEADER_BYTES + (long) length * elementBytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,10 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Operation that accepts a long key and a value, the primitive specialization of
+ * {@link java.util.function.BiConsumer} which saves the boxing of the key.
+ */
+@FunctionalInterface
+public interface LongObjConsumer<V> {
+    void accept(long key, V value);
+}
@@ -0,0 +1,10 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Function of a long key and a value, the primitive specialization of
+ * {@link java.util.function.BiFunction} which saves the boxing of the key.
+ */
+@FunctionalInterface
+public interface LongObjFunction<V, R> {
+    R apply(long key, V value);
+}
@@ -0,0 +1,10 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Predicate of a long key and a value, the primitive specialization of
+ * {@link java.util.function.BiPredicate} which saves the boxing of the key.
+ */
+@FunctionalInterface
+public interface LongObjPredicate<V> {
+    boolean test(long key, V value);
+}
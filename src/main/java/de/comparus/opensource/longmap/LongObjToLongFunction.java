@@ -0,0 +1,10 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * Function of a long key and a value which returns a long, the primitive specialization of
+ * {@link java.util.function.ToLongBiFunction} which saves the boxing of the key and of the result.
+ */
+@FunctionalInterface
+public interface LongObjToLongFunction<V> {
+    long applyAsLong(long key, V value);
+}
@@ -0,0 +1,606 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Long map which keeps its table in a memory-mapped file instead of the Java heap.
+ * The file is the map: opening an existing file maps it and the map is ready at once,
+ * whatever its size, and the mappings survive the restart of the JVM.
+ * <p>
+ * The table is a linear probing hash table with backward-shift deletion. Every slot has
+ * a fixed size: the key, the length of the value and the value encoded by the {@link ValueCodec},
+ * which may take up to {@link ValueCodec#maxSize()} bytes. The file is mapped in chunks of up to
+ * 1 GB, so the table is not limited by the 2 GB of one {@link MappedByteBuffer}.
+ * When the table is full, it is rebuilt with the double capacity in a new file next to the map
+ * file, which then replaces the map file by an atomic rename; a crash during the rebuild leaves
+ * the old file intact. The file does not shrink on removals, only {@link #clear()} makes it small.
+ * <p>
+ * The writes go to the page cache and reach the disk when the operating system decides,
+ * or on {@link #force()} and {@link #close()}. The map is not thread-safe, and the file must
+ * not be opened by two maps at once.
+ */
+public class OffHeapLongMap<V> implements LongMap<V>, Closeable {
+
+    private final Path file;
+    private final ValueCodec<V> codec;
+    private final int slotBytes;                // key, length and value, aligned to 8 bytes
+    private final int chunkShift;               // log2 of the number of slots in one mapped chunk
+    private final ByteBuffer encoded;           // the value being put, encoded before it is copied to its slot
+    private final byte[] movedSlot;
+
+    private Table table;
+    private long size;
+
+    private static final int MAGIC = 0x4c4d4150;            // "LMAP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOT_BYTES_OFFSET = 8;
+    private static final int MAX_VALUE_BYTES_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+
+    private static final int KEY_OFFSET = 0;                // within a slot
+    private static final int LENGTH_OFFSET = 8;             // 0 for a free slot, the length of the value + 1 otherwise
+    private static final int VALUE_OFFSET = 12;
+
+    private static final long DEFAULT_CAPACITY = 1024;
+    private static final long MAX_CAPACITY = 1L << 40;
+    private static final double TOP_LOAD_FACTOR = 0.75;
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    private static final String RESIZE_SUFFIX = ".resize";
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * Opens the map kept in the specified file, or creates the file if it does not exist.
+     *
+     * @param file  the file of the map.
+     * @param codec the codec of the values, must be the same as the file has been created with.
+     * @throws IOException              if the file can not be opened or is not a file of a map.
+     * @throws IllegalArgumentException if the file has been created for values of another size.
+     */
+    public OffHeapLongMap(Path file, ValueCodec<V> codec) throws IOException, IllegalArgumentException {
+        this(file, codec, 0);
+    }
+
+    /**
+     * Opens the map kept in the specified file, or creates the file with the table which can
+     * keep the specified number of mappings without rebuilding.
+     *
+     * @param file         the file of the map.
+     * @param codec        the codec of the values, must be the same as the file has been created with.
+     * @param expectedSize the number of mappings the new table is created for (ignored for an existing file).
+     * @throws IOException              if the file can not be opened or is not a file of a map.
+     * @throws IllegalArgumentException if the file has been created for values of another size.
+     */
+    public OffHeapLongMap(Path file, ValueCodec<V> codec, long expectedSize)
+            throws IOException, IllegalArgumentException {
+        this.file = file;
+        this.codec = codec;
+        slotBytes = (VALUE_OFFSET + codec.maxSize() + 7) & ~7;
+        chunkShift = 31 - Integer.numberOfLeadingZeros(MAX_CHUNK_BYTES / slotBytes);
+        encoded = ByteBuffer.allocate(codec.maxSize());
+        movedSlot = new byte[slotBytes];
+
+        Files.deleteIfExists(getResizeFile());
+        if (Files.exists(file) && Files.size(file) > 0) {
+            table = openTable();
+            size = table.header.getLong(SIZE_OFFSET);
+        } else {
+            table = createTable(file, getCapacity(expectedSize));
+        }
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException     if value == {@code null}.
+     * @throws IllegalArgumentException if the encoded value is longer than the slot allows.
+     * @throws UncheckedIOException     if the table can not be rebuilt with the bigger capacity.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException, IllegalArgumentException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        encoded.clear();
+        codec.encode(value, encoded);
+        encoded.flip();
+
+        long slot = getHome(key, table.capacity);
+        while (table.getLength(slot) != 0) {
+            if (table.getKey(slot) == key) {
+                table.setSlot(slot, key, encoded);
+                return value;
+            }
+            slot = (slot + 1) & (table.capacity - 1);
+        }
+        if (size + 1 > table.capacity * TOP_LOAD_FACTOR) {
+            if (table.capacity == MAX_CAPACITY) {
+                return null;
+            }
+            rebuild(table.capacity << 1, true);
+            slot = table.getFreeSlot(key);
+        }
+        table.setSlot(slot, key, encoded);
+        setSize(size + 1);
+        return value;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        long slot = getSlot(key);
+        return (slot != -1) ? table.getValue(slot) : null;
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        long slot = getSlot(key);
+        if (slot == -1) {
+            return null;
+        }
+        V value = table.getValue(slot);
+        shiftBack(slot);
+        setSize(size - 1);
+        return value;
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return getSlot(key) != -1;
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     * Every value of the map is decoded and compared.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null) {
+            for (long slot = 0; slot < table.capacity; slot++) {
+                if (table.getLength(slot) != 0 && value.equals(table.getValue(slot))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     * @throws IllegalStateException if the map has more mappings than an array may have.
+     */
+    public long[] keys() throws IllegalStateException {
+        long[] result = new long[getArrayLength()];
+        int position = 0;
+        for (long slot = 0; position < result.length; slot++) {
+            if (table.getLength(slot) != 0) {
+                result[position++] = table.getKey(slot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all values mapped in the map, decoded.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     * @throws IllegalStateException if the map has more mappings than an array may have.
+     */
+    @Nullable
+    public V[] values() throws IllegalStateException {
+        if (size == 0) {
+            return null;
+        }
+        Object[] all = new Object[getArrayLength()];
+        Class<?> valuesClass = null;
+        int position = 0;
+        for (long slot = 0; position < all.length; slot++) {
+            if (table.getLength(slot) != 0) {
+                all[position] = table.getValue(slot);
+                valuesClass = LongMaps.getCommonClass(valuesClass, all[position++]);
+            }
+        }
+        V[] result = (V[]) Array.newInstance(valuesClass, all.length);
+        System.arraycopy(all, 0, result, 0, all.length);
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value mappings from the map, the file is replaced by a file with an empty table.
+     * If the new file can not be created, the map keeps its mappings.
+     *
+     * @throws UncheckedIOException if the new file can not be created.
+     */
+    public void clear() {
+        rebuild(DEFAULT_CAPACITY, false);
+        size = 0;
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Writes all changes of the map to the disk.
+     */
+    public void force() {
+        table.force();
+    }
+
+    /**
+     * Writes all changes of the map to the disk and closes the file. The map must not be used afterwards.
+     *
+     * @throws IOException if the file can not be closed.
+     */
+    public void close() throws IOException {
+        table.force();
+        table.channel.close();
+    }
+
+    /**
+     * Returns the size of the file of the map.
+     *
+     * @return the number of bytes of the file.
+     */
+    public long fileSize() {
+        return HEADER_BYTES + table.capacity * slotBytes;
+    }
+
+
+    private static long getCapacity(long expectedSize) {
+        long capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY && expectedSize > capacity * TOP_LOAD_FACTOR) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static long getHome(long key, long capacity) {
+        return LongMaps.mix(key) & (capacity - 1);
+    }
+
+    private long getSlot(long key) {
+        long mask = table.capacity - 1;
+        for (long slot = getHome(key, table.capacity); table.getLength(slot) != 0; slot = (slot + 1) & mask) {
+            if (table.getKey(slot) == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void shiftBack(long free) {
+        long mask = table.capacity - 1;
+        long slot = free;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (table.getLength(slot) == 0) {
+                break;
+            }
+            long home = getHome(table.getKey(slot), table.capacity);
+            //the key may fill the free slot if its home is not in (free, slot]
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                table.copySlot(table, slot, free);
+                free = slot;
+            }
+        }
+        table.freeSlot(free);
+    }
+
+    private int getArrayLength() {
+        if (size > MAX_ARRAY_LENGTH) {
+            throw new IllegalStateException("size = " + size + ", the mappings do not fit an array");
+        }
+        return (int) size;
+    }
+
+    private void setSize(long size) {
+        this.size = size;
+        table.header.putLong(SIZE_OFFSET, size);
+    }
+
+    /**
+     * Builds the table with the specified capacity in the resize file (copying the mappings
+     * if required) and moves it over the map file. The old table stays open until the move
+     * succeeds, so if the rebuild fails, the map keeps working with the old table.
+     */
+    private void rebuild(long capacity, boolean copyMappings) {
+        Path resizeFile = getResizeFile();
+        Table rebuilt = null;
+        try {
+            rebuilt = createTable(resizeFile, capacity);
+            if (copyMappings) {
+                for (long slot = 0; slot < table.capacity; slot++) {
+                    if (table.getLength(slot) != 0) {
+                        rebuilt.copySlot(table, slot, rebuilt.getFreeSlot(table.getKey(slot)));
+                    }
+                }
+            }
+            rebuilt.header.putLong(SIZE_OFFSET, copyMappings ? size : 0);
+            rebuilt.force();
+            Files.move(resizeFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            if (rebuilt != null) {
+                try {
+                    rebuilt.channel.close();
+                    Files.deleteIfExists(resizeFile);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw (e instanceof IOException) ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+        Table old = table;
+        table = rebuilt;
+        try {
+            old.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path getResizeFile() {
+        return file.resolveSibling(file.getFileName() + RESIZE_SUFFIX);
+    }
+
+    private Table createTable(Path path, long capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Table created;
+        try {
+            created = new Table(channel, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        created.header.putInt(MAGIC_OFFSET, MAGIC);
+        created.header.putInt(VERSION_OFFSET, VERSION);
+        created.header.putInt(SLOT_BYTES_OFFSET, slotBytes);
+        created.header.putInt(MAX_VALUE_BYTES_OFFSET, codec.maxSize());
+        created.header.putLong(CAPACITY_OFFSET, capacity);
+        created.header.putLong(SIZE_OFFSET, 0);
+        return created;
+    }
+
+    /**
+     * Opens the table of the map file, checking the header and the length of the file before
+     * anything is mapped read-write (mapping beyond the end of a file would extend it).
+     */
+    private Table openTable() throws IOException, IllegalArgumentException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long fileBytes = channel.size();
+            if (fileBytes < HEADER_BYTES) {
+                throw new IOException(file + " is not a file of a long map");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException(file + " is not a file of a long map");
+            }
+            if (header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(file + " has unsupported version " + header.getInt(VERSION_OFFSET));
+            }
+            if (header.getInt(MAX_VALUE_BYTES_OFFSET) != codec.maxSize()) {
+                throw new IllegalArgumentException(file + " is created for values of "
+                        + header.getInt(MAX_VALUE_BYTES_OFFSET) + " bytes, the codec has " + codec.maxSize());
+            }
+            long capacity = header.getLong(CAPACITY_OFFSET);
+            if (header.getInt(SLOT_BYTES_OFFSET) != slotBytes || capacity <= 0 || capacity > MAX_CAPACITY
+                    || Long.bitCount(capacity) != 1) {
+                throw new IOException(file + " has a damaged header");
+            }
+            if (fileBytes != HEADER_BYTES + capacity * slotBytes) {
+                throw new IOException(file + " has " + fileBytes + " bytes, its table takes "
+                        + (HEADER_BYTES + capacity * slotBytes));
+            }
+            return new Table(channel, capacity);
+        } catch (IOException | IllegalArgumentException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The file of a table mapped in chunks.
+     */
+    private final class Table {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final MappedByteBuffer[] chunks;
+        private final ByteBuffer[] views;           // duplicates of the chunks for the bulk reads and writes
+        private final long capacity;                // always a power of two
+
+        private Table(FileChannel channel, long capacity) throws IOException {
+            this.channel = channel;
+            this.capacity = capacity;
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            long slotsPerChunk = 1L << chunkShift;
+            int chunksNumber = (int) ((capacity + slotsPerChunk - 1) >>> chunkShift);
+            chunks = new MappedByteBuffer[chunksNumber];
+            views = new ByteBuffer[chunksNumber];
+            for (int i = 0; i < chunksNumber; i++) {
+                long firstSlot = (long) i << chunkShift;
+                long slots = Math.min(slotsPerChunk, capacity - firstSlot);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + firstSlot * slotBytes, slots * slotBytes);
+                views[i] = chunks[i].duplicate();
+            }
+        }
+
+        private long getKey(long slot) {
+            return chunks[getChunk(slot)].getLong(getOffset(slot) + KEY_OFFSET);
+        }
+
+        private int getLength(long slot) {
+            return chunks[getChunk(slot)].getInt(getOffset(slot) + LENGTH_OFFSET);
+        }
+
+        private V getValue(long slot) {
+            ByteBuffer view = views[getChunk(slot)];
+            int offset = getOffset(slot) + VALUE_OFFSET;
+            view.clear();
+            view.position(offset);
+            view.limit(offset + getLength(slot) - 1);
+            return codec.decode(view);
+        }
+
+        private void setSlot(long slot, long key, ByteBuffer value) {
+            int chunk = getChunk(slot);
+            int offset = getOffset(slot);
+            ByteBuffer view = views[chunk];
+            view.clear();
+            view.position(offset + VALUE_OFFSET);
+            view.put(value.duplicate());
+            chunks[chunk].putLong(offset + KEY_OFFSET, key);
+            chunks[chunk].putInt(offset + LENGTH_OFFSET, value.remaining() + 1);
+        }
+
+        private void freeSlot(long slot) {
+            chunks[getChunk(slot)].putInt(getOffset(slot) + LENGTH_OFFSET, 0);
+        }
+
+        private void copySlot(Table source, long sourceSlot, long slot) {
+            ByteBuffer sourceView = source.views[getChunk(sourceSlot)];
+            sourceView.clear();
+            sourceView.position(getOffset(sourceSlot));
+            sourceView.get(movedSlot);
+            ByteBuffer view = views[getChunk(slot)];
+            view.clear();
+            view.position(getOffset(slot));
+            view.put(movedSlot);
+        }
+
+        private long getFreeSlot(long key) {
+            long slot = getHome(key, capacity);
+            while (getLength(slot) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            return slot;
+        }
+
+        private void force() {
+            header.force();
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        }
+
+        private int getChunk(long slot) {
+            return (int) (slot >>> chunkShift);
+        }
+
+        private int getOffset(long slot) {
+            return (int) (slot & ((1L << chunkShift) - 1)) * slotBytes;
+        }
+    }
+
+    /**
+     * Walks the table once round, starting from a free slot. A removal shifts back only the keys
+     * which are not visited yet, so the cursor just looks at the slot of the removed key once more.
+     */
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private long start;                 // the free slot the walk starts after
+        private long offset;                // of the current slot from the start
+
+        private Cursor() {
+            while (table.getLength(start) != 0) {
+                start++;
+            }
+        }
+
+        boolean findNext() {
+            while (++offset < table.capacity) {
+                long slot = getCurrentSlot();
+                if (table.getLength(slot) != 0) {
+                    setCurrent(table.getKey(slot), table.getValue(slot));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            shiftBack(getCurrentSlot());
+            setSize(size - 1);
+            offset--;
+        }
+
+        void afterRemovals() {
+        }
+
+        private long getCurrentSlot() {
+            return (start + offset) & (table.capacity - 1);
+        }
+    }
+}
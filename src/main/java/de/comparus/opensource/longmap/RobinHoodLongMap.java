@@ -0,0 +1,375 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Long map based on linear probing with Robin Hood hashing: on insertion a key which is
+ * farther from its home slot takes the place of a key which is closer to its own, so probe
+ * lengths stay short and even. Removal shifts the following keys back by one slot instead of
+ * leaving a deleted marker, so the table never accumulates tombstones under churn.
+ * {@link #getProbeLengthHistogram()} shows how long the lookups are.
+ */
+public class RobinHoodLongMap<V> implements LongMap<V> {
+
+    private long[] keys;
+    private Object[] values;            // null for a free slot
+    private int capacity;               // always a power of two
+    private int size;
+
+    private double topLoadFactor;
+    private double bottomLoadFactor;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double DEFAULT_TOP_LOAD_FACTOR = 0.85;
+    private static final double DEFAULT_BOTTOM_LOAD_FACTOR = 0.2;
+
+    /**
+     * Creates Robin Hood long map instance with default parameters:
+     * initial capacity = {@value RobinHoodLongMap#DEFAULT_CAPACITY},
+     * top load factor = {@value RobinHoodLongMap#DEFAULT_TOP_LOAD_FACTOR},
+     * bottom load factor = {@value RobinHoodLongMap#DEFAULT_BOTTOM_LOAD_FACTOR}.
+     * The table of the map is initialized lazily (not exists before the first usage).
+     */
+    public RobinHoodLongMap() {
+        capacity = DEFAULT_CAPACITY;
+        size = 0;
+        topLoadFactor = DEFAULT_TOP_LOAD_FACTOR;
+        bottomLoadFactor = DEFAULT_BOTTOM_LOAD_FACTOR;
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        if (values == null) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        } else if ((double) (size + 1) / capacity > topLoadFactor) {
+            if (capacity == MAX_CAPACITY) {
+                return null;
+            }
+            rehash(capacity << 1);
+        }
+        insert(key, value);
+        return value;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        int index = getKeyIndex(key);
+        return (index != -1) ? (V) values[index] : null;
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        int index = getKeyIndex(key);
+        if (index == -1) {
+            return null;
+        }
+        V value = (V) values[index];
+        shiftBack(index);
+        size--;
+        trim();
+        return value;
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return getKeyIndex(key) != -1;
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null && values != null) {
+            for (Object current : values) {
+                if (current != null && value.equals(current)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int position = 0;
+        for (int i = 0; position < size; i++) {
+            if (values[i] != null) {
+                result[position++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        if (size == 0) {
+            return null;
+        }
+        Class<?> valuesClass = null;
+        for (Object value : values) {
+            if (value != null) {
+                valuesClass = LongMaps.getCommonClass(valuesClass, value);
+            }
+        }
+        V[] result = (V[]) Array.newInstance(valuesClass, size);
+        int position = 0;
+        for (Object value : values) {
+            if (value != null) {
+                result[position++] = (V) value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     */
+    public void clear() {
+        capacity = DEFAULT_CAPACITY;
+        keys = null;
+        values = null;
+        size = 0;
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the distribution of probe lengths: the element with index i is the number of
+     * keys which a lookup finds with i + 1 probes (i.e. lying i slots away from their home slot).
+     * The length of the array is the longest probe length in the map.
+     * The table is scanned on every call, so the lookups themselves pay nothing for the statistics.
+     *
+     * @return the histogram of probe lengths, or an empty array if the map is empty.
+     */
+    public long[] getProbeLengthHistogram() {
+        long[] histogram = new long[0];
+        if (values != null) {
+            for (int i = 0; i < capacity; i++) {
+                if (values[i] != null) {
+                    int distance = getDistance(i);
+                    if (distance >= histogram.length) {
+                        histogram = Arrays.copyOf(histogram, distance + 1);
+                    }
+                    histogram[distance]++;
+                }
+            }
+        }
+        return histogram;
+    }
+
+
+    private int getHomeIndex(long key) {
+        return (int) LongMaps.mix(key) & (capacity - 1);
+    }
+
+    private int getDistance(int index) {
+        return (index - getHomeIndex(keys[index])) & (capacity - 1);
+    }
+
+    private int getKeyIndex(long key) {
+        if (values == null) {
+            return -1;
+        }
+        int mask = capacity - 1;
+        int index = getHomeIndex(key);
+        for (int distance = 0; values[index] != null; distance++) {
+            if (keys[index] == key) {
+                return index;
+            }
+            if (getDistance(index) < distance) {
+                //a key of the slot is closer to its home than the searched one would be
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long key, Object value) {
+        int mask = capacity - 1;
+        int index = getHomeIndex(key);
+        for (int distance = 0; ; distance++) {
+            Object current = values[index];
+            if (current == null) {
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                return;
+            }
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+            int currentDistance = getDistance(index);
+            if (currentDistance < distance) {
+                //take the place of the richer key and go on with it
+                long currentKey = keys[index];
+                keys[index] = key;
+                values[index] = value;
+                key = currentKey;
+                value = current;
+                distance = currentDistance;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void shiftBack(int index) {
+        int mask = capacity - 1;
+        int next = (index + 1) & mask;
+        while (values[next] != null && getDistance(next) > 0) {
+            keys[index] = keys[next];
+            values[index] = values[next];
+            index = next;
+            next = (next + 1) & mask;
+        }
+        values[index] = null;
+    }
+
+    private void trim() {
+        if (size == 0) {
+            clear();
+        } else if ((double) size / capacity < bottomLoadFactor && capacity >= DEFAULT_CAPACITY * 2) {
+            rehash(capacity >> 1);
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        capacity = newCapacity;
+        keys = new long[newCapacity];
+        values = new Object[newCapacity];
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Walks the table once round, starting from a free slot. A removal shifts back only the keys
+     * which follow the removed one in its run, and no run crosses the free slot, so the shifted
+     * keys are not visited yet: the cursor just looks at the slot of the removed key once more.
+     */
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int start;                  // the free slot the walk starts after
+        private int offset;                 // of the current slot from the start
+
+        private Cursor() {
+            if (values != null) {
+                while (values[start] != null) {
+                    start++;
+                }
+            }
+        }
+
+        boolean findNext() {
+            if (values != null) {
+                while (++offset < capacity) {
+                    int index = getIndex();
+                    if (values[index] != null) {
+                        setCurrent(keys[index], values[index]);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            shiftBack(getIndex());
+            size--;
+            offset--;
+        }
+
+        void afterRemovals() {
+            trim();
+        }
+
+        private int getIndex() {
+            return (start + offset) & (capacity - 1);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+/**
+ * Long map which is not limited by the capacity of one table. The key space is split by the high bits
+ * of the mixed hash of the key into segments, each of which is a {@link LongMapImpl} with its own table
+ * of up to 2^30 slots, so the capacity of the map and its {@link #size()} are 64-bit.
+ * <p>
+ * Every segment grows and shrinks on its own: a resize copies only the mappings of one segment
+ * (about 1 / number of segments of the map), so no single operation rehashes the whole dataset.
+ * <p>
+ * {@link #keys()} and {@link #values()} can not return more than {@value SegmentedLongMap#MAX_ARRAY_LENGTH}
+ * mappings, a bigger map is walked by {@link #cursor()}, {@link #forEach(LongObjConsumer)}
+ * or the parallel bulk operations, which split the map by segments.
+ * <p>
+ * The conditional writes ({@link #putIfAbsent(long, Object)}, {@link #compute(long, LongObjFunction)} etc.)
+ * are done by the segment of the key, at the cost of the same operation of {@link LongMapImpl}.
+ */
+public class SegmentedLongMap<V> implements LongMap<V> {
+
+    private final LongMapImpl<V>[] segments;
+    private final int segmentShift;             // 64 - log2(number of segments)
+
+    private static final int DEFAULT_SEGMENTS_NUMBER = 64;
+    private static final int MAX_SEGMENTS_NUMBER = 1 << 16;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * Creates segmented long map with {@value SegmentedLongMap#DEFAULT_SEGMENTS_NUMBER} segments.
+     */
+    public SegmentedLongMap() {
+        this(DEFAULT_SEGMENTS_NUMBER);
+    }
+
+    /**
+     * Creates segmented long map with the specified number of segments. The map holds up to
+     * about 0.8 * 2^30 mappings per segment, and a resize copies about 1 / segmentsNumber of the mappings.
+     *
+     * @param segmentsNumber the number of segments, is rounded up to a power of two
+     *                       (up to {@value SegmentedLongMap#MAX_SEGMENTS_NUMBER}).
+     * @throws IllegalArgumentException if segmentsNumber is not positive.
+     */
+    public SegmentedLongMap(int segmentsNumber) throws IllegalArgumentException {
+        if (segmentsNumber <= 0) {
+            throw new IllegalArgumentException("segmentsNumber = " + segmentsNumber);
+        }
+        int number = Integer.highestOneBit(Math.min(segmentsNumber, MAX_SEGMENTS_NUMBER) * 2 - 1);
+        segments = (LongMapImpl<V>[]) new LongMapImpl<?>[number];
+        for (int i = 0; i < number; i++) {
+            segments[i] = new LongMapImpl<>();
+        }
+        segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(number);
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException {
+        return getSegment(key).put(key, value);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        return getSegment(key).get(key);
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        return getSegment(key).remove(key);
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        for (LongMapImpl<V> segment : segments) {
+            if (!segment.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return getSegment(key).containsKey(key);
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        for (LongMapImpl<V> segment : segments) {
+            if (segment.containsValue(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     * @throws IllegalStateException if the map has more mappings than an array may have.
+     */
+    public long[] keys() throws IllegalStateException {
+        long[] result = new long[getArrayLength()];
+        int position = 0;
+        for (LongMapImpl<V> segment : segments) {
+            long[] keys = segment.keys();
+            System.arraycopy(keys, 0, result, position, keys.length);
+            position += keys.length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     * @throws IllegalStateException if the map has more mappings than an array may have.
+     */
+    @Nullable
+    public V[] values() throws IllegalStateException {
+        int length = getArrayLength();
+        if (length == 0) {
+            return null;
+        }
+        Class<?> valuesClass = null;
+        LongMapCursor<V> cursor = cursor();
+        while (cursor.advance()) {
+            valuesClass = LongMaps.getCommonClass(valuesClass, cursor.value());
+        }
+
+        V[] result = (V[]) Array.newInstance(valuesClass, length);
+        int position = 0;
+        cursor = cursor();
+        while (cursor.advance()) {
+            result[position++] = cursor.value();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        long size = 0;
+        for (LongMapImpl<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Removes all key-value mappings from the map and frees the tables of the segments.
+     */
+    public void clear() {
+        for (LongMapImpl<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public V putIfAbsent(long key, V value) throws NullPointerException {
+        return getSegment(key).putIfAbsent(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public V replace(long key, V value) throws NullPointerException {
+        return getSegment(key).replace(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        return getSegment(key).computeIfAbsent(key, mappingFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public V compute(long key, LongObjFunction<? super V, ? extends V> remappingFunction) {
+        return getSegment(key).compute(key, remappingFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    public V merge(long key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws NullPointerException {
+        return getSegment(key).merge(key, value, remappingFunction);
+    }
+
+    /**
+     * Returns a cursor which walks the segments one after another.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns a spliterator over the mappings of the map, which splits the range of the segments
+     * in halves and then the table of the last segment.
+     *
+     * @return a new spliterator over all mappings.
+     */
+    public LongMapSpliterator<V> spliterator() {
+        return new SegmentSpliterator(0, segments.length);
+    }
+
+    /**
+     * Makes the map hold the expected number of mappings without resizing: every segment is grown
+     * for its share of the mappings (with a margin for the uneven spread of the keys),
+     * see {@link LongMapImpl#ensureCapacity(long)}.
+     *
+     * @param expectedSize the expected number of mappings.
+     * @throws IllegalArgumentException if expectedSize < 0.
+     */
+    public void ensureCapacity(long expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize = " + expectedSize);
+        }
+        long share = (expectedSize + segments.length - 1) / segments.length;
+        //the size of a segment deviates from the share by about its square root
+        long segmentSize = share + 3 * (long) Math.ceil(Math.sqrt(share));
+        for (LongMapImpl<V> segment : segments) {
+            segment.ensureCapacity(segmentSize);
+        }
+    }
+
+    /**
+     * Shrinks the table of every segment to fit its mappings, see {@link LongMapImpl#trimToSize()}.
+     */
+    public void trimToSize() {
+        for (LongMapImpl<V> segment : segments) {
+            segment.trimToSize();
+        }
+    }
+
+    /**
+     * Returns the number of segments of the map.
+     *
+     * @return the number of segments, a power of two.
+     */
+    public int getSegmentsNumber() {
+        return segments.length;
+    }
+
+    /**
+     * Takes a snapshot of the statistics of a segment, see {@link LongMapImpl#getStats()}.
+     *
+     * @param segment the index of the segment, from 0 to {@link #getSegmentsNumber()} - 1.
+     * @return the snapshot of the statistics of the segment.
+     * @throws IndexOutOfBoundsException if there is no segment with such index.
+     */
+    public LongMapStats getSegmentStats(int segment) throws IndexOutOfBoundsException {
+        return segments[segment].getStats();
+    }
+
+    /**
+     * Estimates the heap taken by the tables of the segments (not counting the values).
+     *
+     * @return the number of bytes taken by the map structure.
+     */
+    long memoryUsage() {
+        long result = 0;
+        for (LongMapImpl<V> segment : segments) {
+            result += segment.memoryUsage();
+        }
+        return result;
+    }
+
+
+    private LongMapImpl<V> getSegment(long key) {
+        return segments[(int) (LongMaps.mix(key) >>> segmentShift)];
+    }
+
+    private int getArrayLength() {
+        long size = size();
+        if (size > MAX_ARRAY_LENGTH) {
+            throw new IllegalStateException("size = " + size + ", the mappings do not fit an array");
+        }
+        return (int) size;
+    }
+
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int segmentIndex = -1;
+        @Nullable
+        private LongMapCursor<V> current;       // the cursor of the current segment
+
+        boolean findNext() {
+            while (current == null || !current.advance()) {
+                if (++segmentIndex == segments.length) {
+                    return false;
+                }
+                current = segments[segmentIndex].cursor();
+            }
+            setCurrent(current.key(), current.value());
+            return true;
+        }
+
+        void removeCurrent() {
+            current.remove();
+        }
+
+        void afterRemovals() {
+            //every segment has shrunk when its cursor has finished
+        }
+    }
+
+    /**
+     * Splits the range of the segments in halves, then the spliterator of the last segment.
+     */
+    private final class SegmentSpliterator implements LongMapSpliterator<V> {
+
+        private int index;                          // the next segment to traverse
+        private final int end;
+        @Nullable
+        private LongMapSpliterator<V> current;      // the spliterator of the segment being traversed
+
+        private SegmentSpliterator(int from, int end) {
+            index = from;
+            this.end = end;
+        }
+
+        public boolean tryAdvance(LongObjConsumer<? super V> action) {
+            while (current == null || !current.tryAdvance(action)) {
+                if (index == end) {
+                    return false;
+                }
+                current = segments[index++].spliterator();
+            }
+            return true;
+        }
+
+        public void forEachRemaining(LongObjConsumer<? super V> action) {
+            if (current != null) {
+                current.forEachRemaining(action);
+            }
+            while (index < end) {
+                segments[index++].spliterator().forEachRemaining(action);
+            }
+            current = null;
+        }
+
+        @Nullable
+        public LongMapSpliterator<V> trySplit() {
+            if (end - index >= 2) {
+                int middle = (index + end) >>> 1;
+                SegmentSpliterator prefix = new SegmentSpliterator(index, middle);
+                prefix.current = current;
+                current = null;
+                index = middle;
+                return prefix;
+            }
+            if (current == null && index < end) {
+                current = segments[index++].spliterator();
+            }
+            return (current != null && index == end) ? current.trySplit() : null;
+        }
+
+        public long estimateSize() {
+            long result = (current != null) ? current.estimateSize() : 0;
+            for (int i = index; i < end; i++) {
+                result += segments[i].size();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Long map based on the SwissTable layout: besides the keys and the values, every slot has
+ * a control byte, kept in a separate array, which says if the slot is empty, deleted, or holds
+ * a key with the given 7 bits of hash. The slots are probed by groups of 8: the control bytes of
+ * a group are one <tt>long</tt> word, which is matched against the searched hash bits
+ * all at once by bit tricks (SWAR), so a lookup reads the key array only for the slots whose
+ * control byte matches, and stops at the first group with an empty slot.
+ * The capacity is a power of two, so no probe needs a division.
+ */
+public class SwissLongMap<V> implements LongMap<V> {
+
+    private long[] control;             // the control bytes of the slots, 8 per word (a group)
+    private long[] keys;
+    private Object[] values;            // null for an empty or deleted slot
+    private int capacity;               // always a power of two, not less than a group
+    private int size;
+    private int growthLeft;             // the number of empty slots which may still be taken
+
+    private double bottomLoadFactor;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double DEFAULT_BOTTOM_LOAD_FACTOR = 0.2;
+
+    private static final int GROUP_SHIFT = 3;
+    private static final int GROUP_WIDTH = 1 << GROUP_SHIFT;
+
+    private static final byte EMPTY = (byte) 0x80;
+    private static final byte DELETED = (byte) 0xFE;
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+    private static final long EMPTY_GROUP = MSBS;
+
+    /**
+     * Creates Swiss long map instance with default parameters:
+     * initial capacity = {@value SwissLongMap#DEFAULT_CAPACITY},
+     * top load factor = 7/8,
+     * bottom load factor = {@value SwissLongMap#DEFAULT_BOTTOM_LOAD_FACTOR}.
+     * The table of the map is initialized lazily (not exists before the first usage).
+     */
+    public SwissLongMap() {
+        capacity = DEFAULT_CAPACITY;
+        size = 0;
+        bottomLoadFactor = DEFAULT_BOTTOM_LOAD_FACTOR;
+    }
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        if (values == null) {
+            allocate(capacity);
+        }
+        long hash = LongMaps.mix(key);
+        int index = getKeyIndex(key, hash);
+        if (index != -1) {
+            values[index] = value;
+            return value;
+        }
+
+        index = getFreeIndex(hash, false);
+        if (getControl(index) == EMPTY && growthLeft == 0) {
+            if (size + 1 > getMaxLoad(capacity) / 2) {
+                if (capacity == MAX_CAPACITY) {
+                    return null;
+                }
+                rehash(capacity << 1);
+            } else {
+                //the table is full of deleted slots, a rehash of the same capacity drops them
+                rehash(capacity);
+            }
+            index = getFreeIndex(hash, true);
+        }
+        if (getControl(index) == EMPTY) {
+            growthLeft--;
+        }
+        setControl(index, getHashBits(hash));
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        return value;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        if (values == null) {
+            return null;
+        }
+        int index = getKeyIndex(key, LongMaps.mix(key));
+        return (index != -1) ? (V) values[index] : null;
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        if (values == null) {
+            return null;
+        }
+        int index = getKeyIndex(key, LongMaps.mix(key));
+        if (index == -1) {
+            return null;
+        }
+        V value = (V) values[index];
+        erase(index);
+        trim();
+        return value;
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return values != null && getKeyIndex(key, LongMaps.mix(key)) != -1;
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null && values != null) {
+            for (Object current : values) {
+                if (current != null && value.equals(current)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int position = 0;
+        for (int i = 0; position < size; i++) {
+            if (values[i] != null) {
+                result[position++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        if (size == 0) {
+            return null;
+        }
+        Class<?> valuesClass = null;
+        for (Object value : values) {
+            if (value != null) {
+                valuesClass = LongMaps.getCommonClass(valuesClass, value);
+            }
+        }
+        V[] result = (V[]) Array.newInstance(valuesClass, size);
+        int position = 0;
+        for (Object value : values) {
+            if (value != null) {
+                result[position++] = (V) value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     */
+    public void clear() {
+        capacity = DEFAULT_CAPACITY;
+        control = null;
+        keys = null;
+        values = null;
+        size = 0;
+        growthLeft = 0;
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Estimates the heap taken by the table of the map (not counting the values).
+     *
+     * @return the number of bytes taken by the map structure.
+     */
+    long memoryUsage() {
+        if (values == null) {
+            return 0;
+        }
+        return LongMaps.getArrayBytes(control.length, Long.BYTES)
+                + LongMaps.getArrayBytes(keys.length, Long.BYTES)
+                + LongMaps.getArrayBytes(values.length, LongMaps.REFERENCE_BYTES);
+    }
+
+
+    /**
+     * Returns a word with the high bit set in every byte of the group which may be equal to
+     * the specified one. The zero byte test borrows into the byte above a matching one, so
+     * a byte above a match may be reported falsely: the caller compares the keys anyway.
+     */
+    static long matchByte(long group, byte value) {
+        long x = group ^ (LSBS * (value & 0xFF));
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * Returns a word with the high bit set in every empty byte of the group: the empty byte
+     * is the only one with the high bit set and the bit 1 clear.
+     */
+    static long matchEmpty(long group) {
+        return group & ~(group << 6) & MSBS;
+    }
+
+    /**
+     * Returns a word with the high bit set in every empty or deleted byte of the group:
+     * they are the only ones with the high bit set and the bit 0 clear.
+     */
+    static long matchEmptyOrDeleted(long group) {
+        return group & ~(group << 7) & MSBS;
+    }
+
+    private static byte getHashBits(long hash) {
+        return (byte) (hash >>> 57);
+    }
+
+    private static int getMaxLoad(int capacity) {
+        return capacity - (capacity >>> 3);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        control = new long[newCapacity >>> GROUP_SHIFT];
+        Arrays.fill(control, EMPTY_GROUP);
+        keys = new long[newCapacity];
+        values = new Object[newCapacity];
+        growthLeft = getMaxLoad(newCapacity);
+    }
+
+    /**
+     * Probes the groups in the triangular sequence (home, +1, +3, +6, ...), which visits every
+     * group of a power of two number of groups. At least 1/8 of the slots are always empty,
+     * so the probing stops.
+     */
+    private int getKeyIndex(long key, long hash) {
+        byte hashBits = getHashBits(hash);
+        int groupMask = control.length - 1;
+        int group = (int) hash & groupMask;
+        for (int step = 1; ; step++) {
+            long word = control[group];
+            for (long match = matchByte(word, hashBits); match != 0; match &= match - 1) {
+                int index = (group << GROUP_SHIFT) + (Long.numberOfTrailingZeros(match) >>> 3);
+                if (keys[index] == key && values[index] != null) {
+                    return index;
+                }
+            }
+            if (matchEmpty(word) != 0) {
+                return -1;
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    private int getFreeIndex(long hash, boolean emptyOnly) {
+        int groupMask = control.length - 1;
+        int group = (int) hash & groupMask;
+        for (int step = 1; ; step++) {
+            long word = control[group];
+            long match = emptyOnly ? matchEmpty(word) : matchEmptyOrDeleted(word);
+            if (match != 0) {
+                return (group << GROUP_SHIFT) + (Long.numberOfTrailingZeros(match) >>> 3);
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    private byte getControl(int index) {
+        return (byte) (control[index >>> GROUP_SHIFT] >>> ((index & (GROUP_WIDTH - 1)) << 3));
+    }
+
+    private void setControl(int index, byte value) {
+        int shift = (index & (GROUP_WIDTH - 1)) << 3;
+        int group = index >>> GROUP_SHIFT;
+        control[group] = (control[group] & ~(0xFFL << shift)) | ((long) (value & 0xFF) << shift);
+    }
+
+    /**
+     * Frees the slot. A lookup which reaches a group with an empty slot stops there, so if the group
+     * has one already, no lookup passes it and the slot may be empty too; otherwise it is deleted.
+     */
+    private void erase(int index) {
+        if (matchEmpty(control[index >>> GROUP_SHIFT]) != 0) {
+            setControl(index, EMPTY);
+            growthLeft++;
+        } else {
+            setControl(index, DELETED);
+        }
+        values[index] = null;
+        size--;
+    }
+
+    private void trim() {
+        if (size == 0) {
+            //the empty map keeps a table of the default capacity, so a put after the last remove does not allocate
+            if (capacity == DEFAULT_CAPACITY) {
+                Arrays.fill(control, EMPTY_GROUP);
+                growthLeft = getMaxLoad(capacity);
+            } else {
+                allocate(DEFAULT_CAPACITY);
+            }
+        } else if ((double) size / capacity < bottomLoadFactor && capacity >= DEFAULT_CAPACITY * 2) {
+            rehash(capacity >> 1);
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                long hash = LongMaps.mix(oldKeys[i]);
+                int index = getFreeIndex(hash, true);
+                setControl(index, getHashBits(hash));
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                growthLeft--;
+            }
+        }
+    }
+
+    /**
+     * Walks the slots in order. A removal only marks the slot of the removed key, other keys
+     * keep their slots, so the walk goes on from the same place.
+     */
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private int index = -1;
+
+        boolean findNext() {
+            if (values != null) {
+                while (++index < capacity) {
+                    if (values[index] != null) {
+                        setCurrent(keys[index], values[index]);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            erase(index);
+        }
+
+        void afterRemovals() {
+            trim();
+        }
+    }
+}
@@ -0,0 +1,701 @@
+package de.comparus.opensource.longmap;
+
+import com.sun.istack.internal.Nullable;
+
+import java.lang.reflect.Array;
+
+/**
+ * Long map which stores keys in the narrowest primitive that can hold them
+ * (cascading like a nested doll): keys within the byte range are kept in a directly
+ * indexed array without keys at all, keys within the short and int ranges are kept
+ * in hash tables with {@code short[]} and {@code int[]} keys, and all other keys
+ * are kept in a {@link LongMapImpl}. For small keys it saves 4 or 6 bytes of every slot.
+ */
+public class TieredLongMap<V> implements LongMap<V> {
+
+    /**
+     * The tiers of the map, from the narrowest key format to the widest one.
+     */
+    public enum Tier {
+        BYTE, SHORT, INT, LONG
+    }
+
+    private final ByteTier byteTier = new ByteTier();
+    private final NarrowTier shortTier = new ShortTier();
+    private final NarrowTier intTier = new IntTier();
+    private final LongMapImpl<V> longTier = new LongMapImpl<>();
+
+    /**
+     * Sets a mapping between specified key and specified value in the map.
+     *
+     * @param key   specified key for mapping.
+     * @param value specified value for mapping.
+     * @return the <tt>value</tt> if mapping has been done successfully, or {@code null} otherwise.
+     * @throws NullPointerException if value == {@code null}.
+     */
+    @Nullable
+    public V put(long key, V value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("value = null");
+        }
+        switch (getTier(key)) {
+            case BYTE:
+                byteTier.put(key, value);
+                return value;
+            case SHORT:
+                shortTier.put(key, value);
+                return value;
+            case INT:
+                intTier.put(key, value);
+                return value;
+            default:
+                return longTier.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return the <tt>value</tt> to which the specified key is mapped,
+     * or {@code null} if there is no mapping with such key in the map.
+     */
+    @Nullable
+    public V get(long key) {
+        switch (getTier(key)) {
+            case BYTE:
+                return (V) byteTier.get(key);
+            case SHORT:
+                return (V) shortTier.get(key);
+            case INT:
+                return (V) intTier.get(key);
+            default:
+                return longTier.get(key);
+        }
+    }
+
+    /**
+     * Removes a mapping that associates with the specified key from the map.
+     *
+     * @param key the specified key whose mapping is deleted.
+     * @return the <tt>value</tt> which was mapped with the specified key,
+     * or {@code null} if there is no mapping for the specified key in the map.
+     */
+    @Nullable
+    public V remove(long key) {
+        switch (getTier(key)) {
+            case BYTE:
+                return (V) byteTier.remove(key);
+            case SHORT:
+                return (V) shortTier.remove(key);
+            case INT:
+                return (V) intTier.remove(key);
+            default:
+                return longTier.remove(key);
+        }
+    }
+
+    /**
+     * Checks if there are no elements in the map.
+     *
+     * @return <tt>true</tt> if there are no elements in the map,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Checks if there is a mapping for specified key in the map.
+     *
+     * @param key the key which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping for the specified key,
+     * or <tt>false</tt> otherwise.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Checks if there is a mapping with specified value in the map.
+     *
+     * @param value the value which mapping is searched in the map.
+     * @return <tt>true</tt> if the map contains a mapping with the specified value,
+     * or <tt>false</tt> if not or if value == null.
+     */
+    public boolean containsValue(V value) {
+        if (value != null) {
+            return byteTier.containsValue(value)
+                    || shortTier.containsValue(value)
+                    || intTier.containsValue(value)
+                    || longTier.containsValue(value);
+        }
+        return false;
+    }
+
+    /**
+     * Returns all keys mapped in the map.
+     *
+     * @return the <tt>array</tt> of all keys mapped in the map,
+     * or empty array if the map is empty.
+     */
+    public long[] keys() {
+        long[] result = new long[(int) size()];
+        int position = byteTier.copyKeys(result, 0);
+        position = shortTier.copyKeys(result, position);
+        position = intTier.copyKeys(result, position);
+        long[] longKeys = longTier.keys();
+        System.arraycopy(longKeys, 0, result, position, longKeys.length);
+        return result;
+    }
+
+    /**
+     * Returns all values mapped in the map.
+     * The component type of the array is the most specific common class of the values.
+     *
+     * @return the <tt>array</tt> of all values mapped in the map.
+     * or {@code null} if the map is empty.
+     */
+    @Nullable
+    public V[] values() {
+        if (isEmpty()) {
+            return null;
+        }
+        Object[] all = new Object[(int) size()];
+        int position = byteTier.copyValues(all, 0);
+        position = shortTier.copyValues(all, position);
+        position = intTier.copyValues(all, position);
+        if (!longTier.isEmpty()) {
+            V[] longValues = longTier.values();
+            System.arraycopy(longValues, 0, all, position, longValues.length);
+        }
+
+        Class<?> valuesClass = null;
+        for (Object value : all) {
+            valuesClass = LongMaps.getCommonClass(valuesClass, value);
+        }
+        V[] result = (V[]) Array.newInstance(valuesClass, all.length);
+        System.arraycopy(all, 0, result, 0, all.length);
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public long size() {
+        return byteTier.size + shortTier.size + intTier.size + longTier.size();
+    }
+
+    /**
+     * Removes all key-value mappings from the map.
+     */
+    public void clear() {
+        byteTier.clear();
+        shortTier.clear();
+        intTier.clear();
+        longTier.clear();
+    }
+
+    /**
+     * Returns a cursor over the mappings of the map, see {@link LongMapCursor}.
+     * The tiers are walked from the narrowest one to the widest one.
+     *
+     * @return a new cursor positioned before the first mapping.
+     */
+    public LongMapCursor<V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the number of key-value mappings stored in the specified tier.
+     *
+     * @param tier the tier which size is requested.
+     * @return the number of key-value mappings in the tier.
+     */
+    public long size(Tier tier) {
+        switch (tier) {
+            case BYTE:
+                return byteTier.size;
+            case SHORT:
+                return shortTier.size;
+            case INT:
+                return intTier.size;
+            default:
+                return longTier.size();
+        }
+    }
+
+    /**
+     * Estimates the heap taken by the arrays of the specified tier (not counting the values).
+     *
+     * @param tier the tier which memory usage is requested.
+     * @return the number of bytes taken by the tier.
+     */
+    public long memoryUsage(Tier tier) {
+        switch (tier) {
+            case BYTE:
+                return byteTier.memoryUsage();
+            case SHORT:
+                return shortTier.memoryUsage();
+            case INT:
+                return intTier.memoryUsage();
+            default:
+                return longTier.memoryUsage();
+        }
+    }
+
+    /**
+     * Estimates the heap taken by the arrays of all tiers (not counting the values).
+     *
+     * @return the number of bytes taken by the map structure.
+     */
+    public long memoryUsage() {
+        long result = 0;
+        for (Tier tier : Tier.values()) {
+            result += memoryUsage(tier);
+        }
+        return result;
+    }
+
+
+    private static Tier getTier(long key) {
+        if (key == (byte) key) {
+            return Tier.BYTE;
+        }
+        if (key == (short) key) {
+            return Tier.SHORT;
+        }
+        if (key == (int) key) {
+            return Tier.INT;
+        }
+        return Tier.LONG;
+    }
+
+    /**
+     * Keeps the values of byte keys in an array indexed by the key itself.
+     */
+    private static class ByteTier {
+
+        private Object[] values;
+        private int size;
+
+        private void put(long key, Object value) {
+            if (values == null) {
+                values = new Object[1 << Byte.SIZE];
+            }
+            int index = (int) key & 0xff;
+            if (values[index] == null) {
+                size++;
+            }
+            values[index] = value;
+        }
+
+        @Nullable
+        private Object get(long key) {
+            return (values == null) ? null : values[(int) key & 0xff];
+        }
+
+        @Nullable
+        private Object remove(long key) {
+            if (values == null) {
+                return null;
+            }
+            int index = (int) key & 0xff;
+            Object value = values[index];
+            if (value != null) {
+                values[index] = null;
+                size--;
+                trim();
+            }
+            return value;
+        }
+
+        private void trim() {
+            if (size == 0) {
+                values = null;
+            }
+        }
+
+        private boolean containsValue(Object value) {
+            if (values != null) {
+                for (Object current : values) {
+                    if (current != null && value.equals(current)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private int copyKeys(long[] result, int position) {
+            if (values != null) {
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        result[position++] = (byte) i;
+                    }
+                }
+            }
+            return position;
+        }
+
+        private int copyValues(Object[] result, int position) {
+            if (values != null) {
+                for (Object value : values) {
+                    if (value != null) {
+                        result[position++] = value;
+                    }
+                }
+            }
+            return position;
+        }
+
+        private long memoryUsage() {
+            return LongMaps.getArrayBytes(values == null ? -1 : values.length, LongMaps.REFERENCE_BYTES);
+        }
+
+        private void clear() {
+            values = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * Linear probing hash table for keys narrower than long.
+     * Deletion shifts the following keys back, so the table has no deleted slots.
+     */
+    private abstract static class NarrowTier {
+
+        private Object[] values;            // null for a free slot
+        private int size;
+        private int shift;                  // 64 - log2(capacity)
+
+        private static final int DEFAULT_CAPACITY = 16;
+        private static final double TOP_LOAD_FACTOR = 0.75;
+        private static final double BOTTOM_LOAD_FACTOR = 0.2;
+
+        abstract long getKey(int index);
+
+        abstract void setKey(int index, long key);
+
+        abstract void allocateKeys(int capacity);
+
+        abstract void freeKeys();
+
+        abstract int getKeyBytes();
+
+        private int getIndex(long key) {
+            return (int) ((key * 0x9e3779b97f4a7c15L) >>> shift);
+        }
+
+        private int findIndex(long key) {
+            if (values == null) {
+                return -1;
+            }
+            int mask = values.length - 1;
+            for (int index = getIndex(key); values[index] != null; index = (index + 1) & mask) {
+                if (getKey(index) == key) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        @Nullable
+        private Object get(long key) {
+            int index = findIndex(key);
+            return (index != -1) ? values[index] : null;
+        }
+
+        private void put(long key, Object value) {
+            if (values == null) {
+                allocate(DEFAULT_CAPACITY);
+            } else if (size + 1 > values.length * TOP_LOAD_FACTOR) {
+                resize(values.length << 1);
+            }
+            int mask = values.length - 1;
+            int index = getIndex(key);
+            while (values[index] != null) {
+                if (getKey(index) == key) {
+                    values[index] = value;
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+            setKey(index, key);
+            values[index] = value;
+            size++;
+        }
+
+        @Nullable
+        private Object remove(long key) {
+            int index = findIndex(key);
+            if (index == -1) {
+                return null;
+            }
+            Object value = values[index];
+            removeAt(index);
+            trim();
+            return value;
+        }
+
+        private void removeAt(int index) {
+            shiftBack(index);
+            size--;
+        }
+
+        private void trim() {
+            if (size == 0) {
+                clear();
+            } else if (size < values.length * BOTTOM_LOAD_FACTOR && values.length > DEFAULT_CAPACITY) {
+                resize(values.length >> 1);
+            }
+        }
+
+        private int getFreeIndex() {
+            int index = 0;
+            while (values[index] != null) {
+                index++;
+            }
+            return index;
+        }
+
+        private void shiftBack(int free) {
+            int mask = values.length - 1;
+            int index = free;
+            while (true) {
+                index = (index + 1) & mask;
+                if (values[index] == null) {
+                    break;
+                }
+                int home = getIndex(getKey(index));
+                //the key may fill the free slot if its home is not in (free, index]
+                if (((index - home) & mask) >= ((index - free) & mask)) {
+                    setKey(free, getKey(index));
+                    values[free] = values[index];
+                    free = index;
+                }
+            }
+            values[free] = null;
+        }
+
+        private void allocate(int capacity) {
+            values = new Object[capacity];
+            allocateKeys(capacity);
+            shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = new long[values.length];
+            Object[] oldValues = values;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    oldKeys[i] = getKey(i);
+                }
+            }
+            allocate(capacity);
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private boolean containsValue(Object value) {
+            if (values != null) {
+                for (Object current : values) {
+                    if (current != null && value.equals(current)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private int copyKeys(long[] result, int position) {
+            if (values != null) {
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        result[position++] = getKey(i);
+                    }
+                }
+            }
+            return position;
+        }
+
+        private int copyValues(Object[] result, int position) {
+            if (values != null) {
+                for (Object value : values) {
+                    if (value != null) {
+                        result[position++] = value;
+                    }
+                }
+            }
+            return position;
+        }
+
+        private long memoryUsage() {
+            int capacity = (values == null) ? -1 : values.length;
+            return LongMaps.getArrayBytes(capacity, getKeyBytes())
+                    + LongMaps.getArrayBytes(capacity, LongMaps.REFERENCE_BYTES);
+        }
+
+        private void clear() {
+            values = null;
+            freeKeys();
+            size = 0;
+        }
+    }
+
+    private static class ShortTier extends NarrowTier {
+
+        private short[] keys;
+
+        long getKey(int index) {
+            return keys[index];
+        }
+
+        void setKey(int index, long key) {
+            keys[index] = (short) key;
+        }
+
+        void allocateKeys(int capacity) {
+            keys = new short[capacity];
+        }
+
+        void freeKeys() {
+            keys = null;
+        }
+
+        int getKeyBytes() {
+            return Short.BYTES;
+        }
+    }
+
+    private static class IntTier extends NarrowTier {
+
+        private int[] keys;
+
+        long getKey(int index) {
+            return keys[index];
+        }
+
+        void setKey(int index, long key) {
+            keys[index] = (int) key;
+        }
+
+        void allocateKeys(int capacity) {
+            keys = new int[capacity];
+        }
+
+        void freeKeys() {
+            keys = null;
+        }
+
+        int getKeyBytes() {
+            return Integer.BYTES;
+        }
+    }
+
+    /**
+     * Walks the byte tier, the short and the int tiers, then the long tier with its own cursor.
+     * A narrow tier is walked once round from a free slot: a removal shifts back only keys
+     * which are not visited yet, so the cursor just looks at the slot of the removed key once more.
+     */
+    private class Cursor extends AbstractLongMapCursor<V> {
+
+        private Tier tier = Tier.BYTE;
+        private int index = -1;             // the current slot of the byte tier, or the offset from the start of a narrow tier
+        private int start = -1;             // the free slot the walk of a narrow tier starts after
+        private LongMapCursor<V> longCursor;
+
+        boolean findNext() {
+            if (tier == Tier.BYTE) {
+                if (byteTier.values != null) {
+                    while (++index < byteTier.values.length) {
+                        if (byteTier.values[index] != null) {
+                            setCurrent((byte) index, byteTier.values[index]);
+                            return true;
+                        }
+                    }
+                }
+                nextTier(Tier.SHORT);
+            }
+            if (tier == Tier.SHORT) {
+                if (findNext(shortTier)) {
+                    return true;
+                }
+                nextTier(Tier.INT);
+            }
+            if (tier == Tier.INT) {
+                if (findNext(intTier)) {
+                    return true;
+                }
+                nextTier(Tier.LONG);
+                longCursor = longTier.cursor();
+            }
+            if (longCursor.advance()) {
+                setCurrent(longCursor.key(), longCursor.value());
+                return true;
+            }
+            return false;
+        }
+
+        void removeCurrent() {
+            switch (tier) {
+                case BYTE:
+                    byteTier.values[index] = null;
+                    byteTier.size--;
+                    break;
+                case SHORT:
+                    shortTier.removeAt(getNarrowIndex(shortTier));
+                    index--;
+                    break;
+                case INT:
+                    intTier.removeAt(getNarrowIndex(intTier));
+                    index--;
+                    break;
+                default:
+                    longCursor.remove();
+            }
+        }
+
+        void afterRemovals() {
+            byteTier.trim();
+            if (shortTier.values != null) {
+                shortTier.trim();
+            }
+            if (intTier.values != null) {
+                intTier.trim();
+            }
+        }
+
+        private boolean findNext(NarrowTier narrowTier) {
+            if (narrowTier.values != null) {
+                if (start == -1) {
+                    start = narrowTier.getFreeIndex();
+                }
+                while (++index < narrowTier.values.length) {
+                    int narrowIndex = getNarrowIndex(narrowTier);
+                    if (narrowTier.values[narrowIndex] != null) {
+                        setCurrent(narrowTier.getKey(narrowIndex), narrowTier.values[narrowIndex]);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private int getNarrowIndex(NarrowTier narrowTier) {
+            return (start + index) & (narrowTier.values.length - 1);
+        }
+
+        private void nextTier(Tier next) {
+            tier = next;
+            index = -1;
+            start = -1;
+        }
+    }
+}
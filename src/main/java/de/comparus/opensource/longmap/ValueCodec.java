@@ -0,0 +1,32 @@
+package de.comparus.opensource.longmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the values of a map to bytes and back, for the maps and formats which keep
+ * the values outside of the Java heap. {@link ValueCodecs} has the codecs of common types.
+ */
+public interface ValueCodec<V> {
+
+    /**
+     * @return the maximal number of bytes of an encoded value.
+     */
+    int maxSize();
+
+    /**
+     * Writes the value at the position of the buffer (the buffer has at least {@link #maxSize()} bytes remaining).
+     *
+     * @param value  the value to encode, not {@code null}.
+     * @param buffer the buffer which position is advanced by the encoded bytes.
+     * @throws IllegalArgumentException if the encoded value would be longer than {@link #maxSize()}.
+     */
+    void encode(V value, ByteBuffer buffer) throws IllegalArgumentException;
+
+    /**
+     * Reads the value, which takes all remaining bytes of the buffer.
+     *
+     * @param buffer the buffer positioned at the encoded value and limited by its end.
+     * @return the decoded value.
+     */
+    V decode(ByteBuffer buffer);
+}
@@ -0,0 +1,75 @@
+package de.comparus.opensource.longmap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codecs of the common value types.
+ */
+public final class ValueCodecs {
+
+    /**
+     * Encodes longs in 8 bytes.
+     */
+    public static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        public int maxSize() {
+            return Long.BYTES;
+        }
+
+        public void encode(Long value, ByteBuffer buffer) {
+            buffer.putLong(value);
+        }
+
+        public Long decode(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    /**
+     * Encodes integers in 4 bytes.
+     */
+    public static final ValueCodec<Integer> INTEGER = new ValueCodec<Integer>() {
+        public int maxSize() {
+            return Integer.BYTES;
+        }
+
+        public void encode(Integer value, ByteBuffer buffer) {
+            buffer.putInt(value);
+        }
+
+        public Integer decode(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    private ValueCodecs() {
+    }
+
+    /**
+     * Returns the codec of strings in UTF-8.
+     *
+     * @param maxBytes the maximal length of an encoded string in bytes.
+     * @return the codec which rejects longer strings.
+     */
+    public static ValueCodec<String> utf8(int maxBytes) {
+        return new ValueCodec<String>() {
+            public int maxSize() {
+                return maxBytes;
+            }
+
+            public void encode(String value, ByteBuffer buffer) throws IllegalArgumentException {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > maxBytes) {
+                    throw new IllegalArgumentException("encoded value length = " + bytes.length + " > " + maxBytes);
+                }
+                buffer.put(bytes);
+            }
+
+            public String decode(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
@@ -0,0 +1,480 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+/**
+ * The contract of {@link LongMap} which every implementation has to satisfy.
+ */
+public abstract class AbstractLongMapTest {
+
+    private static final int TEST_OBJECTS_SIZE = 20000;   //the number of key-value mapping on which the map is tested
+
+    protected LongMap<Long> map;
+
+    protected abstract LongMap<Long> createMap();
+
+    @Before
+    public void setUp() {
+        map = createMap();
+    }
+
+    @Test
+    public void testPutReturnsValueAndGetFindsIt() {
+        //WHEN
+        Long actual = map.put(-1, 1L);
+        //THEN
+        assertEquals(Long.valueOf(1), actual);
+        assertEquals(Long.valueOf(1), map.get(-1));
+        assertEquals(1, map.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testPutThrowsExceptionWithNullValue() {
+        //WHEN
+        map.put(0, null);
+    }
+
+    @Test
+    public void testPutOfExistingKeyReplacesValueAndKeepsSize() {
+        //GIVEN
+        map.put(0, 1L);
+        //WHEN
+        map.put(0, 2L);
+        //THEN
+        assertEquals(Long.valueOf(2), map.get(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testGetAndContainsOnEmptyMap() {
+        //THEN
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+        assertFalse(map.containsKey(0));
+        assertFalse(map.containsValue(0L));
+        assertFalse(map.containsValue(null));
+        assertEquals(0, map.keys().length);
+        assertNull(map.values());
+        assertNull(map.remove(0));
+    }
+
+    @Test
+    public void testRemoveReturnsValueAndForgetsKey() {
+        //GIVEN
+        map.put(1, 1L);
+        map.put(2, 2L);
+        //WHEN
+        Long actual = map.remove(1);
+        //THEN
+        assertEquals(Long.valueOf(1), actual);
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(1));
+        assertNull(map.remove(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testClearRemovesAllMappings() {
+        //GIVEN
+        fill(new HashMap<>(), new Random(1));
+        //WHEN
+        map.clear();
+        //THEN
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+        assertNull(map.values());
+        map.put(7, 7L);
+        assertEquals(Long.valueOf(7), map.get(7));
+    }
+
+    @Test
+    public void testManyMappingsAreKeptThroughResizes() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(2);
+        fill(expected, random);
+        //WHEN
+        for (Long key : expected.keySet().toArray(new Long[0])) {
+            if (random.nextBoolean()) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        //THEN
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+            assertTrue(map.containsKey(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testKeysAndValuesReturnAllMappings() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        fill(expected, new Random(3));
+        //WHEN
+        long[] keys = map.keys();
+        Long[] values = map.values();
+        //THEN
+        assertEquals(expected.size(), keys.length);
+        assertEquals(expected.size(), values.length);
+        for (long key : keys) {
+            assertTrue(expected.containsKey(key));
+        }
+        assertTrue(Arrays.asList(values).containsAll(expected.values()));
+    }
+
+    @Test
+    public void testContainsValue() {
+        //GIVEN
+        map.put(Long.MIN_VALUE, 5L);
+        map.put(Long.MAX_VALUE, 6L);
+        //THEN
+        assertTrue(map.containsValue(5L));
+        assertTrue(map.containsValue(6L));
+        assertFalse(map.containsValue(7L));
+    }
+
+    @Test
+    public void testClusteredKeys() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        for (long i = 0; i < TEST_OBJECTS_SIZE; i++) {
+            long key = i << 32;         //keys which differ only in the upper half
+            expected.put(key, i);
+            map.put(key, i);
+        }
+        //THEN
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testCursorVisitsEveryMappingOnce() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        fillMixed(expected, new Random(5));
+        Map<Long, Long> visited = new HashMap<>();
+        //WHEN
+        LongMapCursor<Long> cursor = map.cursor();
+        while (cursor.advance()) {
+            assertNull(visited.put(cursor.key(), cursor.value()));
+        }
+        //THEN
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void testCursorRemovesMappingsSafely() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        fillMixed(expected, new Random(6));
+        //WHEN
+        LongMapCursor<Long> cursor = map.cursor();
+        while (cursor.advance()) {
+            if (cursor.value() % 3 != 0) {
+                assertEquals(expected.remove(cursor.key()), cursor.value());
+                cursor.remove();
+            }
+        }
+        //THEN
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        Map<Long, Long> left = new HashMap<>();
+        map.forEach(left::put);
+        assertEquals(expected, left);
+    }
+
+    @Test
+    public void testCursorRemovesAllMappings() {
+        //GIVEN
+        int size = TEST_OBJECTS_SIZE;
+        for (long key = 0; key < size; key++) {
+            map.put(key, key);
+        }
+        int visited = 0;
+        //WHEN
+        LongMapCursor<Long> cursor = map.cursor();
+        while (cursor.advance()) {
+            cursor.remove();
+            visited++;
+        }
+        //THEN
+        assertEquals(size, visited);
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+        map.put(1, 1L);
+        assertEquals(Long.valueOf(1), map.get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCursorThrowsExceptionOnSecondRemove() {
+        //GIVEN
+        map.put(1, 1L);
+        LongMapCursor<Long> cursor = map.cursor();
+        cursor.advance();
+        cursor.remove();
+        //WHEN
+        cursor.remove();
+    }
+
+    @Test
+    public void testCursorAndForEachOnEmptyMap() {
+        //WHEN
+        LongMapCursor<Long> cursor = map.cursor();
+        //THEN
+        assertFalse(cursor.advance());
+        assertFalse(cursor.advance());
+        map.forEach((key, value) -> fail());
+    }
+
+    @Test
+    public void testForEachVisitsEveryMapping() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        fillMixed(expected, new Random(7));
+        Map<Long, Long> visited = new HashMap<>();
+        //WHEN
+        map.forEach((key, value) -> assertNull(visited.put(key, value)));
+        //THEN
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void testGetOrDefault() {
+        //GIVEN
+        map.put(1, 1L);
+        //THEN
+        assertEquals(Long.valueOf(1), map.getOrDefault(1, 0L));
+        assertEquals(Long.valueOf(0), map.getOrDefault(2, 0L));
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsExistingValue() {
+        //WHEN
+        Long first = map.putIfAbsent(1, 1L);
+        Long second = map.putIfAbsent(1, 2L);
+        //THEN
+        assertNull(first);
+        assertEquals(Long.valueOf(1), second);
+        assertEquals(Long.valueOf(1), map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testReplaceChangesOnlyExistingMapping() {
+        //GIVEN
+        map.put(1, 1L);
+        //WHEN
+        Long replaced = map.replace(1, 2L);
+        Long absent = map.replace(2, 2L);
+        //THEN
+        assertEquals(Long.valueOf(1), replaced);
+        assertNull(absent);
+        assertEquals(Long.valueOf(2), map.get(1));
+        assertFalse(map.containsKey(2));
+    }
+
+    @Test
+    public void testComputeIfAbsentCallsFunctionOnlyForMissingKey() {
+        //GIVEN
+        map.put(1, 1L);
+        //WHEN
+        Long existing = map.computeIfAbsent(1, key -> {
+            throw new AssertionError("called for existing key");
+        });
+        Long computed = map.computeIfAbsent(2, key -> key * 10);
+        Long nothing = map.computeIfAbsent(3, key -> null);
+        //THEN
+        assertEquals(Long.valueOf(1), existing);
+        assertEquals(Long.valueOf(20), computed);
+        assertNull(nothing);
+        assertEquals(Long.valueOf(20), map.get(2));
+        assertFalse(map.containsKey(3));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testComputeAndMergeMatchHashMap() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(8);
+        //WHEN
+        for (int i = 0; i < TEST_OBJECTS_SIZE * 5; i++) {
+            long key = random.nextInt(TEST_OBJECTS_SIZE);
+            if (random.nextBoolean()) {
+                key <<= 32;             //keys which differ only in the upper half
+            }
+            Long delta = (long) random.nextInt(5) - 2;
+            if (random.nextBoolean()) {
+                //a counter which is removed when it comes to zero
+                assertEquals(expected.merge(key, delta, AbstractLongMapTest::sumOrNull),
+                        map.merge(key, delta, AbstractLongMapTest::sumOrNull));
+            } else {
+                assertEquals(expected.compute(key, (k, value) -> sumOrNull(value == null ? 0L : value, delta)),
+                        map.compute(key, (k, value) -> sumOrNull(value == null ? 0L : value, delta)));
+            }
+        }
+        //THEN
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testBatchOperationsMatchHashMap() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(17);
+        fillMixed(expected, random);
+        long[] keys = new long[TEST_OBJECTS_SIZE];
+        Long[] values = new Long[TEST_OBJECTS_SIZE];
+        for (int i = 0; i < TEST_OBJECTS_SIZE; i++) {
+            //new keys, keys of the map and keys repeated in the batch
+            keys[i] = (i % 3 == 0) ? random.nextLong() : (i % 3 == 1) ? (long) i << 32 : keys[i / 2];
+            values[i] = (long) i;
+            expected.put(keys[i], values[i]);
+        }
+        long[] lookedUp = new long[TEST_OBJECTS_SIZE * 2];
+        for (int i = 0; i < lookedUp.length; i++) {
+            lookedUp[i] = (i % 2 == 0) ? keys[i / 2] : random.nextLong();
+        }
+        Long[] found = new Long[lookedUp.length];
+        long[] removed = Arrays.copyOf(lookedUp, TEST_OBJECTS_SIZE);
+        //WHEN
+        map.putAll(keys, values);
+        int foundSize = map.getAll(lookedUp, found);
+        int removedSize = map.removeAll(removed);
+        //THEN
+        int expectedFoundSize = 0;
+        for (int i = 0; i < lookedUp.length; i++) {
+            assertEquals(expected.get(lookedUp[i]), found[i]);
+            expectedFoundSize += (found[i] != null) ? 1 : 0;
+        }
+        assertEquals(expectedFoundSize, foundSize);
+        int expectedRemovedSize = 0;
+        for (long key : removed) {
+            expectedRemovedSize += (expected.remove(key) != null) ? 1 : 0;
+        }
+        assertEquals(expectedRemovedSize, removedSize);
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchOfDifferentLengthsThrowsException() {
+        //WHEN
+        map.getAll(new long[2], new Long[1]);
+    }
+
+    @Test
+    public void testSpliteratorPartsCoverEveryMappingOnce() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        fillMixed(expected, new Random(13));
+        List<LongMapSpliterator<Long>> parts = new ArrayList<>();
+        parts.add(map.spliterator());
+        //WHEN
+        for (int i = 0; i < 6; i++) {
+            List<LongMapSpliterator<Long>> split = new ArrayList<>();
+            for (LongMapSpliterator<Long> part : parts) {
+                LongMapSpliterator<Long> prefix = part.trySplit();
+                if (prefix != null) {
+                    split.add(prefix);
+                }
+                split.add(part);
+            }
+            parts = split;
+        }
+        Map<Long, Long> visited = new HashMap<>();
+        for (LongMapSpliterator<Long> part : parts) {
+            part.tryAdvance((key, value) -> assertNull(visited.put(key, value)));
+            part.forEachRemaining((key, value) -> assertNull(visited.put(key, value)));
+        }
+        //THEN
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void testParallelForEachAndReduceSeeEveryMapping() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        fillMixed(expected, new Random(14));
+        long expectedSum = 0;
+        for (Long value : expected.values()) {
+            expectedSum += value;
+        }
+        LongAdder count = new LongAdder();
+        //WHEN
+        map.parallelForEach((key, value) -> count.increment());
+        long sum = map.parallelReduceToLong(0, (key, value) -> value, Long::sum);
+        Long max = map.parallelReduce(Long.MIN_VALUE, (key, value) -> key, Math::max);
+        //THEN
+        assertEquals(expected.size(), count.sum());
+        assertEquals(expectedSum, sum);
+        assertEquals(Collections.max(expected.keySet()), max);
+    }
+
+    @Test
+    public void testParallelFilterToArrayAndRemoveIf() {
+        //GIVEN
+        Map<Long, Long> expected = new HashMap<>();
+        fillMixed(expected, new Random(15));
+        long[] expectedKeys = expected.keySet().stream()
+                .filter(key -> expected.get(key) % 3 == 0).mapToLong(Long::longValue).sorted().toArray();
+        //WHEN
+        long[] filtered = map.parallelFilterToArray((key, value) -> value % 3 == 0);
+        boolean removed = map.parallelRemoveIf((key, value) -> value % 3 != 0);
+        //THEN
+        Arrays.sort(filtered);
+        assertArrayEquals(expectedKeys, filtered);
+        assertTrue(removed);
+        long[] left = map.keys();
+        Arrays.sort(left);
+        assertArrayEquals(expectedKeys, left);
+        assertFalse(map.parallelRemoveIf((key, value) -> false));
+    }
+
+    private static Long sumOrNull(Long first, Long second) {
+        long sum = first + second;
+        return (sum != 0) ? sum : null;
+    }
+
+        //random keys together with keys which differ only in the upper half (and collide in some maps)
+    private void fillMixed(Map<Long, Long> expected, Random random) {
+        fill(expected, random);
+        for (long i = 0; i < TEST_OBJECTS_SIZE / 4; i++) {
+            long key = i << 32;
+            expected.put(key, i);
+            map.put(key, i);
+        }
+    }
+
+    protected void fill(Map<Long, Long> expected, Random random) {
+        for (int i = 0; i < TEST_OBJECTS_SIZE; i++) {
+            long key = random.nextLong();
+            Long value = random.nextLong();
+            expected.put(key, value);
+            map.put(key, value);
+        }
+    }
+}
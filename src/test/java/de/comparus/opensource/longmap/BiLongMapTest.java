@@ -0,0 +1,141 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BiLongMapTest extends AbstractLongMapTest {
+
+    private static final int OPERATIONS_SIZE = 100_000;     //the number of random operations
+    private static final int KEYS_SIZE = 5_000;             //the range of the keys of random operations
+    private static final int VALUES_SIZE = 500;             //the range of the values of random operations
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new BiLongMap<>();
+    }
+
+    @Test
+    public void testKeysOfReturnsAllKeysOfValue() {
+        //GIVEN
+        BiLongMap<String> bi = new BiLongMap<>();
+        //WHEN
+        bi.put(1, "a");
+        bi.put(2, "b");
+        bi.put(3, "a");
+        bi.put(4, "a");
+        //THEN
+        assertArrayEquals(new long[]{1, 3, 4}, sorted(bi.keysOf("a")));
+        assertArrayEquals(new long[]{2}, bi.keysOf("b"));
+        assertArrayEquals(new long[0], bi.keysOf("c"));
+        assertEquals(2, bi.distinctValues());
+    }
+
+    @Test
+    public void testIndexFollowsReplacedAndRemovedMappings() {
+        //GIVEN
+        BiLongMap<String> bi = new BiLongMap<>();
+        bi.put(1, "a");
+        bi.put(2, "a");
+        //WHEN
+        bi.put(1, "b");
+        bi.remove(2);
+        //THEN
+        assertFalse(bi.containsValue("a"));
+        assertArrayEquals(new long[0], bi.keysOf("a"));
+        assertArrayEquals(new long[]{1}, bi.keysOf("b"));
+        assertEquals(1, bi.distinctValues());
+    }
+
+    @Test
+    public void testExistingMappingsOfWrappedMapAreIndexed() {
+        //GIVEN
+        LongMap<String> flat = new LongMapImpl<>();
+        flat.put(1, "a");
+        flat.put(2, "a");
+        //WHEN
+        BiLongMap<String> bi = new BiLongMap<>(flat);
+        //THEN
+        assertArrayEquals(new long[]{1, 2}, sorted(bi.keysOf("a")));
+    }
+
+    @Test
+    public void testCursorRemovalUpdatesIndex() {
+        //GIVEN
+        BiLongMap<String> bi = new BiLongMap<>();
+        bi.put(1, "a");
+        bi.put(2, "b");
+        //WHEN
+        LongMapCursor<String> cursor = bi.cursor();
+        while (cursor.advance()) {
+            if (cursor.value().equals("a")) {
+                cursor.remove();
+            }
+        }
+        //THEN
+        assertFalse(bi.containsValue("a"));
+        assertTrue(bi.containsValue("b"));
+    }
+
+    @Test
+    public void testRandomOperationsKeepIndexInSync() {
+        //GIVEN
+        Random random = new Random(10);
+        BiLongMap<Long> bi = new BiLongMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        //WHEN
+        for (int i = 0; i < OPERATIONS_SIZE; i++) {
+            long key = random.nextInt(KEYS_SIZE);
+            if (random.nextInt(3) != 0) {
+                Long value = (long) random.nextInt(VALUES_SIZE);
+                bi.put(key, value);
+                expected.put(key, value);
+            } else {
+                assertEquals(expected.remove(key), bi.remove(key));
+            }
+        }
+        //THEN
+        Map<Long, long[]> expectedKeys = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            long[] keys = expectedKeys.getOrDefault(entry.getValue(), new long[0]);
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            keys[keys.length - 1] = entry.getKey();
+            expectedKeys.put(entry.getValue(), keys);
+        }
+        assertEquals(expectedKeys.size(), bi.distinctValues());
+        for (long value = 0; value < VALUES_SIZE; value++) {
+            long[] keys = expectedKeys.getOrDefault(value, new long[0]);
+            assertArrayEquals(sorted(keys), sorted(bi.keysOf(value)));
+            assertEquals(keys.length != 0, bi.containsValue(value));
+        }
+    }
+
+    @Test
+    public void testIndexMemoryIsReportedAndFreed() {
+        //GIVEN
+        BiLongMap<Long> bi = new BiLongMap<>();
+        for (long key = 0; key < 1000; key++) {
+            bi.put(key, key % 10);
+        }
+        //WHEN
+        long filled = bi.indexMemoryUsage();
+        bi.clear();
+        //THEN
+        assertTrue("index: " + filled + " bytes", filled > 1000 * Long.BYTES);
+        assertEquals(0, bi.indexMemoryUsage());
+    }
+
+    private static long[] sorted(long[] keys) {
+        long[] result = keys.clone();
+        Arrays.sort(result);
+        return result;
+    }
+}
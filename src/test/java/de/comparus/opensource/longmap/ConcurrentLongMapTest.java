@@ -0,0 +1,168 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentLongMapTest extends AbstractLongMapTest {
+
+    private static final int THREADS = 8;                   //the number of concurrently updating threads
+    private static final int KEYS_PER_THREAD = 50_000;      //the number of keys owned by one thread
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new ConcurrentLongMap<>();
+    }
+
+    @Test
+    public void testConcurrentWritersAndReadersSeeOwnMappings() throws Exception {
+        //GIVEN
+        ConcurrentLongMap<Long> concurrent = new ConcurrentLongMap<>(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        List<Future<Boolean>> results = new ArrayList<>();
+        //WHEN
+        for (int thread = 0; thread < THREADS; thread++) {
+            long firstKey = (long) thread * KEYS_PER_THREAD;
+            results.add(executor.submit(getWriter(concurrent, firstKey)));
+            results.add(executor.submit(getReader(concurrent, firstKey)));
+        }
+        //THEN
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+        assertEquals(THREADS * KEYS_PER_THREAD / 2, concurrent.size());
+        assertEquals(THREADS * KEYS_PER_THREAD / 2, concurrent.keys().length);
+        for (long key = 0; key < THREADS * KEYS_PER_THREAD; key++) {
+            assertEquals(key % 2 == 0 ? Long.valueOf(key) : null, concurrent.get(key));
+        }
+    }
+
+    @Test
+    public void testConcurrentMergesAreAtomic() throws Exception {
+        //GIVEN
+        ConcurrentLongMap<Long> concurrent = new ConcurrentLongMap<>(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        //WHEN
+        for (int thread = 0; thread < THREADS; thread++) {
+            results.add(executor.submit(() -> {
+                for (long key = 0; key < KEYS_PER_THREAD; key++) {
+                    concurrent.merge(key % 1000, 1L, Long::sum);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        //THEN
+        assertEquals(1000, concurrent.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(Long.valueOf(THREADS * KEYS_PER_THREAD / 1000), concurrent.get(key));
+        }
+    }
+
+    @Test
+    public void testSnapshotIsNotChangedByLaterUpdates() {
+        //GIVEN
+        ConcurrentLongMap<Long> concurrent = new ConcurrentLongMap<>(THREADS);
+        for (long key = 0; key < KEYS_PER_THREAD; key++) {
+            concurrent.put(key, key);
+        }
+        //WHEN
+        LongMap<Long> snapshot = concurrent.snapshot();
+        concurrent.put(0, -1L);
+        concurrent.put(KEYS_PER_THREAD, -1L);
+        concurrent.remove(1);
+        LongMap<Long> cleared = concurrent.snapshot();
+        concurrent.clear();
+        //THEN
+        assertEquals(KEYS_PER_THREAD, snapshot.size());
+        assertEquals(Long.valueOf(0), snapshot.get(0));
+        assertEquals(Long.valueOf(1), snapshot.get(1));
+        assertNull(snapshot.get(KEYS_PER_THREAD));
+        assertEquals(KEYS_PER_THREAD, snapshot.keys().length);
+        assertEquals(KEYS_PER_THREAD, snapshot.values().length);
+        assertEquals(KEYS_PER_THREAD, cleared.size());
+        assertEquals(Long.valueOf(-1), cleared.get(0));
+        assertNull(cleared.get(1));
+        assertTrue(concurrent.isEmpty());
+    }
+
+    @Test
+    public void testSnapshotsTakenDuringWritesAreConsistent() throws Exception {
+        //GIVEN
+        ConcurrentLongMap<Long> concurrent = new ConcurrentLongMap<>(THREADS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        //WHEN
+        Future<?> writer = executor.submit(() -> {
+            for (long key = 0; key < KEYS_PER_THREAD; key++) {
+                concurrent.put(key, key);
+            }
+        });
+        //THEN
+        while (!writer.isDone()) {
+            LongMap<Long> snapshot = concurrent.snapshot();
+            long[] keys = snapshot.keys();
+            Arrays.sort(keys);
+            //the keys are put in order, so a point-in-time view holds exactly a prefix of them
+            assertEquals(snapshot.size(), keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                assertEquals(i, keys[i]);
+            }
+        }
+        writer.get();
+        executor.shutdown();
+        assertArrayEquals(concurrent.keys(), concurrent.snapshot().keys());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPutToSnapshotThrowsException() {
+        //GIVEN
+        ConcurrentLongMap<Long> concurrent = new ConcurrentLongMap<>();
+        //WHEN
+        concurrent.snapshot().put(1, 1L);
+    }
+
+    //puts all keys of its range, then removes the odd ones
+    private static Callable<Boolean> getWriter(LongMap<Long> map, long firstKey) {
+        return () -> {
+            for (long key = firstKey; key < firstKey + KEYS_PER_THREAD; key++) {
+                map.put(key, key);
+            }
+            for (long key = firstKey + 1; key < firstKey + KEYS_PER_THREAD; key += 2) {
+                if (!Long.valueOf(key).equals(map.remove(key))) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    //a key may be absent or mapped to itself, but never mapped to anything else
+    private static Callable<Boolean> getReader(LongMap<Long> map, long firstKey) {
+        return () -> {
+            for (int round = 0; round < 5; round++) {
+                for (long key = firstKey; key < firstKey + KEYS_PER_THREAD; key++) {
+                    Long value = map.get(key);
+                    if (value != null && value != key) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        };
+    }
+}
@@ -0,0 +1,9 @@
+package de.comparus.opensource.longmap;
+
+public class CuckooLongMapTest extends AbstractLongMapTest {
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new CuckooLongMap<>();
+    }
+}
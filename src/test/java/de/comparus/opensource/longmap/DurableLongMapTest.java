@@ -0,0 +1,266 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DurableLongMapTest extends AbstractLongMapTest {
+
+    private static final int TEST_OBJECTS_SIZE = 5_000;     //the number of logged mappings
+    private static final int THREADS_SIZE = 4;
+
+    private Path directory;
+
+    @Override
+    protected LongMap<Long> createMap() {
+        try {
+            directory = Files.createTempDirectory("durable-long-map");
+            return DurableLongMap.builder(directory, ValueCodecs.LONG).open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ((DurableLongMap<Long>) map).close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testReopenedMapReplaysLog() throws IOException {
+        //GIVEN
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            map.put(key, key);
+        }
+        map.clear();
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            map.put(key * 31, key);
+        }
+        map.remove(0);
+        map.merge(31, 100L, Long::sum);
+        map.compute(62, (key, value) -> null);
+        //WHEN
+        reopen();
+        //THEN
+        assertEquals(TEST_OBJECTS_SIZE - 2, map.size());
+        assertNull(map.get(0));
+        assertEquals(Long.valueOf(101), map.get(31));
+        assertNull(map.get(62));
+        for (long key = 3; key < TEST_OBJECTS_SIZE; key++) {
+            assertEquals(Long.valueOf(key), map.get(key * 31));
+        }
+    }
+
+    @Test
+    public void testTornRecordAtEndOfLogIsDropped() throws IOException {
+        //GIVEN
+        map.put(1, 1L);
+        map.put(2, 2L);
+        ((DurableLongMap<Long>) map).close();
+        Path log = directory.resolve("log.0");
+        long validBytes = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 3, 0, 0}));
+        }
+        //WHEN
+        map = DurableLongMap.builder(directory, ValueCodecs.LONG).open();
+        //THEN
+        assertEquals(validBytes, Files.size(log));
+        assertEquals(2, map.size());
+        map.put(3, 3L);
+        reopen();
+        assertEquals(Long.valueOf(3), map.get(3));
+    }
+
+    @Test
+    public void testTornLogFollowedByEmptyLogIsRecovered() throws IOException {
+        //GIVEN
+        map.put(1, 1L);
+        map.put(2, 2L);
+        ((DurableLongMap<Long>) map).close();
+        //the crash has torn the last record of log.0 after log.1 has been created
+        Path log = directory.resolve("log.0");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        Files.createFile(directory.resolve("log.1"));
+        //WHEN
+        map = DurableLongMap.builder(directory, ValueCodecs.LONG).open();
+        //THEN
+        assertEquals(1, map.size());
+        assertEquals(Long.valueOf(1), map.get(1));
+        map.put(3, 3L);
+        reopen();
+        assertEquals(2, map.size());
+        assertEquals(Long.valueOf(3), map.get(3));
+    }
+
+    @Test
+    public void testLogIsCompactedIntoSnapshot() throws IOException {
+        //GIVEN
+        ((DurableLongMap<Long>) map).close();
+        DurableLongMap<Long> durable = DurableLongMap.builder(directory, ValueCodecs.LONG)
+                .compactionThreshold(4096)
+                .open();
+        map = durable;
+        //WHEN
+        for (int round = 0; round < 10; round++) {
+            for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+                durable.put(key, key + round);
+            }
+        }
+        durable.compact();
+        //THEN
+        assertEquals(0, durable.logBytes());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        reopen();
+        assertEquals(TEST_OBJECTS_SIZE, map.size());
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            assertEquals(Long.valueOf(key + 9), map.get(key));
+        }
+    }
+
+    @Test
+    public void testSyncOnWriteMakesConcurrentWritesDurable() throws Exception {
+        //GIVEN
+        ((DurableLongMap<Long>) map).close();
+        DurableLongMap<Long> durable = DurableLongMap.builder(directory, ValueCodecs.LONG)
+                .syncOnWrite(true)
+                .open();
+        map = durable;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS_SIZE);
+        List<Future<?>> writers = new ArrayList<>();
+        //WHEN
+        for (int thread = 0; thread < THREADS_SIZE; thread++) {
+            long firstKey = (long) thread * TEST_OBJECTS_SIZE;
+            writers.add(executor.submit(() -> {
+                for (long key = firstKey; key < firstKey + TEST_OBJECTS_SIZE; key++) {
+                    durable.put(key, key);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+        //THEN
+        try (DurableLongMap<Long> recovered = DurableLongMap.builder(directory, ValueCodecs.LONG).open()) {
+            assertEquals(THREADS_SIZE * TEST_OBJECTS_SIZE, recovered.size());
+        }
+    }
+
+    @Test
+    public void testWritesDuringCompactionsAreDurable() throws Exception {
+        //GIVEN
+        ((DurableLongMap<Long>) map).close();
+        DurableLongMap<Long> durable = DurableLongMap.builder(directory, ValueCodecs.LONG)
+                .syncOnWrite(true)
+                .compactionThreshold(4096)
+                .open();
+        map = durable;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS_SIZE);
+        List<Future<?>> writers = new ArrayList<>();
+        //WHEN
+        for (int thread = 0; thread < THREADS_SIZE; thread++) {
+            long firstKey = (long) thread * TEST_OBJECTS_SIZE;
+            writers.add(executor.submit(() -> {
+                for (long key = firstKey; key < firstKey + TEST_OBJECTS_SIZE; key++) {
+                    durable.put(key, key);
+                    if (key % 3 == 0) {
+                        durable.remove(key);
+                    }
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+        reopen();
+        //THEN
+        long expectedSize = 0;
+        for (long key = 0; key < THREADS_SIZE * TEST_OBJECTS_SIZE; key++) {
+            assertEquals(key % 3 != 0 ? Long.valueOf(key) : null, map.get(key));
+            expectedSize += (key % 3 != 0) ? 1 : 0;
+        }
+        assertEquals(expectedSize, map.size());
+    }
+
+    @Test
+    public void testValueWhichCanNotBeEncodedDoesNotChangeMap() throws IOException {
+        //GIVEN
+        Path strings = directory.resolve("strings");
+        try (DurableLongMap<String> durable = DurableLongMap.builder(strings, ValueCodecs.utf8(4)).open()) {
+            durable.put(1, "abc");
+            //WHEN
+            try {
+                durable.put(1, "abcdef");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+            //THEN
+            assertEquals("abc", durable.get(1));
+            durable.sync();
+        }
+        try (DurableLongMap<String> durable = DurableLongMap.builder(strings, ValueCodecs.utf8(4)).open()) {
+            assertEquals("abc", durable.get(1));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPutToClosedMapThrowsException() throws IOException {
+        //GIVEN
+        ((DurableLongMap<Long>) map).close();
+        //WHEN
+        map.put(1, 1L);
+    }
+
+    @Test
+    public void testCursorRemovalsAreLogged() throws IOException {
+        //GIVEN
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            map.put(key, key);
+        }
+        //WHEN
+        LongMapCursor<Long> cursor = map.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() % 2 == 0) {
+                cursor.remove();
+            }
+        }
+        reopen();
+        //THEN
+        assertEquals(TEST_OBJECTS_SIZE / 2, map.size());
+        assertFalse(map.containsKey(0));
+        assertTrue(map.containsKey(1));
+    }
+
+    private void reopen() throws IOException {
+        ((DurableLongMap<Long>) map).close();
+        map = DurableLongMap.builder(directory, ValueCodecs.LONG).open();
+    }
+}
@@ -0,0 +1,189 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrozenLongMapTest {
+
+    private static final int TEST_OBJECTS_SIZE = 100_000;   //the number of frozen mappings
+    private static final int THREADS_SIZE = 4;
+
+    @Test
+    public void testFrozenMapHasAllMappingsAndNoOthers() {
+        //GIVEN
+        Random random = new Random(16);
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < TEST_OBJECTS_SIZE; i++) {
+            long key = (i % 2 == 0) ? random.nextLong() : i;
+            impl.put(key, (long) i);
+            expected.put(key, (long) i);
+        }
+        //WHEN
+        FrozenLongMap<Long> frozen = impl.freeze();
+        //THEN
+        assertEquals(expected.size(), frozen.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), frozen.get(entry.getKey()));
+        }
+        for (int i = 0; i < TEST_OBJECTS_SIZE; i++) {
+            long key = random.nextLong();
+            assertEquals(expected.containsKey(key), frozen.containsKey(key));
+        }
+        long[] keys = frozen.keys();
+        long[] expectedKeys = impl.keys();
+        Arrays.sort(keys);
+        Arrays.sort(expectedKeys);
+        assertArrayEquals(expectedKeys, keys);
+        assertEquals(impl.parallelReduceToLong(0, (key, value) -> value, Long::sum),
+                frozen.parallelReduceToLong(0, (key, value) -> value, Long::sum));
+    }
+
+    @Test
+    public void testFrozenMapIsIndependentOfSource() {
+        //GIVEN
+        LongMapImpl<String> impl = new LongMapImpl<>();
+        impl.put(1, "a");
+        FrozenLongMap<String> frozen = impl.freeze();
+        //WHEN
+        impl.put(2, "b");
+        impl.remove(1);
+        //THEN
+        assertEquals("a", frozen.get(1));
+        assertNull(frozen.get(2));
+        assertEquals(1, frozen.size());
+    }
+
+    @Test
+    public void testEmptyFrozenMap() {
+        //WHEN
+        FrozenLongMap<Long> frozen = new LongMapImpl<Long>().freeze();
+        //THEN
+        assertTrue(frozen.isEmpty());
+        assertNull(frozen.get(0));
+        assertFalse(frozen.containsKey(0));
+        assertNull(frozen.values());
+        assertArrayEquals(new long[0], frozen.keys());
+        assertFalse(frozen.cursor().advance());
+    }
+
+    @Test(timeout = 5000)
+    public void testFrozenCacheHasOnlyLiveEntries() {
+        //GIVEN
+        long[] time = {0};
+        LongCache<Long> cache = LongCache.<Long>builder()
+                .expireAfterWrite(10, TimeUnit.NANOSECONDS)
+                .ticker(() -> time[0])
+                .build();
+        cache.put(1, 1L);
+        cache.put(2, 2L);
+        time[0] = 5;
+        cache.put(3, 3L);
+        time[0] = 12;
+        //WHEN
+        FrozenLongMap<Long> frozen = new FrozenLongMap<>(cache);
+        //THEN
+        assertEquals(3, cache.size());
+        assertEquals(1, frozen.size());
+        assertEquals(Long.valueOf(3), frozen.get(3));
+        assertNull(frozen.get(0));
+        assertFalse(frozen.containsKey(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRepeatedKeyOfCursorIsRejected() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<Long>() {
+            @Override
+            public long[] keys() {
+                return new long[]{1, 2, 1};
+            }
+
+            @Override
+            public LongMapCursor<Long> cursor() {
+                return new KeysCursor<>(this);
+            }
+        };
+        impl.put(1, 1L);
+        impl.put(2, 2L);
+        //WHEN
+        impl.freeze();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPutThrowsException() {
+        //GIVEN
+        FrozenLongMap<Long> frozen = new LongMapImpl<Long>().freeze();
+        //WHEN
+        frozen.put(1, 1L);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCursorRemoveThrowsException() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        impl.put(1, 1L);
+        LongMapCursor<Long> cursor = impl.freeze().cursor();
+        cursor.advance();
+        //WHEN
+        cursor.remove();
+    }
+
+    @Test
+    public void testFrozenMapIsSmallerThanSource() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            impl.put(key * 7, key);
+        }
+        //WHEN
+        FrozenLongMap<Long> frozen = impl.freeze();
+        //THEN
+        assertTrue("FrozenLongMap: " + frozen.memoryUsage() + " bytes, LongMapImpl: " + impl.memoryUsage() + " bytes",
+                frozen.memoryUsage() < impl.memoryUsage());
+    }
+
+    @Test
+    public void testFrozenMapIsReadByThreadsWithoutSynchronization() throws Exception {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            impl.put(key, key);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS_SIZE);
+        try {
+            //WHEN
+            Future<FrozenLongMap<Long>> published = executor.submit(impl::freeze);
+            FrozenLongMap<Long> frozen = published.get();
+            Future<?>[] readers = new Future<?>[THREADS_SIZE];
+            for (int i = 0; i < THREADS_SIZE; i++) {
+                readers[i] = executor.submit(() -> {
+                    for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+                        assertEquals(Long.valueOf(key), frozen.get(key));
+                    }
+                });
+            }
+            //THEN
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
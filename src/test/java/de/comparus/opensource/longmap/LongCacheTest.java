@@ -0,0 +1,191 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongCacheTest extends AbstractLongMapTest {
+
+    private static final int OPERATIONS_SIZE = 100_000;     //the number of random operations
+    private static final int KEYS_SIZE = 2_000;             //the range of the keys of random operations
+    private static final int CACHE_SIZE = 500;              //the maximum size of the cache of random operations
+
+    private long time;
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return LongCache.<Long>builder().build();
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsedEntry() {
+        //GIVEN
+        LongCache<String> cache = LongCache.<String>builder().maximumSize(2).build();
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+        //WHEN
+        cache.put(3, "c");
+        //THEN
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsKey(1));
+        assertFalse(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testClockGivesSecondChanceToReferencedEntry() {
+        //GIVEN
+        LongCache<String> cache = LongCache.<String>builder()
+                .maximumSize(3)
+                .eviction(LongCache.EvictionPolicy.CLOCK)
+                .build();
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        cache.get(1);
+        //WHEN
+        cache.put(4, "d");
+        //THEN
+        assertTrue(cache.containsKey(1));
+        assertFalse(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+        assertTrue(cache.containsKey(4));
+    }
+
+    @Test
+    public void testMaximumWeightEvictsUntilWeightFits() {
+        //GIVEN
+        LongCache<String> cache = LongCache.<String>builder().maximumWeight(10, String::length).build();
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        //WHEN
+        cache.put(3, "cccccc");
+        //THEN
+        assertEquals(10, cache.weightedSize());
+        assertFalse(cache.containsKey(1));
+        assertTrue(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+    }
+
+    @Test
+    public void testEntriesExpireAfterDefaultAndOwnTimeToLive() {
+        //GIVEN
+        LongCache<String> cache = LongCache.<String>builder()
+                .expireAfterWrite(10, TimeUnit.NANOSECONDS)
+                .ticker(() -> time)
+                .build();
+        cache.put(1, "a");
+        cache.put(2, "b", 20, TimeUnit.NANOSECONDS);
+        //WHEN
+        time = 15;
+        //THEN
+        assertNull(cache.get(1));
+        assertEquals("b", cache.get(2));
+        assertArrayEquals(new long[]{2}, cache.keys());
+        time = 20;
+        assertFalse(cache.containsKey(2));
+        cache.cleanUp();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    public void testListenerIsNotifiedWithCauses() {
+        //GIVEN
+        List<String> removals = new ArrayList<>();
+        LongCache<String> cache = LongCache.<String>builder()
+                .maximumSize(2)
+                .removalListener((key, value, cause) -> removals.add(key + "=" + value + " " + cause))
+                .build();
+        //WHEN
+        cache.put(1, "a");
+        cache.put(1, "b");
+        cache.put(2, "c");
+        cache.put(3, "d");
+        cache.remove(2);
+        cache.clear();
+        //THEN
+        List<String> expected = new ArrayList<>();
+        expected.add("1=a REPLACED");
+        expected.add("1=b SIZE");
+        expected.add("2=c EXPLICIT");
+        expected.add("3=d EXPLICIT");
+        assertEquals(expected, removals);
+    }
+
+    @Test
+    public void testHitsAndMissesAreCounted() {
+        //GIVEN
+        LongCache<String> cache = LongCache.<String>builder().build();
+        cache.put(1, "a");
+        //WHEN
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        //THEN
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testRandomOperationsFollowLruOrder() {
+        //GIVEN
+        Random random = new Random(12);
+        LongCache<Long> cache = LongCache.<Long>builder().maximumSize(CACHE_SIZE).build();
+        Map<Long, Long> expected = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+        //WHEN
+        for (int i = 0; i < OPERATIONS_SIZE; i++) {
+            long key = random.nextInt(KEYS_SIZE);
+            int operation = random.nextInt(4);
+            if (operation < 2) {
+                assertEquals(expected.get(key), cache.get(key));
+            } else if (operation == 2) {
+                cache.put(key, (long) i);
+                expected.put(key, (long) i);
+            } else {
+                assertEquals(expected.remove(key), cache.remove(key));
+            }
+        }
+        //THEN
+        assertEquals(expected.size(), cache.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertTrue(cache.containsKey(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testEvictionAllocatesNoNodes() {
+        //GIVEN
+        LongCache<Long> cache = LongCache.<Long>builder().maximumSize(CACHE_SIZE).build();
+        for (long key = 0; key < CACHE_SIZE; key++) {
+            cache.put(key, key);
+        }
+        long filled = cache.memoryUsage();
+        //WHEN
+        for (long key = CACHE_SIZE; key < 100 * CACHE_SIZE; key++) {
+            cache.put(key, key);
+        }
+        //THEN
+        assertEquals(filled, cache.memoryUsage());
+        assertEquals(CACHE_SIZE, cache.size());
+    }
+}
@@ -0,0 +1,49 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The cases of {@link LongDoubleMapImpl} which differ from the other maps with primitive values,
+ * the common ones are in {@link PrimitiveLongMapTest}.
+ */
+public class LongDoubleMapImplTest {
+
+    private static final double NO_VALUE = -1.0;
+
+    @Test
+    public void testContainsValueFindsNaN() {
+        //GIVEN
+        LongDoubleMap map = new LongDoubleMapImpl(NO_VALUE);
+        //WHEN
+        map.put(1, Double.NaN);
+        //THEN
+        assertTrue(map.containsValue(Double.NaN));
+        assertEquals(Double.NaN, map.get(1), 0);
+    }
+
+    @Test
+    public void testContainsValueTellsNegativeZeroFromZero() {
+        //GIVEN
+        LongDoubleMap map = new LongDoubleMapImpl(NO_VALUE);
+        //WHEN
+        map.put(1, -0.0);
+        //THEN
+        assertTrue(map.containsValue(-0.0));
+        assertFalse(map.containsValue(0.0));
+    }
+
+    @Test
+    public void testAddToKeepsFraction() {
+        //GIVEN
+        LongDoubleMap map = new LongDoubleMapImpl();
+        //WHEN
+        map.addTo(7, 0.25);
+        map.addTo(7, 0.5);
+        //THEN
+        assertEquals(0.75, map.get(7), 0);
+    }
+}
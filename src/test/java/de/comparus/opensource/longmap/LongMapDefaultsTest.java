@@ -0,0 +1,66 @@
+package de.comparus.opensource.longmap;
+
+/**
+ * The contract of {@link LongMap} on its default methods: the tested map implements only
+ * the abstract methods of the interface, so {@link LongMap#cursor()}, {@code forEach} and the rest
+ * are the default ones.
+ */
+public class LongMapDefaultsTest extends AbstractLongMapTest {
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new MinimalLongMap<>(new LongMapImpl<>());
+    }
+
+    /**
+     * Delegates the abstract methods of {@link LongMap} to another map.
+     */
+    private static class MinimalLongMap<V> implements LongMap<V> {
+
+        private final LongMap<V> map;
+
+        private MinimalLongMap(LongMap<V> map) {
+            this.map = map;
+        }
+
+        public V put(long key, V value) {
+            return map.put(key, value);
+        }
+
+        public V get(long key) {
+            return map.get(key);
+        }
+
+        public V remove(long key) {
+            return map.remove(key);
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public boolean containsKey(long key) {
+            return map.containsKey(key);
+        }
+
+        public boolean containsValue(V value) {
+            return map.containsValue(value);
+        }
+
+        public long[] keys() {
+            return map.keys();
+        }
+
+        public V[] values() {
+            return map.values();
+        }
+
+        public long size() {
+            return map.size();
+        }
+
+        public void clear() {
+            map.clear();
+        }
+    }
+}
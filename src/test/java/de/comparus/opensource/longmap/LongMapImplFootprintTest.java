@@ -0,0 +1,41 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The flat layout keeps a mapping in a slot of the key array and a slot of the value array,
+ * so the map structure takes Long.BYTES + REFERENCE_BYTES per slot of the table and of the reserve
+ * (the smallest power of two, at least 8, which is at most half full), and nothing per mapping.
+ */
+public class LongMapImplFootprintTest {
+
+    private static final int TEST_OBJECTS_SIZE = 1_000_000;   //the number of key-value mapping which footprint is checked
+
+    @Test
+    public void testStructureTakesKeyAndReferencePerSlot() {
+        //GIVEN
+        Random random = new Random(1);
+        Long value = 0L;    //one shared value, so only the map structure itself is counted
+        LongMapImpl<Long> map = new LongMapImpl<>();
+        //WHEN
+        while (map.size() < TEST_OBJECTS_SIZE) {
+            map.put(random.nextLong(), value);
+        }
+        //THEN
+        int reserveLength = 8;
+        while (map.getReserveSize() * 2 > reserveLength) {
+            reserveLength <<= 1;
+        }
+        assertEquals(getFlatLayoutBytes(map.getStats().getCapacity()) + getFlatLayoutBytes(reserveLength),
+                map.memoryUsage());
+    }
+
+    private static long getFlatLayoutBytes(long capacity) {      //the key array and the value array
+        return LongMaps.getArrayBytes((int) capacity, Long.BYTES)
+                + LongMaps.getArrayBytes((int) capacity, LongMaps.REFERENCE_BYTES);
+    }
+}
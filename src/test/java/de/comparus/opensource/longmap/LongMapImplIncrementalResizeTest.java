@@ -0,0 +1,140 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongMapImplIncrementalResizeTest extends AbstractLongMapTest {
+
+    private static final int RANDOM_OBJECTS_SIZE = 10_000;     //the number of keys put before the resize
+    private static final int MIGRATION_STEP = 64;              //the slots migrated by one operation
+    private static final int MIGRATING_OPERATIONS_SIZE = 50;   //the operations which surely end before the migration
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new LongMapImpl<>(true);
+    }
+
+    @Test
+    public void testEveryOperationMigratesAtMostOneStep() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>(true);
+        Random random = new Random(3);
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            impl.put(random.nextLong(), 0L);
+        }
+        impl.setStatsEnabled(true);
+        //WHEN
+        long oldCapacity = 0;
+        while (impl.getPendingMigrationSlots() == 0) {
+            oldCapacity = impl.getStats().getCapacity();
+            impl.put(random.nextLong(), 0L);
+        }
+        //THEN
+        assertEquals(1, impl.getStats().getResizes());
+        assertTrue(impl.getPendingMigrationSlots() >= oldCapacity - MIGRATION_STEP);
+        while (impl.getPendingMigrationSlots() > 0) {
+            int pending = impl.getPendingMigrationSlots();
+            impl.put(random.nextLong(), 0L);
+            assertTrue(pending - impl.getPendingMigrationSlots() <= MIGRATION_STEP);
+        }
+    }
+
+    @Test
+    public void testOperationsDuringMigrationSeeBothGenerations() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>(true);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(4);
+        long[] keys = fillUntilMigration(impl, expected, random);
+        //WHEN
+        for (int i = 0; i < MIGRATING_OPERATIONS_SIZE; i++) {
+            long key = keys[random.nextInt(keys.length)];
+            long missingKey = random.nextLong();
+            //THEN
+            assertEquals(expected.get(key), impl.get(key));
+            assertTrue(impl.containsKey(key) == expected.containsKey(key));
+            assertFalse(impl.containsKey(missingKey));
+            if (i % 3 == 0) {
+                assertEquals(expected.remove(key), impl.remove(key));
+            } else if (i % 3 == 1) {
+                assertEquals(Long.valueOf(i), impl.put(key, (long) i));
+                expected.put(key, (long) i);
+            } else {
+                impl.put(missingKey, (long) i);
+                expected.put(missingKey, (long) i);
+            }
+            assertEquals(expected.size(), impl.size());
+        }
+        assertTrue(impl.getPendingMigrationSlots() > 0);
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), impl.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testCursorDuringMigrationVisitsEveryKeyOnce() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>(true);
+        Map<Long, Long> expected = new HashMap<>();
+        fillUntilMigration(impl, expected, new Random(5));
+        Set<Long> visited = new HashSet<>();
+        //WHEN
+        LongMapCursor<Long> cursor = impl.cursor();
+        while (cursor.advance()) {
+            //THEN
+            assertTrue(visited.add(cursor.key()));
+            assertEquals(expected.get(cursor.key()), cursor.value());
+        }
+        assertEquals(expected.keySet(), visited);
+        assertTrue(impl.getPendingMigrationSlots() > 0);
+    }
+
+    @Test
+    public void testCursorRemovesInBothGenerationsWithoutMigrating() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>(true);
+        Map<Long, Long> expected = new HashMap<>();
+        fillUntilMigration(impl, expected, new Random(6));
+        int pending = impl.getPendingMigrationSlots();
+        //WHEN
+        LongMapCursor<Long> cursor = impl.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() % 2 == 0) {
+                assertEquals(expected.remove(cursor.key()), cursor.value());
+                cursor.remove();
+            }
+            assertEquals(pending, impl.getPendingMigrationSlots());
+        }
+        //THEN
+        assertEquals(expected.size(), impl.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), impl.get(entry.getKey()));
+        }
+        Set<Long> visited = new HashSet<>();
+        impl.forEach((key, value) -> assertTrue(visited.add(key)));
+        assertEquals(expected.keySet(), visited);
+    }
+
+    /**
+     * Puts random keys until an incremental resize starts.
+     *
+     * @return the keys put.
+     */
+    private static long[] fillUntilMigration(LongMapImpl<Long> impl, Map<Long, Long> expected, Random random) {
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE || impl.getPendingMigrationSlots() == 0; i++) {
+            long key = random.nextLong();
+            impl.put(key, key);
+            expected.put(key, key);
+        }
+        return expected.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+}
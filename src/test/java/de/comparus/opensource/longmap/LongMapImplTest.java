@@ -0,0 +1,510 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongMapImplTest extends AbstractLongMapTest {
+
+    private static final int RANDOM_OBJECTS_SIZE = 10_000;     //the number of keys which find their slots
+    private static final int COLLIDING_OBJECTS_SIZE = 500;     //the number of keys with the same hash
+    private static final long DENSE_ORIGIN = Long.MAX_VALUE - RANDOM_OBJECTS_SIZE + 1;    //the first of dense keys
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new LongMapImpl<>();
+    }
+
+    @Test
+    public void testCollidingKeysOverflowToReserveAndAreCounted() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        Random random = new Random(9);
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            impl.put(random.nextInt(Integer.MAX_VALUE), 0L);
+        }
+        long randomSize = impl.size();
+        //WHEN
+        for (long i = 1; i <= COLLIDING_OBJECTS_SIZE; i++) {
+            impl.put(getCollidingKey(i), i);
+        }
+        long lookups = impl.getReserveLookupCount();
+        long hits = impl.getReserveHitCount();
+        //THEN
+        assertTrue(impl.getReserveSize() >= COLLIDING_OBJECTS_SIZE - 10);
+        assertTrue(impl.getReserveInsertCount() >= impl.getReserveSize());
+        for (long i = 1; i <= COLLIDING_OBJECTS_SIZE; i++) {
+            assertEquals(Long.valueOf(i), impl.get(getCollidingKey(i)));
+        }
+        assertNull(impl.get(getCollidingKey(COLLIDING_OBJECTS_SIZE + 1)));
+        assertTrue(impl.getReserveHitCount() - hits >= COLLIDING_OBJECTS_SIZE - 10);
+        assertEquals(impl.getReserveHitCount() - hits + 1, impl.getReserveLookupCount() - lookups);
+        int reserveSize = impl.getReserveSize();
+        for (long i = 1; i <= COLLIDING_OBJECTS_SIZE; i++) {
+            assertEquals(Long.valueOf(i), impl.remove(getCollidingKey(i)));
+        }
+        assertTrue(reserveSize - impl.getReserveSize() >= COLLIDING_OBJECTS_SIZE - 10);
+        assertEquals(randomSize, impl.size());
+    }
+
+    @Test
+    public void testSnapshotRestoresAllMappings() throws IOException {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        Random random = new Random(11);
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            impl.put(random.nextLong(), (long) i);
+        }
+        for (long i = 1; i <= COLLIDING_OBJECTS_SIZE; i++) {
+            impl.put(getCollidingKey(i), i);
+        }
+        //WHEN
+        LongMapImpl<Long> plain = readFrom(writeTo(impl, false));
+        LongMapImpl<Long> sorted = readFrom(writeTo(impl, true));
+        //THEN
+        assertEquals(impl.size(), plain.size());
+        assertEquals(impl.size(), sorted.size());
+        for (long key : impl.keys()) {
+            assertEquals(impl.get(key), plain.get(key));
+            assertEquals(impl.get(key), sorted.get(key));
+        }
+    }
+
+    @Test
+    public void testSnapshotOfSortedDenseKeysIsSmaller() throws IOException {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            impl.put(key * 3, key);
+        }
+        //WHEN
+        int plainBytes = writeTo(impl, false).length;
+        int sortedBytes = writeTo(impl, true).length;
+        //THEN
+        assertTrue("plain: " + plainBytes + " bytes, sorted keys: " + sortedBytes + " bytes",
+                sortedBytes < plainBytes * 2 / 3);
+    }
+
+    @Test
+    public void testSnapshotOfEmptyMap() throws IOException {
+        //WHEN
+        LongMapImpl<Long> restored = readFrom(writeTo(new LongMapImpl<>(), false));
+        //THEN
+        assertTrue(restored.isEmpty());
+        assertArrayEquals(new long[0], restored.keys());
+        assertEquals(0, restored.memoryUsage());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadThrowsExceptionWithDamagedSnapshot() throws IOException {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < 100; key++) {
+            impl.put(key, key);
+        }
+        byte[] snapshot = writeTo(impl, false);
+        snapshot[snapshot.length / 2] ^= 1;
+        //WHEN
+        readFrom(snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadThrowsExceptionWithDamagedChunkCount() throws IOException {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < 100; key++) {
+            impl.put(key, key);
+        }
+        ByteBuffer snapshot = ByteBuffer.wrap(writeTo(impl, false));
+        int chunk = LongMapSnapshot.HEADER_BYTES;
+        snapshot.putInt(chunk, snapshot.getInt(chunk) + 5);
+        //WHEN
+        readFrom(snapshot.array());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadThrowsExceptionWithWrongChunkCountOfValidChecksum() throws IOException {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < 100; key++) {
+            impl.put(key, key);
+        }
+        ByteBuffer snapshot = ByteBuffer.wrap(writeTo(impl, false));
+        int chunk = LongMapSnapshot.HEADER_BYTES;
+        int end = chunk + LongMapSnapshot.CHUNK_HEADER_BYTES + snapshot.getInt(chunk + 4);
+        snapshot.putInt(chunk, snapshot.getInt(chunk) + 5);
+        CRC32 crc = new CRC32();
+        crc.update(snapshot.array(), chunk, end - chunk);
+        snapshot.putInt(end, (int) crc.getValue());
+        //WHEN
+        readFrom(snapshot.array());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadThrowsExceptionWithTruncatedSnapshot() throws IOException {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        impl.put(1, 1L);
+        byte[] snapshot = writeTo(impl, false);
+        //WHEN
+        readFrom(Arrays.copyOf(snapshot, snapshot.length - 1));
+    }
+
+    @Test
+    public void testStatsCountProbesAndResizesOnlyWhenEnabled() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        Random random = new Random(5);
+        long[] keys = new long[2 * RANDOM_OBJECTS_SIZE];   //sparse keys, so the map stays hashed
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            impl.put(keys[i], keys[i]);
+        }
+        LongMapStats disabled = impl.getStats();
+        //WHEN
+        impl.setStatsEnabled(true);
+        for (long key : keys) {
+            impl.put(key, key);
+        }
+        for (long key : keys) {
+            impl.get(key);
+        }
+        LongMapStats enabled = impl.getStats();
+        //THEN
+        assertEquals(0, disabled.getLookups());
+        assertEquals(0, disabled.getResizes());
+        assertEquals(RANDOM_OBJECTS_SIZE, disabled.getSize());
+        assertTrue(enabled.getLookups() >= 4 * RANDOM_OBJECTS_SIZE);
+        assertTrue(enabled.getMeanProbeLength() > 1);
+        assertTrue(enabled.getProbeLengthHistogram()[1] > 0);
+        assertTrue(enabled.getResizes() >= 1);
+        assertTrue(enabled.getResizeTimeNanos() >= enabled.getMaxResizeTimeNanos());
+        assertEquals(impl.memoryUsage(), enabled.getMemoryUsage());
+        assertEquals(2 * RANDOM_OBJECTS_SIZE, enabled.getSize());
+        assertTrue(enabled.getCapacity() >= enabled.getSize());
+        assertEquals(10, enabled.getProbeLengthHistogram().length);
+        assertArrayEquals(new long[10], disabled.getProbeLengthHistogram());
+    }
+
+    @Test
+    public void testStatsCountTombstonesUntilReused() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < 100; key++) {
+            impl.put(key, key);
+        }
+        //WHEN
+        for (long key = 0; key < 10; key++) {
+            impl.remove(key);
+        }
+        long removed = impl.getStats().getTombstones();
+        for (long key = 0; key < 10; key++) {
+            impl.put(key, key);
+        }
+        //THEN
+        assertEquals(10, removed);
+        assertTrue(impl.getStats().getTombstones() < removed);
+        assertEquals(100, impl.getStats().getSize());
+    }
+
+    @Test
+    public void testStatsAreRegisteredAsMXBean() throws JMException {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        impl.put(1, 1L);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        //WHEN
+        ObjectName name = impl.registerMBean("test");
+        try {
+            //THEN
+            assertEquals(1L, server.getAttribute(name, "Size"));
+            assertEquals(impl.memoryUsage(), server.getAttribute(name, "MemoryUsage"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testPresizedMapDoesNotResize() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>(RANDOM_OBJECTS_SIZE);
+        impl.setStatsEnabled(true);
+        //WHEN
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            impl.put(key, key);
+        }
+        //THEN
+        assertEquals(0, impl.getStats().getResizes());
+        assertEquals(RANDOM_OBJECTS_SIZE, impl.size());
+    }
+
+    @Test
+    public void testPutAllResizesTableOnce() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        impl.setStatsEnabled(true);
+        Random random = new Random(21);
+        long[] keys = new long[RANDOM_OBJECTS_SIZE];
+        Long[] values = new Long[RANDOM_OBJECTS_SIZE];
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            keys[i] = random.nextLong();
+            values[i] = (long) i;
+        }
+        impl.put(keys[0], 0L);
+        //WHEN
+        impl.putAll(keys, values);
+        //THEN
+        assertEquals(1, impl.getStats().getResizes());
+        assertEquals(RANDOM_OBJECTS_SIZE, impl.size());
+        Long[] found = new Long[RANDOM_OBJECTS_SIZE];
+        assertEquals(RANDOM_OBJECTS_SIZE, impl.getAll(keys, found));
+        assertArrayEquals(values, found);
+    }
+
+    @Test
+    public void testPutAllOfMappedKeysKeepsCapacity() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        Random random = new Random(22);
+        long[] keys = new long[RANDOM_OBJECTS_SIZE];
+        Long[] values = new Long[RANDOM_OBJECTS_SIZE];
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            keys[i] = random.nextLong();
+            values[i] = (long) -i;
+            impl.put(keys[i], (long) i);
+        }
+        long capacity = impl.getStats().getCapacity();
+        //WHEN
+        impl.putAll(keys, values);
+        //THEN
+        assertEquals(capacity, impl.getStats().getCapacity());
+        assertEquals(RANDOM_OBJECTS_SIZE, impl.size());
+        Long[] found = new Long[RANDOM_OBJECTS_SIZE];
+        assertEquals(RANDOM_OBJECTS_SIZE, impl.getAll(keys, found));
+        assertArrayEquals(values, found);
+    }
+
+    @Test
+    public void testBatchOperationsFindCollidingKeysInReserve() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        Random random = new Random(9);
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            impl.put(random.nextInt(Integer.MAX_VALUE), 0L);
+        }
+        long randomSize = impl.size();
+        long[] keys = new long[COLLIDING_OBJECTS_SIZE];
+        Long[] values = new Long[COLLIDING_OBJECTS_SIZE];
+        for (int i = 0; i < COLLIDING_OBJECTS_SIZE; i++) {
+            keys[i] = getCollidingKey(i + 1);
+            values[i] = (long) i;
+        }
+        //WHEN
+        impl.putAll(keys, values);
+        Long[] found = new Long[COLLIDING_OBJECTS_SIZE];
+        int foundSize = impl.getAll(keys, found);
+        int removedSize = impl.removeAll(Arrays.copyOf(keys, COLLIDING_OBJECTS_SIZE / 2));
+        //THEN
+        assertTrue(impl.getReserveInsertCount() > 0);
+        assertEquals(COLLIDING_OBJECTS_SIZE, foundSize);
+        assertArrayEquals(values, found);
+        assertEquals(COLLIDING_OBJECTS_SIZE / 2, removedSize);
+        assertEquals(randomSize + COLLIDING_OBJECTS_SIZE / 2, impl.size());
+        assertNull(impl.get(keys[0]));
+        assertEquals(values[COLLIDING_OBJECTS_SIZE - 1], impl.get(keys[COLLIDING_OBJECTS_SIZE - 1]));
+    }
+
+    @Test
+    public void testOscillationAroundEmptyKeepsTable() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        impl.put(1, 1L);
+        long memoryUsage = impl.memoryUsage();
+        impl.remove(1);
+        impl.setStatsEnabled(true);
+        //WHEN
+        for (long i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            impl.put(1, i);
+            impl.remove(1);
+        }
+        //THEN
+        assertTrue(impl.isEmpty());
+        assertEquals(0, impl.getStats().getResizes());
+        assertEquals(memoryUsage, impl.memoryUsage());
+    }
+
+    @Test
+    public void testOscillationAroundThresholdDoesNotThrash() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        impl.setStatsEnabled(true);
+        long key = 0;
+        while (impl.getStats().getResizes() < 10) {
+            impl.put(key, key);
+            key++;
+        }
+        long resizes = impl.getStats().getResizes();
+        //WHEN
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            impl.remove(key - 1);
+            impl.remove(key - 2);
+            impl.put(key - 2, key);
+            impl.put(key - 1, key);
+        }
+        //THEN
+        assertEquals(resizes, impl.getStats().getResizes());
+    }
+
+    @Test
+    public void testTableDoesNotShrinkBelowEnsuredCapacity() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        impl.ensureCapacity(RANDOM_OBJECTS_SIZE);
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            impl.put(key, key);
+        }
+        long capacity = impl.getStats().getCapacity();
+        //WHEN
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            impl.remove(key);
+        }
+        //THEN
+        assertTrue(impl.isEmpty());
+        assertEquals(capacity, impl.getStats().getCapacity());
+        assertTrue(capacity * 0.8 >= RANDOM_OBJECTS_SIZE);
+    }
+
+    @Test
+    public void testTrimToSizeShrinksTableAndFreesEmptyOne() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>(RANDOM_OBJECTS_SIZE);
+        for (long key = 0; key < 10; key++) {
+            impl.put(key, key);
+        }
+        //WHEN
+        impl.trimToSize();
+        //THEN
+        assertEquals(16, impl.getStats().getCapacity());
+        for (long key = 0; key < 10; key++) {
+            assertEquals(Long.valueOf(key), impl.get(key));
+            impl.remove(key);
+        }
+        assertTrue(impl.memoryUsage() > 0);
+        impl.trimToSize();
+        assertEquals(0, impl.memoryUsage());
+    }
+
+    @Test
+    public void testDenseKeysAreIndexedDirectly() {
+        //GIVEN
+        LongMapImpl<Long> dense = new LongMapImpl<>();
+        LongMapImpl<Long> sparse = new LongMapImpl<>();
+        //WHEN
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            dense.put(DENSE_ORIGIN + key, key);
+            sparse.put(key * 7, key);
+        }
+        //THEN
+        assertTrue("dense keys: " + dense.memoryUsage() + " bytes, sparse keys: " + sparse.memoryUsage() + " bytes",
+                dense.memoryUsage() * 2 < sparse.memoryUsage());
+        dense.trimToSize();
+        assertTrue(dense.memoryUsage() * 4 < sparse.memoryUsage());
+        assertEquals(RANDOM_OBJECTS_SIZE, dense.size());
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            assertEquals(Long.valueOf(key), dense.get(DENSE_ORIGIN + key));
+        }
+        assertNull(dense.get(DENSE_ORIGIN - 1));
+        assertNull(dense.get(DENSE_ORIGIN + RANDOM_OBJECTS_SIZE));
+        long[] keys = dense.keys();
+        Arrays.sort(keys);
+        assertEquals(DENSE_ORIGIN, keys[0]);
+        assertEquals(DENSE_ORIGIN + RANDOM_OBJECTS_SIZE - 1, keys[keys.length - 1]);
+    }
+
+    @Test
+    public void testDenseMapReturnsToHashingForSparseKeys() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            impl.put(key, key);
+        }
+        long denseMemoryUsage = impl.memoryUsage();
+        Random random = new Random(13);
+        long[] sparseKeys = new long[RANDOM_OBJECTS_SIZE];
+        //WHEN
+        for (int i = 0; i < RANDOM_OBJECTS_SIZE; i++) {
+            sparseKeys[i] = random.nextLong();
+            impl.put(sparseKeys[i], (long) i);
+        }
+        //THEN
+        assertEquals(2 * RANDOM_OBJECTS_SIZE, impl.size());
+        assertTrue(impl.memoryUsage() > 4 * denseMemoryUsage);
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            assertEquals(Long.valueOf(key), impl.get(key));
+            assertEquals(Long.valueOf(key), impl.get(sparseKeys[(int) key]));
+        }
+    }
+
+    @Test
+    public void testDenseArrayIsCompactedAfterRemovals() {
+        //GIVEN
+        LongMapImpl<Long> impl = new LongMapImpl<>();
+        for (long key = 0; key < RANDOM_OBJECTS_SIZE; key++) {
+            impl.put(-key, key);
+        }
+        long memoryUsage = impl.memoryUsage();
+        //WHEN
+        LongMapCursor<Long> cursor = impl.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() < -RANDOM_OBJECTS_SIZE / 10) {
+                cursor.remove();
+            }
+        }
+        //THEN
+        assertEquals(RANDOM_OBJECTS_SIZE / 10 + 1, impl.size());
+        assertTrue(impl.memoryUsage() * 4 < memoryUsage);
+        for (long key = 0; key <= RANDOM_OBJECTS_SIZE / 10; key++) {
+            assertEquals(Long.valueOf(key), impl.get(-key));
+        }
+        assertNull(impl.get(-RANDOM_OBJECTS_SIZE / 10 - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBottomLoadFactorAboveQuarterOfTopThrowsException() {
+        //WHEN
+        new LongMapImpl<Long>(0, 0.8, 0.3, false);
+    }
+
+    private static byte[] writeTo(LongMapImpl<Long> map, boolean sortedKeys) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.writeTo(Channels.newChannel(out), ValueCodecs.LONG, sortedKeys);
+        return out.toByteArray();
+    }
+
+    private static LongMapImpl<Long> readFrom(byte[] snapshot) throws IOException {
+        return LongMapImpl.readFrom(Channels.newChannel(new ByteArrayInputStream(snapshot)), ValueCodecs.LONG);
+    }
+
+    //the halves of the key differ, but their xor (the hash of the table) is the same
+    private static long getCollidingKey(long i) {
+        return (i << 32) | (i ^ 12345);
+    }
+}
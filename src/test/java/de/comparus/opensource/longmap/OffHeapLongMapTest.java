@@ -0,0 +1,203 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapLongMapTest extends AbstractLongMapTest {
+
+    private Path file;
+
+    @Override
+    protected LongMap<Long> createMap() {
+        try {
+            file = Files.createTempFile("long-map", ".map");
+            Files.delete(file);
+            return new OffHeapLongMap<>(file, ValueCodecs.LONG);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ((OffHeapLongMap<Long>) map).close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testReopenedFileKeepsMappings() throws IOException {
+        //GIVEN
+        for (long key = 0; key < 5000; key++) {
+            map.put(key * 31, key);
+        }
+        map.remove(0);
+        ((OffHeapLongMap<Long>) map).close();
+        //WHEN
+        map = new OffHeapLongMap<>(file, ValueCodecs.LONG);
+        //THEN
+        assertEquals(4999, map.size());
+        assertNull(map.get(0));
+        for (long key = 1; key < 5000; key++) {
+            assertEquals(Long.valueOf(key), map.get(key * 31));
+        }
+    }
+
+    @Test
+    public void testFileGrowsWithMappingsAndShrinksOnClear() {
+        //GIVEN
+        OffHeapLongMap<Long> offHeap = (OffHeapLongMap<Long>) map;
+        long emptySize = offHeap.fileSize();
+        //WHEN
+        for (long key = 0; key < 10000; key++) {
+            map.put(key, key);
+        }
+        long filledSize = offHeap.fileSize();
+        map.clear();
+        //THEN
+        assertTrue(filledSize > emptySize);
+        assertEquals(emptySize, offHeap.fileSize());
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".resize")));
+    }
+
+    @Test
+    public void testFailedRebuildKeepsOldTable() throws IOException {
+        //GIVEN
+        Path resizeFile = file.resolveSibling(file.getFileName() + ".resize");
+        Files.createDirectories(resizeFile.resolve("blocker"));    //the resize file can not be created
+        long key = 0;
+        //WHEN
+        try {
+            for (; key < 5000; key++) {
+                map.put(key, key);
+            }
+        } catch (UncheckedIOException e) {
+            //expected
+        }
+        Files.delete(resizeFile.resolve("blocker"));
+        Files.delete(resizeFile);
+        //THEN
+        assertEquals(key, map.size());
+        for (long i = 0; i < key; i++) {
+            assertEquals(Long.valueOf(i), map.get(i));
+        }
+        for (; key < 5000; key++) {
+            map.put(key, key);
+        }
+        assertEquals(5000, map.size());
+    }
+
+    @Test
+    public void testFailedClearKeepsMappings() throws IOException {
+        //GIVEN
+        for (long key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+        Path resizeFile = file.resolveSibling(file.getFileName() + ".resize");
+        Files.createDirectories(resizeFile.resolve("blocker"));    //the resize file can not be created
+        //WHEN
+        try {
+            map.clear();
+        } catch (UncheckedIOException e) {
+            //expected
+        }
+        Files.delete(resizeFile.resolve("blocker"));
+        Files.delete(resizeFile);
+        //THEN
+        assertEquals(100, map.size());
+        assertEquals(Long.valueOf(99), map.get(99));
+        ((OffHeapLongMap<Long>) map).close();
+        map = new OffHeapLongMap<>(file, ValueCodecs.LONG);
+        assertEquals(100, map.size());
+    }
+
+    @Test
+    public void testStringValuesOfDifferentLengths() throws IOException {
+        //GIVEN
+        Path stringsFile = file.resolveSibling(file.getFileName() + ".strings");
+        try (OffHeapLongMap<String> strings = new OffHeapLongMap<>(stringsFile, ValueCodecs.utf8(16))) {
+            //WHEN
+            strings.put(1, "");
+            strings.put(2, "long-map");
+            strings.put(3, "\u00e9t\u00e9");
+            strings.put(2, "map");
+            //THEN
+            assertEquals("", strings.get(1));
+            assertEquals("map", strings.get(2));
+            assertEquals("\u00e9t\u00e9", strings.get(3));
+            assertTrue(strings.containsValue("map"));
+        } finally {
+            Files.deleteIfExists(stringsFile);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutThrowsExceptionWithTooLongValue() throws IOException {
+        //GIVEN
+        Path stringsFile = file.resolveSibling(file.getFileName() + ".strings");
+        try (OffHeapLongMap<String> strings = new OffHeapLongMap<>(stringsFile, ValueCodecs.utf8(4))) {
+            //WHEN
+            strings.put(1, "long-map");
+        } finally {
+            Files.deleteIfExists(stringsFile);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenThrowsExceptionWithCodecOfOtherSize() throws IOException {
+        //GIVEN
+        map.put(1, 1L);
+        ((OffHeapLongMap<Long>) map).close();
+        //WHEN
+        new OffHeapLongMap<>(file, ValueCodecs.INTEGER);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenThrowsExceptionWithForeignFile() throws IOException {
+        //GIVEN
+        ((OffHeapLongMap<Long>) map).close();
+        Files.write(file, new byte[100]);
+        //WHEN
+        new OffHeapLongMap<>(file, ValueCodecs.LONG);
+    }
+
+    @Test
+    public void testOpenDoesNotExtendShortForeignFile() throws IOException {
+        //GIVEN
+        ((OffHeapLongMap<Long>) map).close();
+        Files.write(file, new byte[10]);
+        //WHEN
+        try {
+            new OffHeapLongMap<>(file, ValueCodecs.LONG);
+        } catch (IOException e) {
+            //expected
+        }
+        //THEN
+        assertEquals(10, Files.size(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenThrowsExceptionWithTruncatedFile() throws IOException {
+        //GIVEN
+        for (long key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+        ((OffHeapLongMap<Long>) map).close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        //WHEN
+        new OffHeapLongMap<>(file, ValueCodecs.LONG);
+    }
+}
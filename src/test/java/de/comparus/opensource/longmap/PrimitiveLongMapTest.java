@@ -0,0 +1,365 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongFunction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The cases common to {@link LongLongMapImpl}, {@link LongIntMapImpl} and {@link LongDoubleMapImpl}.
+ * Every map is tested through a {@link PrimitiveMap} which passes the values as longs
+ * (the tested values are small integers, so they are exact in every type).
+ */
+@RunWith(Parameterized.class)
+public class PrimitiveLongMapTest {
+
+    private static final int OBJECTS_SIZE = 100_000;            //the number of random operations
+    private static final int RANDOM_OBJECTS_SIZE = 1000;        //the number of keys with different hashes
+    private static final int COLLIDING_OBJECTS_SIZE = 40;       //the number of keys with the same hash
+    private static final long NO_VALUE = -1;
+
+    private final LongFunction<PrimitiveMap> factory;
+
+    public PrimitiveLongMapTest(String name, LongFunction<PrimitiveMap> factory) {
+        this.factory = factory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Object[][] data() {
+        LongFunction<PrimitiveMap> longMap = LongLongAdapter::new;
+        LongFunction<PrimitiveMap> intMap = IntAdapter::new;
+        LongFunction<PrimitiveMap> doubleMap = DoubleAdapter::new;
+        return new Object[][]{
+                {"LongLongMapImpl", longMap},
+                {"LongIntMapImpl", intMap},
+                {"LongDoubleMapImpl", doubleMap}
+        };
+    }
+
+    @Test
+    public void testGetAndRemoveReturnNoValueSentinelForAbsentKey() {
+        //GIVEN
+        PrimitiveMap map = factory.apply(NO_VALUE);
+        //WHEN
+        map.put(1, 2);
+        //THEN
+        assertEquals(NO_VALUE, map.get(2));
+        assertEquals(NO_VALUE, map.remove(2));
+        assertEquals(2, map.remove(1));
+        assertEquals(NO_VALUE, map.get(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testSentinelCanBeStoredAsValue() {
+        //GIVEN
+        PrimitiveMap map = factory.apply(NO_VALUE);
+        //WHEN
+        map.put(1, NO_VALUE);
+        //THEN
+        assertEquals(NO_VALUE, map.get(1));
+        assertTrue(map.containsKey(1));
+        assertTrue(map.containsValue(NO_VALUE));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testAddToAndIncrementChangeValueInPlace() {
+        //GIVEN
+        PrimitiveMap map = factory.apply(0);
+        //WHEN
+        assertEquals(2, map.addTo(7, 2));
+        assertEquals(3, map.increment(7));
+        assertEquals(1, map.increment(8));
+        //THEN
+        assertEquals(3, map.get(7));
+        assertEquals(1, map.get(8));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        //GIVEN
+        Random random = new Random(8);
+        PrimitiveMap map = factory.apply(NO_VALUE);
+        Map<Long, Long> expected = new HashMap<>();
+        //WHEN
+        for (int i = 0; i < OBJECTS_SIZE; i++) {
+            long key = random.nextInt(OBJECTS_SIZE / 10) * 0x9E3779B97F4A7C15L;
+            int operation = random.nextInt(4);
+            if (operation == 0) {
+                long value = random.nextInt(1000);
+                map.put(key, value);
+                expected.put(key, value);
+            } else if (operation == 1) {
+                Long old = expected.remove(key);
+                assertEquals(old != null ? old : NO_VALUE, map.remove(key));
+            } else if (operation == 2) {
+                Long old = expected.get(key);
+                long value = (old != null ? old : 0) + 1;
+                expected.put(key, value);
+                assertEquals(value, map.increment(key));
+            } else {
+                Long old = expected.get(key);
+                assertEquals(old != null ? old : NO_VALUE, map.get(key));
+                assertEquals(old != null, map.containsKey(key));
+            }
+        }
+        //THEN
+        assertMapEquals(expected, map);
+    }
+
+    @Test
+    public void testCollidingKeysAreFoundAndRemovedInReserve() {
+        //GIVEN
+        Random random = new Random(9);
+        PrimitiveMap map = factory.apply(NO_VALUE);
+        Map<Long, Long> expected = new HashMap<>();
+        while (expected.size() < RANDOM_OBJECTS_SIZE) {
+            long key = random.nextInt() & Integer.MAX_VALUE;
+            map.put(key, key % 1000);
+            expected.put(key, key % 1000);
+        }
+        //WHEN
+        //the halves of these keys are equal, so all of them have the hash 0 and the same probe sequence
+        for (long i = 1; i <= COLLIDING_OBJECTS_SIZE; i++) {
+            long key = (i << 32) | i;
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        for (long i = 1; i <= COLLIDING_OBJECTS_SIZE; i += 2) {
+            long key = (i << 32) | i;
+            assertEquals(i, map.remove(key));
+            expected.remove(key);
+        }
+        //THEN
+        for (long i = 1; i <= COLLIDING_OBJECTS_SIZE; i++) {
+            long key = (i << 32) | i;
+            assertEquals(i % 2 == 0, map.containsKey(key));
+            assertEquals(i % 2 == 0 ? i : NO_VALUE, map.get(key));
+        }
+        assertMapEquals(expected, map);
+    }
+
+    @Test
+    public void testClearMakesMapEmpty() {
+        //GIVEN
+        PrimitiveMap map = factory.apply(0);
+        for (long key = 0; key < 1000; key++) {
+            map.put(key, 1);
+        }
+        //WHEN
+        map.clear();
+        //THEN
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0));
+        assertArrayEquals(new long[0], map.keys());
+        assertArrayEquals(new long[0], map.values());
+    }
+
+    private static void assertMapEquals(Map<Long, Long> expected, PrimitiveMap map) {
+        assertEquals(expected.size(), map.size());
+        long[] keys = map.keys();
+        long[] values = map.values();
+        assertEquals(expected.size(), keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.get(keys[i]), Long.valueOf(values[i]));
+        }
+    }
+
+    /**
+     * A map with primitive values seen with long values.
+     */
+    interface PrimitiveMap {
+        void put(long key, long value);
+        long get(long key);
+        long remove(long key);
+        long addTo(long key, long delta);
+        long increment(long key);
+        boolean isEmpty();
+        boolean containsKey(long key);
+        boolean containsValue(long value);
+        long[] keys();
+        long[] values();
+        long size();
+        void clear();
+    }
+
+    private static class LongLongAdapter implements PrimitiveMap {
+        private final LongLongMap map;
+
+        LongLongAdapter(long noValue) {
+            map = new LongLongMapImpl(noValue);
+        }
+
+        public void put(long key, long value) {
+            map.put(key, value);
+        }
+
+        public long get(long key) {
+            return map.get(key);
+        }
+
+        public long remove(long key) {
+            return map.remove(key);
+        }
+
+        public long addTo(long key, long delta) {
+            return map.addTo(key, delta);
+        }
+
+        public long increment(long key) {
+            return map.increment(key);
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public boolean containsKey(long key) {
+            return map.containsKey(key);
+        }
+
+        public boolean containsValue(long value) {
+            return map.containsValue(value);
+        }
+
+        public long[] keys() {
+            return map.keys();
+        }
+
+        public long[] values() {
+            return map.values();
+        }
+
+        public long size() {
+            return map.size();
+        }
+
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    private static class IntAdapter implements PrimitiveMap {
+        private final LongIntMap map;
+
+        IntAdapter(long noValue) {
+            map = new LongIntMapImpl((int) noValue);
+        }
+
+        public void put(long key, long value) {
+            map.put(key, (int) value);
+        }
+
+        public long get(long key) {
+            return map.get(key);
+        }
+
+        public long remove(long key) {
+            return map.remove(key);
+        }
+
+        public long addTo(long key, long delta) {
+            return map.addTo(key, (int) delta);
+        }
+
+        public long increment(long key) {
+            return map.increment(key);
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public boolean containsKey(long key) {
+            return map.containsKey(key);
+        }
+
+        public boolean containsValue(long value) {
+            return map.containsValue((int) value);
+        }
+
+        public long[] keys() {
+            return map.keys();
+        }
+
+        public long[] values() {
+            return Arrays.stream(map.values()).asLongStream().toArray();
+        }
+
+        public long size() {
+            return map.size();
+        }
+
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    private static class DoubleAdapter implements PrimitiveMap {
+        private final LongDoubleMap map;
+
+        DoubleAdapter(long noValue) {
+            map = new LongDoubleMapImpl(noValue);
+        }
+
+        public void put(long key, long value) {
+            map.put(key, value);
+        }
+
+        public long get(long key) {
+            return (long) map.get(key);
+        }
+
+        public long remove(long key) {
+            return (long) map.remove(key);
+        }
+
+        public long addTo(long key, long delta) {
+            return (long) map.addTo(key, delta);
+        }
+
+        public long increment(long key) {
+            return (long) map.increment(key);
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public boolean containsKey(long key) {
+            return map.containsKey(key);
+        }
+
+        public boolean containsValue(long value) {
+            return map.containsValue(value);
+        }
+
+        public long[] keys() {
+            return map.keys();
+        }
+
+        public long[] values() {
+            return Arrays.stream(map.values()).mapToLong(value -> (long) value).toArray();
+        }
+
+        public long size() {
+            return map.size();
+        }
+
+        public void clear() {
+            map.clear();
+        }
+    }
+}
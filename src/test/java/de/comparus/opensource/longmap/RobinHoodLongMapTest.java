@@ -0,0 +1,47 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RobinHoodLongMapTest extends AbstractLongMapTest {
+
+    private static final int STABLE_SIZE = 10_000;          //the number of mappings kept during churn
+    private static final int CHURN_OPERATIONS = 2_000_000;  //the number of remove + put pairs
+    private static final int MAX_PROBE_LENGTH = 32;         //the longest probe acceptable after churn
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new RobinHoodLongMap<>();
+    }
+
+    @Test
+    public void testProbeLengthsStayShortUnderChurn() {
+        //GIVEN
+        RobinHoodLongMap<Long> robinHood = new RobinHoodLongMap<>();
+        Random random = new Random(5);
+        long[] keys = new long[STABLE_SIZE];
+        for (int i = 0; i < STABLE_SIZE; i++) {
+            keys[i] = random.nextLong();
+            robinHood.put(keys[i], 0L);
+        }
+        //WHEN
+        for (int i = 0; i < CHURN_OPERATIONS; i++) {
+            int index = random.nextInt(STABLE_SIZE);
+            robinHood.remove(keys[index]);
+            keys[index] = random.nextLong();
+            robinHood.put(keys[index], 0L);
+        }
+        long[] histogram = robinHood.getProbeLengthHistogram();
+        //THEN
+        assertEquals(robinHood.size(), Arrays.stream(histogram).sum());
+        assertTrue(histogram.length <= MAX_PROBE_LENGTH);
+        for (long key : keys) {
+            assertTrue(robinHood.containsKey(key));
+        }
+    }
+}
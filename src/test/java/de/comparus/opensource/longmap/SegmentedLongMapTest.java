@@ -0,0 +1,90 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedLongMapTest extends AbstractLongMapTest {
+
+    private static final int SEGMENTS_NUMBER = 16;
+    private static final int TEST_OBJECTS_SIZE = 100_000;   //the number of mappings spread over the segments
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new SegmentedLongMap<>();
+    }
+
+    @Test
+    public void testKeysAreSpreadOverSegments() {
+        //GIVEN
+        SegmentedLongMap<Long> segmented = new SegmentedLongMap<>(SEGMENTS_NUMBER);
+        //WHEN
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            segmented.put(key, key);
+        }
+        //THEN
+        assertEquals(SEGMENTS_NUMBER, segmented.getSegmentsNumber());
+        assertEquals(TEST_OBJECTS_SIZE, segmented.size());
+        for (int segment = 0; segment < SEGMENTS_NUMBER; segment++) {
+            long size = segmented.getSegmentStats(segment).getSize();
+            assertTrue(Math.abs(size - TEST_OBJECTS_SIZE / SEGMENTS_NUMBER) < TEST_OBJECTS_SIZE / SEGMENTS_NUMBER / 10);
+        }
+    }
+
+    @Test
+    public void testSegmentsNumberIsRoundedUpToPowerOfTwo() {
+        //WHEN
+        SegmentedLongMap<Long> segmented = new SegmentedLongMap<>(5);
+        //THEN
+        assertEquals(8, segmented.getSegmentsNumber());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveSegmentsNumberThrowsException() {
+        //WHEN
+        new SegmentedLongMap<Long>(0);
+    }
+
+    @Test
+    public void testParallelOperationsSplitBySegments() {
+        //GIVEN
+        SegmentedLongMap<Long> segmented = new SegmentedLongMap<>(SEGMENTS_NUMBER);
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            segmented.put(key, key);
+        }
+        LongMapSpliterator<Long> spliterator = segmented.spliterator();
+        //WHEN
+        LongMapSpliterator<Long> prefix = spliterator.trySplit();
+        //THEN
+        assertEquals(TEST_OBJECTS_SIZE, prefix.estimateSize() + spliterator.estimateSize());
+        assertEquals((long) TEST_OBJECTS_SIZE * (TEST_OBJECTS_SIZE - 1) / 2,
+                segmented.parallelReduceToLong(0, (key, value) -> value, Long::sum));
+        long[] even = segmented.parallelFilterToArray((key, value) -> key % 2 == 0);
+        Arrays.sort(even);
+        assertArrayEquals(Arrays.stream(segmented.keys()).filter(key -> key % 2 == 0).sorted().toArray(), even);
+    }
+
+    @Test
+    public void testEnsuredCapacityIsNotResized() {
+        //GIVEN
+        SegmentedLongMap<Long> segmented = new SegmentedLongMap<>(SEGMENTS_NUMBER);
+        segmented.ensureCapacity(TEST_OBJECTS_SIZE);
+        segmented.put(0, 0L);
+        long capacity = segmented.getSegmentStats(0).getCapacity();
+        //WHEN
+        for (long key = 0; key < TEST_OBJECTS_SIZE; key++) {
+            segmented.put(key, key);
+        }
+        //THEN
+        for (int segment = 0; segment < SEGMENTS_NUMBER; segment++) {
+            assertEquals(capacity, segmented.getSegmentStats(segment).getCapacity());
+        }
+        segmented.clear();
+        segmented.trimToSize();
+        assertEquals(0, segmented.memoryUsage());
+    }
+}
@@ -0,0 +1,101 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SwissLongMapTest extends AbstractLongMapTest {
+
+    private static final int STABLE_SIZE = 10_000;          //the number of mappings kept during churn
+    private static final int CHURN_OPERATIONS = 1_000_000;  //the number of remove + put pairs
+    private static final int TEST_OBJECTS_SIZE = 100_000;   //the number of colliding keys
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new SwissLongMap<>();
+    }
+
+    @Test
+    public void testGroupMatchesFindControlBytes() {
+        //GIVEN
+        long group = 0x80FE_0011_7F80_1100L;    //bytes from the lowest: 00 11 80 7F 11 00 FE 80
+        //WHEN
+        long matchedHash = SwissLongMap.matchByte(group, (byte) 0x11);
+        long matchedEmpty = SwissLongMap.matchEmpty(group);
+        long matchedFree = SwissLongMap.matchEmptyOrDeleted(group);
+        //THEN
+        assertEquals(0x0000_0080_0000_8000L, matchedHash & 0x0000_0080_0000_8000L);
+        assertEquals(0x8000_0000_0080_0000L, matchedEmpty);
+        assertEquals(0x8080_0000_0080_0000L, matchedFree);
+        assertEquals(0, SwissLongMap.matchByte(0x8080_8080_8080_8080L, (byte) 0));
+    }
+
+    @Test
+    public void testMappingsSurviveChurnOfDeletedSlots() {
+        //GIVEN
+        SwissLongMap<Long> swiss = new SwissLongMap<>();
+        Random random = new Random(6);
+        long[] keys = new long[STABLE_SIZE];
+        for (int i = 0; i < STABLE_SIZE; i++) {
+            keys[i] = random.nextLong();
+            swiss.put(keys[i], keys[i]);
+        }
+        //WHEN
+        for (int i = 0; i < CHURN_OPERATIONS; i++) {
+            int index = random.nextInt(STABLE_SIZE);
+            assertEquals(Long.valueOf(keys[index]), swiss.remove(keys[index]));
+            keys[index] = random.nextLong();
+            swiss.put(keys[index], keys[index]);
+        }
+        //THEN
+        assertEquals(STABLE_SIZE, swiss.size());
+        for (long key : keys) {
+            assertEquals(Long.valueOf(key), swiss.get(key));
+        }
+        assertNull(swiss.get(random.nextLong()));
+    }
+
+    @Test
+    public void testKeysDifferingInHighBitsAreFound() {
+        //GIVEN
+        SwissLongMap<Long> swiss = new SwissLongMap<>();
+        //WHEN
+        for (long i = 0; i < TEST_OBJECTS_SIZE; i++) {
+            swiss.put(i << 32, i);
+        }
+        //THEN
+        assertEquals(TEST_OBJECTS_SIZE, swiss.size());
+        for (long i = 0; i < TEST_OBJECTS_SIZE; i++) {
+            assertEquals(Long.valueOf(i), swiss.get(i << 32));
+            assertTrue(!swiss.containsKey((i << 32) + 1));
+        }
+    }
+
+    @Test
+    public void testRemoveOfLastMappingKeepsMinimalTable() {
+        //GIVEN
+        SwissLongMap<Long> swiss = new SwissLongMap<>();
+        swiss.put(1, 1L);
+        long minimalUsage = swiss.memoryUsage();
+        for (long key = 0; key < STABLE_SIZE; key++) {
+            swiss.put(key, key);
+        }
+        //WHEN
+        for (long key = 0; key < STABLE_SIZE; key++) {
+            swiss.remove(key);
+        }
+        //THEN
+        assertTrue(swiss.isEmpty());
+        assertEquals(minimalUsage, swiss.memoryUsage());
+        for (long key = 0; key < STABLE_SIZE; key++) {
+            swiss.put(key, key);
+            assertEquals(Long.valueOf(key), swiss.remove(key));
+            assertEquals(minimalUsage, swiss.memoryUsage());
+        }
+        assertNull(swiss.get(1));
+    }
+}
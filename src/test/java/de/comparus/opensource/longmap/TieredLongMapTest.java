@@ -0,0 +1,66 @@
+package de.comparus.opensource.longmap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TieredLongMapTest extends AbstractLongMapTest {
+
+    private static final int SKEWED_OBJECTS_SIZE = 100_000;    //the number of mappings compared with the flat map
+
+    @Override
+    protected LongMap<Long> createMap() {
+        return new TieredLongMap<>();
+    }
+
+    @Test
+    public void testKeysAreRoutedToNarrowestTier() {
+        //GIVEN
+        TieredLongMap<Long> tiered = new TieredLongMap<>();
+        //WHEN
+        tiered.put(Byte.MIN_VALUE, 1L);
+        tiered.put(Short.MAX_VALUE, 2L);
+        tiered.put(Integer.MIN_VALUE, 3L);
+        tiered.put((long) Integer.MAX_VALUE + 1, 4L);
+        //THEN
+        for (TieredLongMap.Tier tier : TieredLongMap.Tier.values()) {
+            assertEquals(1, tiered.size(tier));
+        }
+        assertEquals(Long.valueOf(1), tiered.get(Byte.MIN_VALUE));
+        assertEquals(Long.valueOf(4), tiered.get((long) Integer.MAX_VALUE + 1));
+    }
+
+    @Test
+    public void testTiersTakeLessMemoryThanFlatMapOnSkewedKeys() {
+        //GIVEN
+        Random random = new Random(4);
+        TieredLongMap<Long> tiered = new TieredLongMap<>();
+        LongMapImpl<Long> flat = new LongMapImpl<>();
+        Long value = 0L;
+        //WHEN
+        for (int i = 0; i < SKEWED_OBJECTS_SIZE; i++) {
+            long key = getSkewedKey(random);
+            tiered.put(key, value);
+            flat.put(key, value);
+        }
+        //THEN
+        assertEquals(flat.size(), tiered.size());
+        assertTrue("TieredLongMap: " + tiered.memoryUsage() + " bytes, LongMapImpl: " + flat.memoryUsage() + " bytes",
+                tiered.memoryUsage() < flat.memoryUsage());
+    }
+
+    //most keys are small non-negative IDs, few are arbitrary longs
+    private static long getSkewedKey(Random random) {
+        int percent = random.nextInt(100);
+        if (percent < 30) {
+            return random.nextInt(Short.MAX_VALUE);
+        }
+        if (percent < 90) {
+            return random.nextInt(Integer.MAX_VALUE);
+        }
+        return random.nextLong();
+    }
+}